@@ -0,0 +1,42 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+/**
+ * ベンチマークで使用するテーブルの列
+ */
+public enum BenchColumn implements DatabaseColumn {
+    ID("id", "int", "not null primary key auto_increment"),
+    NAME("name", "varchar(255)", "not null unique key"),
+    PASSWORD("password", "varchar(32)", "not null"),
+    SCORE("score", "int", "not null default 0"),
+    SEX("sex", "enum('male', 'female')", "default 'male'"),
+    SAVED("saved", "datetime", "");
+
+    public static String tableName() {
+        return "bench_table";
+    }
+
+    private final String mName;
+    private final String mType;
+    private final String mOption;
+
+    BenchColumn(String name, String type, String option) {
+        mName = name;
+        mType = type;
+        mOption = option;
+    }
+
+    @Override
+    public String toString() {
+        return mName;
+    }
+
+    @Override
+    public String type() {
+        return mType;
+    }
+
+    @Override
+    public String columnString() {
+        return String.join(" ", mName, mType, mOption);
+    }
+}
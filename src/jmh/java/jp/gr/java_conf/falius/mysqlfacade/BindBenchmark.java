@@ -0,0 +1,65 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * プレイスホルダーへの値のセットにかかる時間を計測します。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BindBenchmark {
+    private final Object[] mArgs = { 42, "name", new Timestamp(1488330000000L), 1L << 40, null };
+    private final Params mParams = new Params();
+    private PreparedDatabase mDatabase;
+    private SQLDatabase.Entry mEntry;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        mDatabase = PreparedDatabase.builder()
+                .database("bench")
+                .connectionSupplier(() -> StubJdbc.connection(1))
+                .build();
+        mEntry = mDatabase.execute("SELECT * FROM bench_table WHERE id = ? AND name = ? AND saved > ? AND score < ?"
+                + " AND sex = ?");
+        mParams.clear().addInt(42).add("name").add(new Timestamp(1488330000000L)).addLong(1L << 40).add(null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        mDatabase.close();
+    }
+
+    @Benchmark
+    public SQLDatabase.Entry bindObjects() throws SQLException {
+        for (Object arg : mArgs) {
+            Binders.bind(mEntry, arg);
+        }
+        // 次の呼び出しで先頭からセットするため、値の位置を戻す
+        return mEntry.addBatch();
+    }
+
+    @Benchmark
+    public SQLDatabase.Entry bindParams() throws SQLException {
+        mParams.bindTo(mEntry);
+        return mEntry.addBatch();
+    }
+}
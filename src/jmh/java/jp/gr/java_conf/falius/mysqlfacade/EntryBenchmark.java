@@ -0,0 +1,99 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Entryの作成から実行、クローズまでの一連の処理にかかる時間を計測します。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EntryBenchmark {
+    private static final int SCAN_ROWS = 100;
+    private static final String SCAN_SQL = "SELECT * FROM bench_table WHERE score > ?";
+
+    @Param({ "0", "64" })
+    public int statementCacheSize;
+
+    @Param({ "false", "true" })
+    public boolean listener;
+
+    private final Map<BenchColumn, Object> mValues = new EnumMap<BenchColumn, Object>(BenchColumn.class);
+    private PreparedDatabase mDatabase;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        mDatabase = PreparedDatabase.builder()
+                .database("bench")
+                .connectionSupplier(() -> StubJdbc.connection(SCAN_ROWS))
+                .statementCacheSize(statementCacheSize)
+                .queryListener(listener ? new QueryRecorder() : null)
+                .build();
+        mValues.put(BenchColumn.NAME, "name");
+        mValues.put(BenchColumn.PASSWORD, "password");
+        mValues.put(BenchColumn.SCORE, 80);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        mDatabase.close();
+    }
+
+    @Benchmark
+    public int count() throws SQLException {
+        return mDatabase.count(BenchColumn.class, BenchColumn.ID, "score > ?", 40);
+    }
+
+    @Benchmark
+    public long insert() throws SQLException {
+        return mDatabase.insert(BenchColumn.class, mValues);
+    }
+
+    @Benchmark
+    public int update() throws SQLException {
+        return mDatabase.update(BenchColumn.class, mValues, BenchColumn.ID, 1);
+    }
+
+    @Benchmark
+    public boolean isExistRecord() throws SQLException {
+        return mDatabase.isExistRecord(BenchColumn.class, BenchColumn.ID, 1);
+    }
+
+    /**
+     * 結果のすべての行から列を読み出します。リスナーがあれば、行を数えるResultSetを通した読み出しになります。
+     */
+    @Benchmark
+    public long scan() throws SQLException {
+        long sum = 0;
+        try (SQLDatabase.Entry entry = mDatabase.execute(SCAN_SQL)) {
+            entry.setInt(40);
+            try (ResultSet rs = entry.query()) {
+                while (rs.next()) {
+                    sum += rs.getInt(1) + rs.getInt(4) + rs.getString(2).length() + rs.getString(5).length();
+                }
+            }
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,69 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.sql.SQLException;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 問い合わせ結果を行のオブジェクトに変換する時間を計測します。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MappingBenchmark {
+    @Param({ "1", "100" })
+    public int rows;
+
+    private PreparedDatabase mDatabase;
+
+    @Setup(Level.Trial)
+    public void setup() throws SQLException {
+        int rowCount = rows;
+        mDatabase = PreparedDatabase.builder()
+                .database("bench")
+                .connectionSupplier(() -> StubJdbc.connection(rowCount))
+                .statementCacheSize(64)
+                .build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        mDatabase.close();
+    }
+
+    @Benchmark
+    public List<EnumMap<BenchColumn, Object>> selectMaps() throws SQLException {
+        return mDatabase.selectMaps(BenchColumn.class, "score > ?", 40);
+    }
+
+    @Benchmark
+    public List<Row> selectRows() throws SQLException {
+        return mDatabase.selectList(BenchColumn.class, Row.MAPPER, "score > ?", 40);
+    }
+
+    @Benchmark
+    public long stream() throws SQLException {
+        try (Stream<Row> stream = mDatabase.streamAllColumns(BenchColumn.class, "score > ?", 40)) {
+            return stream.count();
+        }
+    }
+}
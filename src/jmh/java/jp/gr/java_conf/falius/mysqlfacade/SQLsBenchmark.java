@@ -0,0 +1,54 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * SQL文の組み立てにかかる時間を計測します。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SQLsBenchmark {
+    private final String mTable = BenchColumn.tableName();
+    private final String[] mColumnNames = { "id", "name", "score" };
+    private final DatabaseColumn[] mColumns = { BenchColumn.NAME, BenchColumn.PASSWORD, BenchColumn.SCORE };
+    private final DatabaseColumn[] mUpdateColumns = { BenchColumn.SCORE };
+
+    @Benchmark
+    public String select() {
+        return SQLs.createSelectSql(mTable, mColumnNames, "id = ?");
+    }
+
+    @Benchmark
+    public String insertTemplate() {
+        return SQLs.createInsertSql(mTable, mColumns);
+    }
+
+    @Benchmark
+    public String updateTemplate() {
+        return SQLs.createUpdateSql(mTable, mColumns, "id = ?");
+    }
+
+    @Benchmark
+    public String upsertTemplate() {
+        return SQLs.createUpsertSql(mTable, mColumns, mUpdateColumns);
+    }
+
+    @Benchmark
+    public String inClause() {
+        return SQLs.createInClause("id", 16);
+    }
+}
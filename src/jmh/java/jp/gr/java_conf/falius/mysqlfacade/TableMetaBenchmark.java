@@ -0,0 +1,48 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * テーブルを表すクラスからテーブル名や列を引く時間を計測します。
+ * 以前はテーブル名をリフレクションで毎回取得していたため、その比較に使用します。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TableMetaBenchmark {
+    private final Class<?> mTable = BenchColumn.class;
+
+    @Benchmark
+    public String tableName() {
+        return TableMeta.of(mTable).name();
+    }
+
+    @Benchmark
+    public Object reflectiveTableName() throws ReflectiveOperationException {
+        // TableMetaを使わない場合の比較対象
+        return mTable.getMethod("tableName").invoke(null);
+    }
+
+    @Benchmark
+    public String selectAllSql() {
+        return TableMeta.of(mTable).selectAllSql("id = ?");
+    }
+
+    @Benchmark
+    public int indexOf() {
+        return TableMeta.of(mTable).indexOf(BenchColumn.SAVED);
+    }
+}
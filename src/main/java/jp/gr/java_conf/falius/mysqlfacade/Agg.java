@@ -0,0 +1,34 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+/**
+ * {@link SQLDatabase#aggregate(Class, DatabaseColumn, String, Object[], Agg...)}で求める集約関数です。
+ */
+public enum Agg {
+    SUM("sum(", ")"),
+    MIN("min(", ")"),
+    MAX("max(", ")"),
+    AVG("avg(", ")"),
+    /**
+     * 列の値がNULLでない行の数
+     */
+    COUNT("count(", ")"),
+    /**
+     * 列の値がNULLでない行の、値の種類の数
+     */
+    COUNT_DISTINCT("count(DISTINCT ", ")");
+
+    private final String mPrefix;
+    private final String mSuffix;
+
+    private Agg(String prefix, String suffix) {
+        mPrefix = prefix;
+        mSuffix = suffix;
+    }
+
+    /**
+     * @return 列にこの関数を適用する式
+     */
+    String expression(String column) {
+        return mPrefix + column + mSuffix;
+    }
+}
@@ -0,0 +1,80 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.math.BigDecimal;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * {@link SQLDatabase#aggregate(Class, DatabaseColumn, String, Object[], Agg...)}で求めた集約関数の値です。
+ * <p>
+ * 値は精度を失わないようBigDecimalで保持し、取得時に要求された型に変換します。<br>
+ * 対象の行がない場合などに関数の値がNULLであれば、数値を返すメソッドは0を返します。
+ *     NULLであるかどうかは{@link #isNull(Agg)}で確認してください。
+ * <p>
+ * このクラスは不変です。
+ */
+public final class AggregateResult {
+    private final Map<Agg, BigDecimal> mValues;
+
+    AggregateResult(EnumMap<Agg, BigDecimal> values) {
+        // 保持されて複数の呼び出し元に共有されることがあるため、渡されたマップとは切り離す
+        mValues = new EnumMap<Agg, BigDecimal>(values);
+    }
+
+    /**
+     * @return 関数の値がNULLであればtrue
+     * @throws IllegalArgumentException aggを求めていない場合
+     */
+    public boolean isNull(Agg agg) {
+        return value(agg) == null;
+    }
+
+    /**
+     * @return 関数の値。小数部は切り捨てられる。NULLであれば0
+     * @throws IllegalArgumentException aggを求めていない場合
+     * @throws ArithmeticException 値がlongの範囲に収まらない場合
+     */
+    public long getLong(Agg agg) {
+        BigDecimal value = value(agg);
+        return value == null ? 0 : value.toBigInteger().longValueExact();
+    }
+
+    /**
+     * @return 関数の値。NULLであれば0
+     * @throws IllegalArgumentException aggを求めていない場合
+     */
+    public double getDouble(Agg agg) {
+        BigDecimal value = value(agg);
+        return value == null ? 0 : value.doubleValue();
+    }
+
+    /**
+     * @return 関数の値。NULLであればnull
+     * @throws IllegalArgumentException aggを求めていない場合
+     */
+    public BigDecimal getBigDecimal(Agg agg) {
+        return value(agg);
+    }
+
+    private BigDecimal value(Agg agg) {
+        if (!mValues.containsKey(agg)) {
+            throw new IllegalArgumentException("not aggregated : " + agg);
+        }
+        return mValues.get(agg);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return obj instanceof AggregateResult && mValues.equals(((AggregateResult) obj).mValues);
+    }
+
+    @Override
+    public int hashCode() {
+        return mValues.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "AggregateResult" + mValues;
+    }
+}
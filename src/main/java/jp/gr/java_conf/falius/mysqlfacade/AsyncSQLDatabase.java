@@ -0,0 +1,510 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.lang.reflect.InvocationTargetException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * {@link SQLDatabase}の各操作を別のスレッドで実行し、結果をCompletableFutureで返すクラスです。
+ * <p>
+ * 操作は渡されたSQLDatabaseに委譲されるため、そのSQLDatabaseはスレッドセーフである必要があります。<br>
+ * {@link #AsyncSQLDatabase(PooledDatabase)}で作成した場合、仮想スレッドが使用できる実行環境では
+ *     操作ごとに仮想スレッドを起動し、そうでなければ接続の最大数と同じ数のスレッドで実行します。
+ *     同時に使用される接続の数はいずれの場合もPooledDatabaseによって制限されるため、
+ *     多数の操作を同時に発行しても、接続の空きを待つのは仮想スレッドだけとなります。
+ * <p>
+ * 操作が失敗した場合、返されたCompletableFutureは発生した例外で例外的に完了します。<br>
+ * ResultSetを返す操作は、委譲先が返したResultSetをそのまま返します。
+ *     PooledDatabaseであれば、結果をすべて読み込んだCachedRowSetです。<br>
+ * {@link Params}を受け取る操作は呼び出した時点の値を複製して渡すため、戻った直後からParamsを再利用できます。
+ * <p>
+ * このクラスはスレッドセーフです。
+ */
+public class AsyncSQLDatabase implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncSQLDatabase.class);
+
+    private final SQLDatabase mDatabase;
+    private final Executor mExecutor;
+    private final ExecutorService mOwnedExecutor;
+
+    /**
+     * 仮想スレッド、またはpoolの接続の最大数と同じ数のスレッドで操作を実行するインスタンスを作成します。
+     * <p>
+     * closeメソッドはスレッドを停止しますが、poolはクローズしません。
+     * @param pool 操作を委譲するデータベース
+     */
+    public AsyncSQLDatabase(PooledDatabase pool) {
+        this(pool, newExecutor(pool.maxTotal()), true);
+    }
+
+    /**
+     * 指定したExecutorで操作を実行するインスタンスを作成します。
+     * <p>
+     * closeメソッドはexecutorを停止せず、databaseもクローズしません。
+     * @param database 操作を委譲するスレッドセーフなデータベース
+     * @param executor 操作を実行するExecutor
+     */
+    public AsyncSQLDatabase(SQLDatabase database, Executor executor) {
+        this(database, executor, false);
+    }
+
+    private AsyncSQLDatabase(SQLDatabase database, Executor executor, boolean ownsExecutor) {
+        if (database == null || executor == null) {
+            throw new IllegalArgumentException("database and executor must not be null");
+        }
+        mDatabase = database;
+        mExecutor = executor;
+        mOwnedExecutor = ownsExecutor ? (ExecutorService) executor : null;
+    }
+
+    /**
+     * 仮想スレッドが使用できればタスクごとに仮想スレッドを起動するExecutorServiceを、
+     *     そうでなければfallbackThreads個のデーモンスレッドを持つExecutorServiceを作成します。
+     */
+    static ExecutorService newExecutor(int fallbackThreads) {
+        try {
+            // Java 21以降で追加されたメソッドのため、リフレクションで呼び出す
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
+            LOG.debug("virtual threads are not available, using {} platform threads", fallbackThreads);
+        }
+
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory factory = runnable -> {
+            Thread thread = new Thread(runnable, "mysqlfacade-async-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return Executors.newFixedThreadPool(fallbackThreads, factory);
+    }
+
+    /**
+     * 委譲先のデータベースを使用する任意の処理を非同期に実行します。
+     * @param work 実行する処理
+     * @return 処理の戻り値で完了するCompletableFuture
+     */
+    public <R> CompletableFuture<R> supply(SQLFunction<? super SQLDatabase, ? extends R> work) {
+        CompletableFuture<R> future = new CompletableFuture<R>();
+        try {
+            mExecutor.execute(() -> {
+                if (future.isDone()) {
+                    // 実行前にキャンセルされた
+                    return;
+                }
+                try {
+                    future.complete(work.apply(mDatabase));
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private CompletableFuture<Void> run(SQLConsumer work) {
+        return supply(db -> {
+            work.accept(db);
+            return null;
+        });
+    }
+
+    /**
+     * @see SQLDatabase#select(Class, DatabaseColumn[], String, Object...)
+     */
+    public <T extends DatabaseColumn> CompletableFuture<ResultSet> select(Class<?> table, T[] columns,
+            String whereClause, Object... whereArgs) {
+        return supply(db -> db.select(table, columns, whereClause, whereArgs));
+    }
+
+    /**
+     * @see SQLDatabase#select(Class, DatabaseColumn[], String, Params)
+     */
+    public <T extends DatabaseColumn> CompletableFuture<ResultSet> select(Class<?> table, T[] columns,
+            String whereClause, Params whereArgs) {
+        Params args = whereArgs.copy();
+        return supply(db -> db.select(table, columns, whereClause, args));
+    }
+
+    /**
+     * @see SQLDatabase#selectAllColumns(Class, String, Object...)
+     */
+    public CompletableFuture<ResultSet> selectAllColumns(Class<?> table, String whereClause, Object... whereArgs) {
+        return supply(db -> db.selectAllColumns(table, whereClause, whereArgs));
+    }
+
+    /**
+     * @see SQLDatabase#selectAllColumns(Class, String, Params)
+     */
+    public CompletableFuture<ResultSet> selectAllColumns(Class<?> table, String whereClause, Params whereArgs) {
+        Params args = whereArgs.copy();
+        return supply(db -> db.selectAllColumns(table, whereClause, args));
+    }
+
+    /**
+     * @see SQLDatabase#selectAllColumns(Class, DatabaseColumn, Object)
+     */
+    public CompletableFuture<ResultSet> selectAllColumns(Class<?> table, DatabaseColumn whereColumn,
+            Object whereArg) {
+        return supply(db -> db.selectAllColumns(table, whereColumn, whereArg));
+    }
+
+    /**
+     * @see SQLDatabase#selectAll(Class)
+     */
+    public CompletableFuture<ResultSet> selectAll(Class<?> table) {
+        return supply(db -> db.selectAll(table));
+    }
+
+    /**
+     * @see SQLDatabase#selectList(Class, RowMapper, String, Object...)
+     */
+    public <R> CompletableFuture<List<R>> selectList(Class<?> table, RowMapper<R> mapper, String whereClause,
+            Object... whereArgs) {
+        return supply(db -> db.selectList(table, mapper, whereClause, whereArgs));
+    }
+
+    /**
+     * @see SQLDatabase#selectMaps(Class, String, Object...)
+     */
+    public <T extends Enum<T> & DatabaseColumn> CompletableFuture<List<EnumMap<T, Object>>> selectMaps(
+            Class<T> table, String whereClause, Object... whereArgs) {
+        return supply(db -> db.selectMaps(table, whereClause, whereArgs));
+    }
+
+    /**
+     * @see SQLDatabase#selectIn(Class, DatabaseColumn, Collection)
+     */
+    public CompletableFuture<ResultSet> selectIn(Class<?> table, DatabaseColumn column, Collection<?> keys) {
+        return supply(db -> db.selectIn(table, column, keys));
+    }
+
+    /**
+     * @see SQLDatabase#update(Class, Map, String, Object...)
+     */
+    public CompletableFuture<Integer> update(Class<?> table, Map<? extends DatabaseColumn, ?> values,
+            String whereClause, Object... whereArgs) {
+        return supply(db -> db.update(table, values, whereClause, whereArgs));
+    }
+
+    /**
+     * @see SQLDatabase#update(Class, Map, String, Params)
+     */
+    public CompletableFuture<Integer> update(Class<?> table, Map<? extends DatabaseColumn, ?> values,
+            String whereClause, Params whereArgs) {
+        Params args = whereArgs.copy();
+        return supply(db -> db.update(table, values, whereClause, args));
+    }
+
+    /**
+     * @see SQLDatabase#update(Class, Map, DatabaseColumn, Object)
+     */
+    public CompletableFuture<Integer> update(Class<?> table, Map<? extends DatabaseColumn, ?> values,
+            DatabaseColumn whereColumn, Object whereArg) {
+        return supply(db -> db.update(table, values, whereColumn, whereArg));
+    }
+
+    /**
+     * @see SQLDatabase#updateIn(Class, Map, DatabaseColumn, Collection)
+     */
+    public CompletableFuture<Integer> updateIn(Class<?> table, Map<? extends DatabaseColumn, ?> values,
+            DatabaseColumn column, Collection<?> keys) {
+        return supply(db -> db.updateIn(table, values, column, keys));
+    }
+
+    /**
+     * @see SQLDatabase#insert(Class, Map)
+     */
+    public CompletableFuture<Long> insert(Class<?> table, Map<? extends DatabaseColumn, ?> values) {
+        return supply(db -> db.insert(table, values));
+    }
+
+    /**
+     * @see SQLDatabase#insertAll(Class, Collection)
+     */
+    public CompletableFuture<long[]> insertAll(Class<?> table,
+            Collection<? extends Map<? extends DatabaseColumn, ?>> rows) {
+        return supply(db -> db.insertAll(table, rows));
+    }
+
+    /**
+     * @see SQLDatabase#insertAll(Class, Collection, int)
+     */
+    public CompletableFuture<long[]> insertAll(Class<?> table,
+            Collection<? extends Map<? extends DatabaseColumn, ?>> rows, int batchSize) {
+        return supply(db -> db.insertAll(table, rows, batchSize));
+    }
+
+    /**
+     * @see SQLDatabase#upsert(Class, Map, DatabaseColumn...)
+     */
+    public CompletableFuture<UpsertResult> upsert(Class<?> table, Map<? extends DatabaseColumn, ?> values,
+            DatabaseColumn... updateColumns) {
+        return supply(db -> db.upsert(table, values, updateColumns));
+    }
+
+    /**
+     * @see SQLDatabase#upsertAll(Class, Collection, DatabaseColumn...)
+     */
+    public CompletableFuture<UpsertResult> upsertAll(Class<?> table,
+            Collection<? extends Map<? extends DatabaseColumn, ?>> rows, DatabaseColumn... updateColumns) {
+        return supply(db -> db.upsertAll(table, rows, updateColumns));
+    }
+
+    /**
+     * @see SQLDatabase#upsertAll(Class, Collection, int, DatabaseColumn...)
+     */
+    public CompletableFuture<UpsertResult> upsertAll(Class<?> table,
+            Collection<? extends Map<? extends DatabaseColumn, ?>> rows, int batchSize,
+            DatabaseColumn... updateColumns) {
+        return supply(db -> db.upsertAll(table, rows, batchSize, updateColumns));
+    }
+
+    /**
+     * rowsは操作を実行するスレッドで読み出されます。
+     * @see SQLDatabase#bulkLoad(Class, Iterator)
+     */
+    public CompletableFuture<Integer> bulkLoad(Class<?> table,
+            Iterator<? extends Map<? extends DatabaseColumn, ?>> rows) {
+        return supply(db -> db.bulkLoad(table, rows));
+    }
+
+    /**
+     * tsvは操作を実行するスレッドで読み出されます。
+     * @see SQLDatabase#bulkLoad(Class, InputStream)
+     */
+    public CompletableFuture<Integer> bulkLoad(Class<?> table, InputStream tsv) {
+        return supply(db -> db.bulkLoad(table, tsv));
+    }
+
+    /**
+     * @see SQLDatabase#delete(Class, String, Object...)
+     */
+    public CompletableFuture<Integer> delete(Class<?> table, String whereClause, Object... whereArgs) {
+        return supply(db -> db.delete(table, whereClause, whereArgs));
+    }
+
+    /**
+     * @see SQLDatabase#delete(Class, String, Params)
+     */
+    public CompletableFuture<Integer> delete(Class<?> table, String whereClause, Params whereArgs) {
+        Params args = whereArgs.copy();
+        return supply(db -> db.delete(table, whereClause, args));
+    }
+
+    /**
+     * @see SQLDatabase#delete(Class, DatabaseColumn, Object)
+     */
+    public CompletableFuture<Integer> delete(Class<?> table, DatabaseColumn whereColumn, Object whereArg) {
+        return supply(db -> db.delete(table, whereColumn, whereArg));
+    }
+
+    /**
+     * @see SQLDatabase#deleteIn(Class, DatabaseColumn, Collection)
+     */
+    public CompletableFuture<Integer> deleteIn(Class<?> table, DatabaseColumn column, Collection<?> keys) {
+        return supply(db -> db.deleteIn(table, column, keys));
+    }
+
+    /**
+     * @see SQLDatabase#create(Class)
+     */
+    public <T extends Enum<T> & DatabaseColumn> CompletableFuture<Void> create(Class<T> table) {
+        return run(db -> db.create(table));
+    }
+
+    /**
+     * @see SQLDatabase#empty(Class)
+     */
+    public CompletableFuture<Integer> empty(Class<?> table) {
+        return supply(db -> db.empty(table));
+    }
+
+    /**
+     * @see SQLDatabase#drop(Class)
+     */
+    public CompletableFuture<Void> drop(Class<?> table) {
+        return run(db -> db.drop(table));
+    }
+
+    /**
+     * @see SQLDatabase#isExistTable(Class)
+     */
+    public CompletableFuture<Boolean> isExistTable(Class<?> table) {
+        return supply(db -> db.isExistTable(table));
+    }
+
+    /**
+     * @see SQLDatabase#isExistRecord(Class, String, Object...)
+     */
+    public CompletableFuture<Boolean> isExistRecord(Class<?> table, String whereClause, Object... whereArgs) {
+        return supply(db -> db.isExistRecord(table, whereClause, whereArgs));
+    }
+
+    /**
+     * @see SQLDatabase#isExistRecord(Class, DatabaseColumn, Object)
+     */
+    public CompletableFuture<Boolean> isExistRecord(Class<?> table, DatabaseColumn whereColumn, Object whereArg) {
+        return supply(db -> db.isExistRecord(table, whereColumn, whereArg));
+    }
+
+    /**
+     * @see SQLDatabase#existing(Class, DatabaseColumn, Collection)
+     */
+    public CompletableFuture<Set<Object>> existing(Class<?> table, DatabaseColumn column, Collection<?> keys) {
+        return supply(db -> db.existing(table, column, keys));
+    }
+
+    /**
+     * @see SQLDatabase#inTransaction(SQLFunction)
+     */
+    public <R> CompletableFuture<R> inTransaction(SQLFunction<? super SQLDatabase, ? extends R> work) {
+        return supply(db -> db.inTransaction(work));
+    }
+
+    /**
+     * @see SQLDatabase#sum(Class, DatabaseColumn)
+     */
+    public CompletableFuture<Integer> sum(Class<?> table, DatabaseColumn column) {
+        return supply(db -> db.sum(table, column));
+    }
+
+    /**
+     * @see SQLDatabase#sum(Class, DatabaseColumn, String, Object...)
+     */
+    public CompletableFuture<Integer> sum(Class<?> table, DatabaseColumn column, String whereClause,
+            Object... whereArgs) {
+        return supply(db -> db.sum(table, column, whereClause, whereArgs));
+    }
+
+    /**
+     * @see SQLDatabase#max(Class, DatabaseColumn)
+     */
+    public CompletableFuture<Integer> max(Class<?> table, DatabaseColumn column) {
+        return supply(db -> db.max(table, column));
+    }
+
+    /**
+     * @see SQLDatabase#max(Class, DatabaseColumn, String, Object...)
+     */
+    public CompletableFuture<Integer> max(Class<?> table, DatabaseColumn column, String whereClause,
+            Object... whereArgs) {
+        return supply(db -> db.max(table, column, whereClause, whereArgs));
+    }
+
+    /**
+     * @see SQLDatabase#min(Class, DatabaseColumn)
+     */
+    public CompletableFuture<Integer> min(Class<?> table, DatabaseColumn column) {
+        return supply(db -> db.min(table, column));
+    }
+
+    /**
+     * @see SQLDatabase#min(Class, DatabaseColumn, String, Object...)
+     */
+    public CompletableFuture<Integer> min(Class<?> table, DatabaseColumn column, String whereClause,
+            Object... whereArgs) {
+        return supply(db -> db.min(table, column, whereClause, whereArgs));
+    }
+
+    /**
+     * @see SQLDatabase#count(Class)
+     */
+    public CompletableFuture<Integer> count(Class<?> table) {
+        return supply(db -> db.count(table));
+    }
+
+    /**
+     * @see SQLDatabase#count(Class, DatabaseColumn)
+     */
+    public CompletableFuture<Integer> count(Class<?> table, DatabaseColumn column) {
+        return supply(db -> db.count(table, column));
+    }
+
+    /**
+     * @see SQLDatabase#count(Class, DatabaseColumn, String, Object...)
+     */
+    public CompletableFuture<Integer> count(Class<?> table, DatabaseColumn column, String whereClause,
+            Object... whereArgs) {
+        return supply(db -> db.count(table, column, whereClause, whereArgs));
+    }
+
+    /**
+     * @see SQLDatabase#aggregate(Class, DatabaseColumn, String, Object[], Agg...)
+     */
+    public CompletableFuture<AggregateResult> aggregate(Class<?> table, DatabaseColumn column, String whereClause,
+            Object[] whereArgs, Agg... aggs) {
+        return supply(db -> db.aggregate(table, column, whereClause, whereArgs, aggs));
+    }
+
+    /**
+     * @see SQLDatabase#aggregateBy(Class, DatabaseColumn, Agg, DatabaseColumn, String, Object...)
+     */
+    public CompletableFuture<Map<Object, BigDecimal>> aggregateBy(Class<?> table, DatabaseColumn groupColumn, Agg agg,
+            DatabaseColumn column, String whereClause, Object... whereArgs) {
+        return supply(db -> db.aggregateBy(table, groupColumn, agg, column, whereClause, whereArgs));
+    }
+
+    /**
+     * @see SQLDatabase#aggregateByTime(Class, DatabaseColumn, TimeBucket, Agg, DatabaseColumn, String, Object...)
+     */
+    public CompletableFuture<Map<Timestamp, BigDecimal>> aggregateByTime(Class<?> table, DatabaseColumn timeColumn,
+            TimeBucket bucket, Agg agg, DatabaseColumn column, String whereClause, Object... whereArgs) {
+        return supply(db -> db.aggregateByTime(table, timeColumn, bucket, agg, column, whereClause, whereArgs));
+    }
+
+    /**
+     * @return 操作を委譲するデータベース
+     */
+    public SQLDatabase database() {
+        return mDatabase;
+    }
+
+    /**
+     * このインスタンスが作成したスレッドを停止します。実行中と待機中の操作は完了するまで待機します。
+     * <p>
+     * 委譲先のデータベースはクローズしません。
+     */
+    @Override
+    public void close() {
+        if (mOwnedExecutor == null) {
+            return;
+        }
+        mOwnedExecutor.shutdown();
+        try {
+            while (!mOwnedExecutor.awaitTermination(1, TimeUnit.MINUTES)) {
+                LOG.debug("waiting for asynchronous operations to complete");
+            }
+        } catch (InterruptedException e) {
+            mOwnedExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @FunctionalInterface
+    private interface SQLConsumer {
+
+        void accept(SQLDatabase database) throws SQLException;
+    }
+}
@@ -0,0 +1,106 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 値の型に応じてEntryのsetメソッドを選び、パラメータをセットするクラスです。
+ * <p>
+ * 使用するsetメソッドは値のクラスごとに一度だけ決定し、以降は保持したものを使用します。<br>
+ * 対応していないクラスの値は{@link Entry#setObject(Object)}でセットし、変換をドライバに任せます。
+ */
+final class Binders {
+    private static final Map<Class<?>, Binder> EXACT = new HashMap<Class<?>, Binder>();
+    private static final ClassValue<Binder> BINDERS = new ClassValue<Binder>() {
+
+        @Override
+        protected Binder computeValue(Class<?> type) {
+            return resolve(type);
+        }
+    };
+
+    static {
+        EXACT.put(Integer.class, (entry, value) -> entry.setInt((Integer) value));
+        EXACT.put(Long.class, (entry, value) -> entry.setLong((Long) value));
+        EXACT.put(Short.class, (entry, value) -> entry.setInt((Short) value));
+        EXACT.put(Byte.class, (entry, value) -> entry.setInt((Byte) value));
+        EXACT.put(Double.class, (entry, value) -> entry.setDouble((Double) value));
+        EXACT.put(Float.class, (entry, value) -> entry.setFloat((Float) value));
+        EXACT.put(String.class, (entry, value) -> entry.setString((String) value));
+        EXACT.put(Character.class, (entry, value) -> entry.setString(value.toString()));
+        EXACT.put(Boolean.class, (entry, value) -> entry.setBoolean((Boolean) value));
+        EXACT.put(BigDecimal.class, (entry, value) -> entry.setBigDecimal((BigDecimal) value));
+        EXACT.put(BigInteger.class, (entry, value) -> entry.setBigDecimal(new BigDecimal((BigInteger) value)));
+        EXACT.put(byte[].class, (entry, value) -> entry.setBytes((byte[]) value));
+        EXACT.put(Timestamp.class, (entry, value) -> entry.setTimestamp((Timestamp) value));
+        EXACT.put(Date.class, (entry, value) -> entry.setDate((Date) value));
+        EXACT.put(Time.class, (entry, value) -> entry.setTime((Time) value));
+        EXACT.put(java.util.Date.class,
+                (entry, value) -> entry.setTimestamp(new Timestamp(((java.util.Date) value).getTime())));
+        EXACT.put(LocalDateTime.class, (entry, value) -> entry.setTimestamp(Timestamp.valueOf((LocalDateTime) value)));
+        EXACT.put(LocalDate.class, (entry, value) -> entry.setDate(Date.valueOf((LocalDate) value)));
+        EXACT.put(LocalTime.class, (entry, value) -> entry.setTime(Time.valueOf((LocalTime) value)));
+        EXACT.put(Instant.class, (entry, value) -> entry.setTimestamp(Timestamp.from((Instant) value)));
+        EXACT.put(OffsetDateTime.class,
+                (entry, value) -> entry.setTimestamp(Timestamp.from(((OffsetDateTime) value).toInstant())));
+        EXACT.put(ZonedDateTime.class,
+                (entry, value) -> entry.setTimestamp(Timestamp.from(((ZonedDateTime) value).toInstant())));
+    }
+
+    private Binders() {}
+
+    /**
+     * 値の型に応じたsetメソッドで、Entryの次のパラメータに値をセットします。
+     * @param value セットする値。nullならNULLをセットする
+     * @throws SQLException データベースアクセスエラーが発生した場合
+     */
+    static void bind(SQLDatabase.Entry entry, Object value) throws SQLException {
+        if (value == null) {
+            entry.setNull();
+            return;
+        }
+        BINDERS.get(value.getClass()).bind(entry, value);
+    }
+
+    private static Binder resolve(Class<?> type) {
+        Binder binder = EXACT.get(type);
+        if (binder != null) {
+            return binder;
+        }
+        // java.sql.Timestampなどはjava.util.Dateを継承するため、具体的なクラスから順に調べる
+        if (Timestamp.class.isAssignableFrom(type)) {
+            return EXACT.get(Timestamp.class);
+        }
+        if (Date.class.isAssignableFrom(type)) {
+            return EXACT.get(Date.class);
+        }
+        if (Time.class.isAssignableFrom(type)) {
+            return EXACT.get(Time.class);
+        }
+        if (java.util.Date.class.isAssignableFrom(type)) {
+            return EXACT.get(java.util.Date.class);
+        }
+        if (Enum.class.isAssignableFrom(type)) {
+            return (entry, value) -> entry.setString(((Enum<?>) value).name());
+        }
+        return (entry, value) -> entry.setObject(value);
+    }
+
+    @FunctionalInterface
+    private interface Binder {
+
+        void bind(SQLDatabase.Entry entry, Object value) throws SQLException;
+    }
+}
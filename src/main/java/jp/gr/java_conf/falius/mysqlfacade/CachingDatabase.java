@@ -0,0 +1,870 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetFactory;
+import javax.sql.rowset.RowSetProvider;
+
+/**
+ * 問い合わせの結果を保持し、同じ問い合わせには保持した結果を返す{@link SQLDatabase}のデコレーターです。
+ * <p>
+ * 結果はテーブル、SQL文、条件節に埋め込む値の組ごとに保持されます。保持の対象となるのは次のメソッドです。
+ * <ul>
+ * <li>Object...で値を渡すselect、selectAllColumns、selectAll
+ * <li>sum、max、min、count、aggregate、aggregateBy、aggregateByTime
+ * <li>isExistRecord
+ * </ul>
+ * ResultSetを返すメソッドは、結果をすべて読み込んだCachedRowSetの複製を返します。
+ *     マップを返すメソッドも複製を返すため、戻り値を変更しても保持している結果には影響しません。<br>
+ * 保持数が上限を超えると最も長く使われていない結果から破棄し、保持してからttlMillisを経過した結果は使用しません。
+ * <p>
+ * このインスタンスを通して行を書き換えるメソッドを呼び出すと、そのテーブルの結果はすべて破棄されます。
+ *     executeメソッドはどのテーブルを書き換えるか判断できないため、すべての結果を破棄します。<br>
+ * このインスタンスを通さずに行われた書き換えは検出できないため、
+ *     必要に応じて{@link #invalidate(Class)}を呼び出してください。
+ * <p>
+ * 委譲先がスレッドセーフであれば、このクラスもスレッドセーフです。
+ */
+public class CachingDatabase implements SQLDatabase {
+    private final SQLDatabase mDatabase;
+    private final int mMaxEntries;
+    private final long mTtlNanos;
+    private final RowSetFactory mRowSetFactory;
+
+    private final Object mLock = new Object();
+    private final Map<Key, Cached> mCache;
+    private final Map<String, Long> mGenerations = new HashMap<String, Long>();
+    private long mEpoch = 0;
+    private long mHitCount = 0;
+    private long mMissCount = 0;
+    private long mEvictionCount = 0;
+    private long mInvalidationCount = 0;
+
+    /**
+     * @param database 委譲先のデータベース
+     * @param maxEntries 保持する結果の最大数
+     * @param ttlMillis 結果を保持する時間(ミリ秒)
+     * @throws SQLException RowSetFactoryを作成できなかった場合
+     */
+    public CachingDatabase(SQLDatabase database, int maxEntries, long ttlMillis) throws SQLException {
+        if (maxEntries <= 0 || ttlMillis <= 0) {
+            throw new IllegalArgumentException(String.format(
+                    "maxEntries and ttlMillis must be positive : %d, %d", maxEntries, ttlMillis));
+        }
+        mDatabase = database;
+        mMaxEntries = maxEntries;
+        mTtlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        mRowSetFactory = RowSetProvider.newFactory();
+        mCache = new LinkedHashMap<Key, Cached>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Cached> eldest) {
+                if (size() > mMaxEntries) {
+                    mEvictionCount++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 保持した値があればそれを、なければloaderで読み込んで保持した値を返します。
+     * 読み込み中にテーブルが書き換えられた場合、読み込んだ値は保持しません。
+     */
+    private <R> R cached(Class<?> table, String sql, Object[] args, SQLSupplier<R> loader) throws SQLException {
+        String tableName = TableMeta.of(table).name();
+        Key key = new Key(tableName, sql, args);
+        long epoch;
+        long generation;
+        synchronized (mLock) {
+            Cached cached = mCache.get(key);
+            if (cached != null) {
+                if (System.nanoTime() - cached.mCreatedNanos < mTtlNanos) {
+                    mHitCount++;
+                    @SuppressWarnings("unchecked")
+                    R value = (R) cached.mValue;
+                    return value;
+                }
+                mCache.remove(key);
+                mEvictionCount++;
+            }
+            mMissCount++;
+            epoch = mEpoch;
+            generation = generation(tableName);
+        }
+
+        R value = loader.get();
+        synchronized (mLock) {
+            if (epoch == mEpoch && generation == generation(tableName)) {
+                mCache.put(key, new Cached(value));
+            }
+        }
+        return value;
+    }
+
+    private ResultSet cachedQuery(Class<?> table, String sql, Object[] args, SQLSupplier<ResultSet> query)
+            throws SQLException {
+        CachedRowSet rowSet = cached(table, sql, args, () -> {
+            try (ResultSet rs = query.get()) {
+                CachedRowSet loaded = mRowSetFactory.createCachedRowSet();
+                loaded.populate(rs);
+                return loaded;
+            }
+        });
+        // 保持しているCachedRowSetのカーソルや内容が変わらないよう、複製を返す
+        synchronized (rowSet) {
+            return rowSet.createCopy();
+        }
+    }
+
+    private long generation(String tableName) {
+        Long generation = mGenerations.get(tableName);
+        return generation == null ? 0 : generation;
+    }
+
+    /**
+     * テーブルについて保持しているすべての結果を破棄します。
+     * このインスタンスを通さずにテーブルを書き換えた場合に使用します。
+     */
+    public void invalidate(Class<?> table) {
+        String tableName = TableMeta.of(table).name();
+        synchronized (mLock) {
+            mGenerations.put(tableName, generation(tableName) + 1);
+            Iterator<Key> iterator = mCache.keySet().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().mTable.equals(tableName)) {
+                    iterator.remove();
+                    mInvalidationCount++;
+                }
+            }
+        }
+    }
+
+    /**
+     * 保持しているすべての結果を破棄します。
+     */
+    public void invalidateAll() {
+        synchronized (mLock) {
+            mEpoch++;
+            mGenerations.clear();
+            mInvalidationCount += mCache.size();
+            mCache.clear();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T extends DatabaseColumn> ResultSet select(Class<?> table, T[] columns, String whereClause,
+            Object... whereArgs) throws SQLException {
+        String sql = SQLs.createSelectSql(TableMeta.of(table).name(), columns, whereClause);
+        return cachedQuery(table, sql, whereArgs, () -> mDatabase.select(table, columns, whereClause, whereArgs));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Paramsは再利用されるため、結果は保持しません。
+     */
+    @Override
+    public <T extends DatabaseColumn> ResultSet select(Class<?> table, T[] columns, String whereClause,
+            Params whereArgs) throws SQLException {
+        return mDatabase.select(table, columns, whereClause, whereArgs);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ResultSet selectAllColumns(Class<?> table, String whereClause, Object... whereArgs) throws SQLException {
+        String sql = TableMeta.of(table).selectAllSql(whereClause);
+        return cachedQuery(table, sql, whereArgs, () -> mDatabase.selectAllColumns(table, whereClause, whereArgs));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Paramsは再利用されるため、結果は保持しません。
+     */
+    @Override
+    public ResultSet selectAllColumns(Class<?> table, String whereClause, Params whereArgs) throws SQLException {
+        return mDatabase.selectAllColumns(table, whereClause, whereArgs);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ResultSet selectAllColumns(Class<?> table, DatabaseColumn whereColumn, Object whereArg) throws SQLException {
+        return selectAllColumns(table, whereColumn.toString() + "=?", whereArg);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ResultSet selectAll(Class<?> table) throws SQLException {
+        return selectAllColumns(table, "");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T extends DatabaseColumn> Stream<Row> stream(Class<?> table, T[] columns, String whereClause,
+            Object... whereArgs) throws SQLException {
+        return mDatabase.stream(table, columns, whereClause, whereArgs);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <R> Stream<R> stream(Class<?> table, RowMapper<R> mapper, String whereClause, Object... whereArgs)
+            throws SQLException {
+        return mDatabase.stream(table, mapper, whereClause, whereArgs);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <R> List<R> selectList(Class<?> table, RowMapper<R> mapper, String whereClause, Object... whereArgs)
+            throws SQLException {
+        return mDatabase.selectList(table, mapper, whereClause, whereArgs);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T extends Enum<T> & DatabaseColumn> List<EnumMap<T, Object>> selectMaps(Class<T> table,
+            String whereClause, Object... whereArgs) throws SQLException {
+        return mDatabase.selectMaps(table, whereClause, whereArgs);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Stream<Row> streamAllColumns(Class<?> table, String whereClause, Object... whereArgs)
+            throws SQLException {
+        return mDatabase.streamAllColumns(table, whereClause, whereArgs);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Stream<Row> streamAll(Class<?> table) throws SQLException {
+        return mDatabase.streamAll(table);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PageIterator paginate(Class<?> table, DatabaseColumn keyColumn, int pageSize, Executor prefetchExecutor) {
+        return mDatabase.paginate(table, keyColumn, pageSize, prefetchExecutor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ResultSet selectIn(Class<?> table, DatabaseColumn column, Collection<?> keys) throws SQLException {
+        return mDatabase.selectIn(table, column, keys);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int update(Class<?> table, Map<? extends DatabaseColumn, ?> values, String whereClause, Object... whereArgs)
+            throws SQLException {
+        try {
+            return mDatabase.update(table, values, whereClause, whereArgs);
+        } finally {
+            invalidate(table);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int update(Class<?> table, Map<? extends DatabaseColumn, ?> values, String whereClause, Params whereArgs)
+            throws SQLException {
+        try {
+            return mDatabase.update(table, values, whereClause, whereArgs);
+        } finally {
+            invalidate(table);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int update(Class<?> table, Map<? extends DatabaseColumn, ?> values, DatabaseColumn whereColumn,
+            Object whereArg) throws SQLException {
+        try {
+            return mDatabase.update(table, values, whereColumn, whereArg);
+        } finally {
+            invalidate(table);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int updateIn(Class<?> table, Map<? extends DatabaseColumn, ?> values, DatabaseColumn column,
+            Collection<?> keys) throws SQLException {
+        try {
+            return mDatabase.updateIn(table, values, column, keys);
+        } finally {
+            invalidate(table);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long insert(Class<?> table, Map<? extends DatabaseColumn, ?> values) throws SQLException {
+        try {
+            return mDatabase.insert(table, values);
+        } finally {
+            invalidate(table);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long[] insertAll(Class<?> table, Collection<? extends Map<? extends DatabaseColumn, ?>> rows)
+            throws SQLException {
+        try {
+            return mDatabase.insertAll(table, rows);
+        } finally {
+            invalidate(table);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long[] insertAll(Class<?> table, Collection<? extends Map<? extends DatabaseColumn, ?>> rows,
+            int batchSize) throws SQLException {
+        try {
+            return mDatabase.insertAll(table, rows, batchSize);
+        } finally {
+            invalidate(table);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public UpsertResult upsert(Class<?> table, Map<? extends DatabaseColumn, ?> values,
+            DatabaseColumn... updateColumns) throws SQLException {
+        try {
+            return mDatabase.upsert(table, values, updateColumns);
+        } finally {
+            invalidate(table);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public UpsertResult upsertAll(Class<?> table, Collection<? extends Map<? extends DatabaseColumn, ?>> rows,
+            DatabaseColumn... updateColumns) throws SQLException {
+        try {
+            return mDatabase.upsertAll(table, rows, updateColumns);
+        } finally {
+            invalidate(table);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public UpsertResult upsertAll(Class<?> table, Collection<? extends Map<? extends DatabaseColumn, ?>> rows,
+            int batchSize, DatabaseColumn... updateColumns) throws SQLException {
+        try {
+            return mDatabase.upsertAll(table, rows, batchSize, updateColumns);
+        } finally {
+            invalidate(table);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int bulkLoad(Class<?> table, Iterator<? extends Map<? extends DatabaseColumn, ?>> rows)
+            throws SQLException {
+        try {
+            return mDatabase.bulkLoad(table, rows);
+        } finally {
+            invalidate(table);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int bulkLoad(Class<?> table, InputStream tsv) throws SQLException {
+        try {
+            return mDatabase.bulkLoad(table, tsv);
+        } finally {
+            invalidate(table);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int delete(Class<?> table, String whereClause, Object... whereArgs) throws SQLException {
+        try {
+            return mDatabase.delete(table, whereClause, whereArgs);
+        } finally {
+            invalidate(table);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int delete(Class<?> table, String whereClause, Params whereArgs) throws SQLException {
+        try {
+            return mDatabase.delete(table, whereClause, whereArgs);
+        } finally {
+            invalidate(table);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int delete(Class<?> table, DatabaseColumn whereColumn, Object whereArg) throws SQLException {
+        try {
+            return mDatabase.delete(table, whereColumn, whereArg);
+        } finally {
+            invalidate(table);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int deleteIn(Class<?> table, DatabaseColumn column, Collection<?> keys) throws SQLException {
+        try {
+            return mDatabase.deleteIn(table, column, keys);
+        } finally {
+            invalidate(table);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T extends Enum<T> & DatabaseColumn> void create(Class<T> table) throws SQLException {
+        try {
+            mDatabase.create(table);
+        } finally {
+            invalidate(table);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int empty(Class<?> table) throws SQLException {
+        try {
+            return mDatabase.empty(table);
+        } finally {
+            invalidate(table);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void drop(Class<?> table) throws SQLException {
+        try {
+            mDatabase.drop(table);
+        } finally {
+            invalidate(table);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isExistTable(Class<?> table) throws SQLException {
+        return mDatabase.isExistTable(table);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isExistRecord(Class<?> table, String whereClause, Object... whereArgs) throws SQLException {
+        String sql = TableMeta.of(table).existsSql(whereClause);
+        return cached(table, sql, whereArgs,
+                () -> mDatabase.isExistRecord(table, whereClause, whereArgs));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isExistRecord(Class<?> table, DatabaseColumn whereColumn, Object whereArg) throws SQLException {
+        return isExistRecord(table, whereColumn.toString() + "=?", whereArg);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Object> existing(Class<?> table, DatabaseColumn column, Collection<?> keys) throws SQLException {
+        return mDatabase.existing(table, column, keys);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * 実行するSQL文がどのテーブルを書き換えるか判断できないため、保持しているすべての結果を破棄します。
+     */
+    @Override
+    public Entry execute(String sql) throws SQLException {
+        invalidateAll();
+        return mDatabase.execute(sql);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * 処理に渡されるSQLDatabaseはキャッシュを経由しません。
+     *     処理がどのテーブルを変更したかは追跡しないため、トランザクションを終えた時点ですべてのキャッシュを破棄します。
+     */
+    @Override
+    public <R> R inTransaction(SQLFunction<? super SQLDatabase, ? extends R> work) throws SQLException {
+        try {
+            return mDatabase.inTransaction(work);
+        } finally {
+            invalidateAll();
+        }
+    }
+
+    /**
+     * 委譲先のデータベースをクローズし、保持しているすべての結果を破棄します。
+     */
+    @Override
+    public void close() throws SQLException {
+        invalidateAll();
+        mDatabase.close();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() throws SQLException {
+        mDatabase.clear();
+    }
+
+    private int cachedFunc(String funcName, Class<?> table, DatabaseColumn column, String whereClause,
+            Object[] whereArgs, SQLSupplier<Integer> loader) throws SQLException {
+        String sql = SQLs.createSelectFuncSql(funcName, TableMeta.of(table).name(),
+                column == null ? "*" : column.toString(), whereClause);
+        return cached(table, sql, whereArgs, loader);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int sum(Class<?> table, DatabaseColumn column) throws SQLException {
+        return sum(table, column, "");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int sum(Class<?> table, DatabaseColumn column, String whereClause, Object... whereArgs)
+            throws SQLException {
+        return cachedFunc("sum", table, column, whereClause, whereArgs,
+                () -> mDatabase.sum(table, column, whereClause, whereArgs));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int max(Class<?> table, DatabaseColumn column) throws SQLException {
+        return max(table, column, "");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int max(Class<?> table, DatabaseColumn column, String whereClause, Object... whereArgs)
+            throws SQLException {
+        return cachedFunc("max", table, column, whereClause, whereArgs,
+                () -> mDatabase.max(table, column, whereClause, whereArgs));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int min(Class<?> table, DatabaseColumn column) throws SQLException {
+        return min(table, column, "");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int min(Class<?> table, DatabaseColumn column, String whereClause, Object... whereArgs)
+            throws SQLException {
+        return cachedFunc("min", table, column, whereClause, whereArgs,
+                () -> mDatabase.min(table, column, whereClause, whereArgs));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int count(Class<?> table) throws SQLException {
+        return cachedFunc("count", table, null, "", new Object[0], () -> mDatabase.count(table));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int count(Class<?> table, DatabaseColumn column) throws SQLException {
+        return count(table, column, "");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int count(Class<?> table, DatabaseColumn column, String whereClause, Object... whereArgs)
+            throws SQLException {
+        return cachedFunc("count", table, column, whereClause, whereArgs,
+                () -> mDatabase.count(table, column, whereClause, whereArgs));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AggregateResult aggregate(Class<?> table, DatabaseColumn column, String whereClause, Object[] whereArgs,
+            Agg... aggs) throws SQLException {
+        String sql = SQLs.createAggregateSql(TableMeta.of(table).name(), column.toString(), aggs, whereClause);
+        return cached(table, sql, whereArgs, () -> mDatabase.aggregate(table, column, whereClause, whereArgs, aggs));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<Object, BigDecimal> aggregateBy(Class<?> table, DatabaseColumn groupColumn, Agg agg,
+            DatabaseColumn column, String whereClause, Object... whereArgs) throws SQLException {
+        String sql = SQLs.createGroupBySql(TableMeta.of(table).name(), groupColumn.toString(),
+                agg.expression(column.toString()), whereClause);
+        Map<Object, BigDecimal> values = cached(table, sql, whereArgs, () -> Collections.unmodifiableMap(
+                mDatabase.aggregateBy(table, groupColumn, agg, column, whereClause, whereArgs)));
+        return copyOf(values);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<Timestamp, BigDecimal> aggregateByTime(Class<?> table, DatabaseColumn timeColumn, TimeBucket bucket,
+            Agg agg, DatabaseColumn column, String whereClause, Object... whereArgs) throws SQLException {
+        String sql = SQLs.createGroupBySql(TableMeta.of(table).name(), bucket.expression(timeColumn.toString()),
+                agg.expression(column.toString()), whereClause);
+        Map<Timestamp, BigDecimal> values = cached(table, sql, whereArgs, () -> Collections.unmodifiableMap(
+                mDatabase.aggregateByTime(table, timeColumn, bucket, agg, column, whereClause, whereArgs)));
+        return copyOf(values);
+    }
+
+    /**
+     * 保持しているマップが呼び出し元から変更されないよう、複製を返します。
+     * Timestampなどの日時はそれ自体が変更できるため、キーも複製します。
+     */
+    private static <K> Map<K, BigDecimal> copyOf(Map<K, BigDecimal> values) {
+        Map<K, BigDecimal> copy = new LinkedHashMap<K, BigDecimal>(values.size() * 4 / 3 + 1);
+        for (Map.Entry<K, BigDecimal> mapEntry : values.entrySet()) {
+            K key = mapEntry.getKey();
+            if (key instanceof Date) {
+                @SuppressWarnings("unchecked")
+                K cloned = (K) ((Date) key).clone();
+                key = cloned;
+            }
+            copy.put(key, mapEntry.getValue());
+        }
+        return copy;
+    }
+
+    /**
+     * @return 委譲先のデータベース
+     */
+    public SQLDatabase database() {
+        return mDatabase;
+    }
+
+    /**
+     * @return 現在保持している結果の数
+     */
+    public int size() {
+        synchronized (mLock) {
+            return mCache.size();
+        }
+    }
+
+    /**
+     * @return 保持していた結果を返した回数
+     */
+    public long hitCount() {
+        synchronized (mLock) {
+            return mHitCount;
+        }
+    }
+
+    /**
+     * @return 保持していた結果がなく、委譲先に問い合わせた回数
+     */
+    public long missCount() {
+        synchronized (mLock) {
+            return mMissCount;
+        }
+    }
+
+    /**
+     * @return 保持していた結果を返した割合。問い合わせがなければ0
+     */
+    public double hitRatio() {
+        synchronized (mLock) {
+            long total = mHitCount + mMissCount;
+            return total == 0 ? 0 : (double) mHitCount / total;
+        }
+    }
+
+    /**
+     * @return 容量超過か期限切れにより結果を破棄した回数
+     */
+    public long evictionCount() {
+        synchronized (mLock) {
+            return mEvictionCount;
+        }
+    }
+
+    /**
+     * @return 書き換えにより結果を破棄した数
+     */
+    public long invalidationCount() {
+        synchronized (mLock) {
+            return mInvalidationCount;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (mLock) {
+            return String.format("CachingDatabase[size=%d, maxEntries=%d, hit=%d, miss=%d, eviction=%d, invalidation=%d]",
+                    mCache.size(), mMaxEntries, mHitCount, mMissCount, mEvictionCount, mInvalidationCount);
+        }
+    }
+
+    private static final class Key {
+        private final String mTable;
+        private final String mSql;
+        private final Object[] mArgs;
+        private final int mHash;
+
+        Key(String table, String sql, Object[] args) {
+            mTable = table;
+            mSql = sql;
+            // 呼び出し元が配列を書き換えても影響を受けないよう複製する
+            mArgs = args.clone();
+            mHash = sql.hashCode() * 31 + Arrays.deepHashCode(mArgs);
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return mHash == other.mHash
+                    && mSql.equals(other.mSql)
+                    && mTable.equals(other.mTable)
+                    && Arrays.deepEquals(mArgs, other.mArgs);
+        }
+    }
+
+    private static final class Cached {
+        private final Object mValue;
+        private final long mCreatedNanos = System.nanoTime();
+
+        Cached(Object value) {
+            mValue = value;
+        }
+    }
+}
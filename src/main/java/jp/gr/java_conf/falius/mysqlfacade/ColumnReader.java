@@ -0,0 +1,153 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Locale;
+
+/**
+ * 列のデータ型に応じて、ResultSetから値を読み出す型付きのgetterを選択します。
+ */
+enum ColumnReader {
+    INT {
+        @Override
+        Object read(ResultSet rs, int columnIndex) throws SQLException {
+            int value = rs.getInt(columnIndex);
+            return value == 0 && rs.wasNull() ? null : value;
+        }
+    },
+    LONG {
+        @Override
+        Object read(ResultSet rs, int columnIndex) throws SQLException {
+            long value = rs.getLong(columnIndex);
+            return value == 0 && rs.wasNull() ? null : value;
+        }
+    },
+    DOUBLE {
+        @Override
+        Object read(ResultSet rs, int columnIndex) throws SQLException {
+            double value = rs.getDouble(columnIndex);
+            return value == 0 && rs.wasNull() ? null : value;
+        }
+    },
+    DECIMAL {
+        @Override
+        Object read(ResultSet rs, int columnIndex) throws SQLException {
+            return rs.getBigDecimal(columnIndex);
+        }
+    },
+    BOOLEAN {
+        @Override
+        Object read(ResultSet rs, int columnIndex) throws SQLException {
+            boolean value = rs.getBoolean(columnIndex);
+            return !value && rs.wasNull() ? null : value;
+        }
+    },
+    TIMESTAMP {
+        @Override
+        Object read(ResultSet rs, int columnIndex) throws SQLException {
+            return rs.getTimestamp(columnIndex);
+        }
+    },
+    DATE {
+        @Override
+        Object read(ResultSet rs, int columnIndex) throws SQLException {
+            return rs.getDate(columnIndex);
+        }
+    },
+    TIME {
+        @Override
+        Object read(ResultSet rs, int columnIndex) throws SQLException {
+            return rs.getTime(columnIndex);
+        }
+    },
+    STRING {
+        @Override
+        Object read(ResultSet rs, int columnIndex) throws SQLException {
+            return rs.getString(columnIndex);
+        }
+    },
+    BYTES {
+        @Override
+        Object read(ResultSet rs, int columnIndex) throws SQLException {
+            return rs.getBytes(columnIndex);
+        }
+    },
+    OBJECT {
+        @Override
+        Object read(ResultSet rs, int columnIndex) throws SQLException {
+            return rs.getObject(columnIndex);
+        }
+    };
+
+    /**
+     * @param rs 読み出すResultSet
+     * @param columnIndex 1から始まる列番号
+     * @return 列の値。NULLであればnull
+     * @throws SQLException データベースアクセスエラーが発生した場合
+     */
+    abstract Object read(ResultSet rs, int columnIndex) throws SQLException;
+
+    /**
+     * {@link DatabaseColumn#type()}が返すデータ型の文字列から、値を読み出す方法を選択します。
+     * @param type "int"、"varchar(256)"、"datetime"などのデータ型
+     */
+    static ColumnReader forType(String type) {
+        String lower = type.trim().toLowerCase(Locale.ROOT);
+        boolean unsigned = lower.contains("unsigned");
+        int end = 0;
+        while (end < lower.length() && Character.isLetter(lower.charAt(end))) {
+            end++;
+        }
+
+        switch (lower.substring(0, end)) {
+        case "tinyint":
+        case "smallint":
+        case "mediumint":
+            return INT;
+        case "int":
+        case "integer":
+            return unsigned ? LONG : INT;
+        case "bigint":
+            return unsigned ? DECIMAL : LONG;
+        case "float":
+        case "double":
+        case "real":
+            return DOUBLE;
+        case "decimal":
+        case "numeric":
+        case "dec":
+            return DECIMAL;
+        case "bool":
+        case "boolean":
+            return BOOLEAN;
+        case "bit":
+            return lower.startsWith("bit(1)") || lower.equals("bit") ? BOOLEAN : BYTES;
+        case "datetime":
+        case "timestamp":
+            return TIMESTAMP;
+        case "date":
+            return DATE;
+        case "time":
+            return TIME;
+        case "char":
+        case "varchar":
+        case "tinytext":
+        case "text":
+        case "mediumtext":
+        case "longtext":
+        case "enum":
+        case "set":
+        case "json":
+            return STRING;
+        case "binary":
+        case "varbinary":
+        case "tinyblob":
+        case "blob":
+        case "mediumblob":
+        case "longblob":
+            return BYTES;
+        default:
+            return OBJECT;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * デッドロックやロック待ちのタイムアウトで失敗したトランザクションを、間隔を空けてやり直すための判定と待機を行います。
+ */
+final class DeadlockRetry {
+    private static final Logger LOG = LoggerFactory.getLogger(DeadlockRetry.class);
+
+    /**
+     * トランザクションをやり直す最大の回数
+     */
+    static final int MAX_RETRIES = 4;
+    private static final int ER_LOCK_WAIT_TIMEOUT = 1205;
+    private static final int ER_LOCK_DEADLOCK = 1213;
+    private static final String SQLSTATE_SERIALIZATION_FAILURE = "40001";
+    private static final long BASE_BACKOFF_MILLIS = 10;
+    private static final long MAX_BACKOFF_MILLIS = 1000;
+
+    private DeadlockRetry() {}
+
+    /**
+     * @return 例外、またはその原因や連鎖した例外が、デッドロックかロック待ちのタイムアウトを表していればtrue
+     */
+    static boolean isRetryable(SQLException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (!(t instanceof SQLException)) {
+                continue;
+            }
+            for (SQLException s = (SQLException) t; s != null; s = s.getNextException()) {
+                if (s.getErrorCode() == ER_LOCK_DEADLOCK || s.getErrorCode() == ER_LOCK_WAIT_TIMEOUT
+                        || SQLSTATE_SERIALIZATION_FAILURE.equals(s.getSQLState())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * attempt回目の失敗の後、やり直す前に待機します。
+     * <p>
+     * 待機時間は上限が失敗のたびに倍になる範囲から無作為に選ぶため、競合したトランザクション同士が同時にやり直すことを避けられます。
+     * @param attempt これまでに失敗した回数から1を引いた値
+     * @param cause やり直す原因となった例外
+     * @throws SQLException 待機中に割り込まれた場合。causeを抑制された例外として持つ
+     */
+    static void backoff(int attempt, SQLException cause) throws SQLException {
+        long bound = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt, 20));
+        long millis = ThreadLocalRandom.current().nextLong(bound / 2, bound + 1);
+        LOG.debug("retrying transaction in {} ms after : {}", millis, cause.getMessage());
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            SQLException ex = new SQLException("interrupted while waiting to retry a transaction", e);
+            ex.addSuppressed(cause);
+            throw ex;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.lang.ref.WeakReference;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * クローズされていないEntryを生成順に保持するクラスです。
+ * <p>
+ * 保持数が上限に達すると、すでにクローズされたEntryを取り除いたうえで、
+ *     なお上限を超えていれば最も古いEntryを放棄されたものとみなしてクローズします。<br>
+ * リーク検出を有効にすると、生成から一定時間を経過してもクローズされていないEntryについて、
+ *     生成時のスタックトレースをログに出力します。
+ *     検査は共有のデーモンスレッドで1秒ごとに行われるため、Entryの生成が止まった後のリークも報告されます。
+ * <p>
+ * リーク検査のスレッドからも参照されるため、このクラスのメソッドはすべて同期化されています。
+ */
+final class EntryTracker {
+    private static final Logger LOG = LoggerFactory.getLogger(EntryTracker.class);
+    private static final long LEAK_CHECK_INTERVAL_MILLIS = 1000;
+    private static final ScheduledThreadPoolExecutor LEAK_CHECKER;
+
+    static {
+        LEAK_CHECKER = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "mysqlfacade-leak-checker");
+            thread.setDaemon(true);
+            return thread;
+        });
+        LEAK_CHECKER.setRemoveOnCancelPolicy(true);
+    }
+
+    private final int mCapacity;
+    private final Map<Trackable, Boolean> mEntries = new LinkedHashMap<Trackable, Boolean>();
+    private long mLeakThresholdNanos = 0;
+    private ScheduledFuture<?> mLeakCheck = null;
+
+    /**
+     * @param capacity 同時に保持するEntryの最大数
+     */
+    EntryTracker(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive : " + capacity);
+        }
+        mCapacity = capacity;
+    }
+
+    /**
+     * @param thresholdMillis この時間を超えてクローズされていないEntryをリークとして報告する。0以下なら報告しない
+     */
+    synchronized void setLeakThreshold(long thresholdMillis) {
+        mLeakThresholdNanos = thresholdMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(thresholdMillis) : 0;
+        if (mLeakThresholdNanos == 0) {
+            stopLeakDetection();
+        } else if (mLeakCheck == null) {
+            LeakCheck check = new LeakCheck(this);
+            mLeakCheck = LEAK_CHECKER.scheduleWithFixedDelay(check, LEAK_CHECK_INTERVAL_MILLIS,
+                    LEAK_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+            check.mFuture = mLeakCheck;
+        }
+    }
+
+    /**
+     * 定期的なリークの検査をやめます。閾値は保持したままです。
+     */
+    synchronized void stopLeakDetection() {
+        if (mLeakCheck != null) {
+            mLeakCheck.cancel(false);
+            mLeakCheck = null;
+        }
+    }
+
+    /**
+     * @return リーク検出が有効であればtrue
+     */
+    synchronized boolean isLeakDetectionEnabled() {
+        return mLeakThresholdNanos > 0;
+    }
+
+    synchronized void register(Trackable entry) throws SQLException {
+        if (mEntries.size() >= mCapacity) {
+            purgeClosed();
+        }
+        while (mEntries.size() >= mCapacity) {
+            Iterator<Trackable> iterator = mEntries.keySet().iterator();
+            Trackable eldest = iterator.next();
+            iterator.remove();
+            LOG.debug("closing abandoned entry : {}", eldest.sql());
+            eldest.closeAbandoned();
+        }
+        mEntries.put(entry, Boolean.FALSE);
+    }
+
+    synchronized void unregister(Trackable entry) {
+        mEntries.remove(entry);
+    }
+
+    /**
+     * @return 保持しているEntryの数
+     */
+    synchronized int size() {
+        return mEntries.size();
+    }
+
+    /**
+     * 保持しているすべてのEntryをクローズし、空にします。
+     * @throws SQLException データベースアクセスエラーが発生した場合
+     */
+    void closeAll() throws SQLException {
+        List<Trackable> entries;
+        synchronized (this) {
+            entries = new ArrayList<Trackable>(mEntries.keySet());
+            mEntries.clear();
+        }
+        SQLException exception = null;
+        for (Trackable entry : entries) {
+            try {
+                entry.closeAbandoned();
+            } catch (SQLException e) {
+                if (exception == null) {
+                    exception = e;
+                } else {
+                    exception.addSuppressed(e);
+                }
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private void purgeClosed() throws SQLException {
+        Iterator<Trackable> iterator = mEntries.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isClosed()) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * 閾値を超えてクローズされていないEntryのうち、まだ報告していないものをログに出力します。
+     * @param now 経過時間の基準とするSystem.nanoTime()の値
+     * @return 今回新たに報告したEntryの数
+     */
+    synchronized int reportLeaks(long now) {
+        if (mLeakThresholdNanos == 0) {
+            return 0;
+        }
+        int reported = 0;
+        for (Map.Entry<Trackable, Boolean> mapEntry : mEntries.entrySet()) {
+            Trackable entry = mapEntry.getKey();
+            long age = now - entry.createdNanos();
+            if (age < mLeakThresholdNanos) {
+                // 生成順に並んでいるため、以降のEntryも閾値に達していない
+                break;
+            }
+            if (mapEntry.getValue()) {
+                continue;
+            }
+            mapEntry.setValue(Boolean.TRUE);
+            reported++;
+            LOG.warn("entry has not been closed for {} ms : {}",
+                    TimeUnit.NANOSECONDS.toMillis(age), entry.sql(), entry.creationTrace());
+        }
+        return reported;
+    }
+
+    /**
+     * 共有のスレッドから定期的に実行されるリークの検査です。
+     * 実行待ちのタスクがトラッカーを参照し続けないよう弱参照で保持し、トラッカーが回収されれば自身を取り消します。
+     */
+    private static final class LeakCheck implements Runnable {
+        private final WeakReference<EntryTracker> mTracker;
+        private volatile ScheduledFuture<?> mFuture = null;
+
+        private LeakCheck(EntryTracker tracker) {
+            mTracker = new WeakReference<EntryTracker>(tracker);
+        }
+
+        @Override
+        public void run() {
+            EntryTracker tracker = mTracker.get();
+            if (tracker == null) {
+                ScheduledFuture<?> future = mFuture;
+                if (future != null) {
+                    future.cancel(false);
+                }
+                return;
+            }
+            try {
+                tracker.reportLeaks(System.nanoTime());
+            } catch (RuntimeException e) {
+                // 例外で以降の検査が止まらないようにする
+                LOG.debug("failed to check leaks", e);
+            }
+        }
+    }
+
+    /**
+     * EntryTrackerで追跡される対象
+     */
+    interface Trackable {
+
+        /**
+         * @return 実行するSQL文
+         */
+        String sql();
+
+        /**
+         * @return 生成時のSystem.nanoTime()の値
+         */
+        long createdNanos();
+
+        /**
+         * @return 生成時のスタックトレース。記録していなければnull
+         */
+        Throwable creationTrace();
+
+        /**
+         * @return すでにクローズされていればtrue
+         * @throws SQLException データベースアクセスエラーが発生した場合
+         */
+        boolean isClosed() throws SQLException;
+
+        /**
+         * トラッカーから取り除かれた後に終了処理を行います。
+         * @throws SQLException データベースアクセスエラーが発生した場合
+         */
+        void closeAbandoned() throws SQLException;
+    }
+}
@@ -0,0 +1,127 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.lang.reflect.Array;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 問い合わせ結果の各行を、テーブルを表す列挙型をキーとするEnumMapに変換するRowMapperです。
+ * <p>
+ * 列ラベルから列番号への対応と、{@link DatabaseColumn#type()}に応じた値の読み出し方法は、
+ *     列の構成が同じ問い合わせ結果に対して一度だけ求められます。
+ *     各行の変換は列番号による型付きの読み出しだけで行われます。<br>
+ * 結果に含まれない列はマップに含まれません。値がNULLの列はnullに対応付けられます。
+ * <p>
+ * このクラスはスレッドセーフです。
+ * @param <T> テーブルを表す列挙型
+ */
+public final class EnumRowMapper<T extends Enum<T> & DatabaseColumn> implements RowMapper<EnumMap<T, Object>> {
+    private static final ClassValue<EnumRowMapper<?>> MAPPERS = new ClassValue<EnumRowMapper<?>>() {
+
+        @Override
+        protected EnumRowMapper<?> computeValue(Class<?> type) {
+            return create(type.asSubclass(Enum.class));
+        }
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        private EnumRowMapper<?> create(Class<? extends Enum> type) {
+            return new EnumRowMapper(type);
+        }
+    };
+
+    private final Class<T> mTable;
+    private final Map<String, T> mColumnsByLabel = new HashMap<String, T>();
+    private final Map<String, Plan<T>> mPlans = new ConcurrentHashMap<String, Plan<T>>();
+
+    private EnumRowMapper(Class<T> table) {
+        mTable = table;
+        for (T column : table.getEnumConstants()) {
+            mColumnsByLabel.put(column.toString().toLowerCase(Locale.ROOT), column);
+        }
+    }
+
+    /**
+     * 渡された列挙型に対応するEnumRowMapperを返します。インスタンスは列挙型ごとに共有されます。
+     * @param table DatabaseColumnを実装した列挙型のクラス
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends Enum<T> & DatabaseColumn> EnumRowMapper<T> of(Class<T> table) {
+        return (EnumRowMapper<T>) MAPPERS.get(table);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public SQLFunction<ResultSet, EnumMap<T, Object>> prepare(ResultSetMetaData metaData) throws SQLException {
+        int columnCount = metaData.getColumnCount();
+        StringBuilder key = new StringBuilder();
+        for (int i = 1; i <= columnCount; i++) {
+            key.append(metaData.getColumnLabel(i)).append('\0');
+        }
+
+        Plan<T> plan = mPlans.get(key.toString());
+        if (plan == null) {
+            plan = resolve(metaData);
+            mPlans.putIfAbsent(key.toString(), plan);
+        }
+        return plan;
+    }
+
+    private Plan<T> resolve(ResultSetMetaData metaData) throws SQLException {
+        List<T> columns = new ArrayList<T>();
+        List<Integer> indexes = new ArrayList<Integer>();
+        for (int i = 1; i <= metaData.getColumnCount(); i++) {
+            T column = mColumnsByLabel.get(metaData.getColumnLabel(i).toLowerCase(Locale.ROOT));
+            if (column != null && !columns.contains(column)) {
+                columns.add(column);
+                indexes.add(i);
+            }
+        }
+
+        int size = columns.size();
+        @SuppressWarnings("unchecked")
+        T[] columnArray = columns.toArray((T[]) Array.newInstance(mTable, size));
+        int[] indexArray = new int[size];
+        ColumnReader[] readers = new ColumnReader[size];
+        for (int i = 0; i < size; i++) {
+            indexArray[i] = indexes.get(i);
+            readers[i] = ColumnReader.forType(columnArray[i].type());
+        }
+        return new Plan<T>(mTable, columnArray, indexArray, readers);
+    }
+
+    /**
+     * 列の構成ごとに求めた、列挙型の定数と列番号と読み出し方法の対応
+     */
+    private static class Plan<T extends Enum<T>> implements SQLFunction<ResultSet, EnumMap<T, Object>> {
+        private final Class<T> mTable;
+        private final T[] mColumns;
+        private final int[] mIndexes;
+        private final ColumnReader[] mReaders;
+
+        private Plan(Class<T> table, T[] columns, int[] indexes, ColumnReader[] readers) {
+            mTable = table;
+            mColumns = columns;
+            mIndexes = indexes;
+            mReaders = readers;
+        }
+
+        @Override
+        public EnumMap<T, Object> apply(ResultSet rs) throws SQLException {
+            EnumMap<T, Object> row = new EnumMap<T, Object>(mTable);
+            for (int i = 0; i < mColumns.length; i++) {
+                row.put(mColumns[i], mReaders[i].read(rs, mIndexes[i]));
+            }
+            return row;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 経過時間の分布を、ロックを使わずに記録するヒストグラムです。
+ * <p>
+ * 値は2の累乗ごとの区間をさらに4つに分けたバケットに数えるため、記録した値の数によらず使用するメモリは一定です。
+ *     パーセンタイルは値が属するバケットの上限で近似され、誤差は最大でおよそ25%です。
+ */
+final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong mMax = new AtomicLong();
+
+    /**
+     * @param nanos 経過時間(ナノ秒)。負の値は0として扱う
+     */
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+        mCounts.incrementAndGet(indexOf(value));
+        mMax.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * @param quantile 0より大きく1以下の値。0.99であれば99パーセンタイル
+     * @return 記録した値のうちquantileの位置にある値の近似値(ナノ秒)。値がなければ0
+     */
+    long percentile(double quantile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = mCounts.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), mMax.get());
+            }
+        }
+        return mMax.get();
+    }
+
+    /**
+     * @return 記録した値の最大値(ナノ秒)
+     */
+    long max() {
+        return mMax.get();
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    static long upperBoundOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,153 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * キーの列の昇順に、テーブルの行を一定の行数ずつ読み出すイテレータです。
+ * <p>
+ * 各ページは前のページの最後のキーより大きい行を{@code WHERE key > ? ORDER BY key LIMIT ?}で問い合わせて取得するため、
+ *     OFFSETを使う場合と異なり、後ろのページほど問い合わせが重くなることはありません。<br>
+ * キーの列は一意で、NULLを含まない必要があります。
+ * <p>
+ * 先読みを有効にすると、ページを返した時点で次のページの問い合わせを別のスレッドで開始し、
+ *     呼び出し元がページを処理している間に次のページを読み込みます。
+ * <p>
+ * 問い合わせに失敗した場合、hasNextまたはnextメソッドがUncheckedSQLExceptionを投げます。<br>
+ * このクラスはスレッドセーフではありません。
+ */
+public final class PageIterator implements Iterator<List<Row>>, AutoCloseable {
+    private final PageFetcher mFetcher;
+    private final DatabaseColumn mKeyColumn;
+    private final int mPageSize;
+    private final Executor mPrefetchExecutor;
+
+    private Object mLastKey = null;
+    private List<Row> mNextPage = null;
+    private CompletableFuture<List<Row>> mPrefetch = null;
+    private boolean mFinished = false;
+
+    /**
+     * @param fetcher ページを取得する関数
+     * @param keyColumn キーの列
+     * @param pageSize 一ページの行数
+     * @param prefetchExecutor 次のページを先読みするExecutor。nullなら先読みしない
+     */
+    PageIterator(PageFetcher fetcher, DatabaseColumn keyColumn, int pageSize, Executor prefetchExecutor) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("page size must be positive : " + pageSize);
+        }
+        mFetcher = fetcher;
+        mKeyColumn = keyColumn;
+        mPageSize = pageSize;
+        mPrefetchExecutor = prefetchExecutor;
+    }
+
+    /**
+     * {@inheritDoc}
+     * @throws UncheckedSQLException 問い合わせに失敗した場合
+     */
+    @Override
+    public boolean hasNext() {
+        if (mNextPage != null) {
+            return true;
+        }
+        if (mFinished) {
+            return false;
+        }
+
+        List<Row> page = takePage();
+        if (page.isEmpty()) {
+            mFinished = true;
+            return false;
+        }
+        mNextPage = page;
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * @return 次のページ。一行以上、pageSize行以下の行を含む
+     * @throws UncheckedSQLException 問い合わせに失敗した場合
+     */
+    @Override
+    public List<Row> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        List<Row> page = mNextPage;
+        mNextPage = null;
+
+        if (page.size() < mPageSize) {
+            // 行数が満たないページは最後のページ
+            mFinished = true;
+            return page;
+        }
+        mLastKey = page.get(page.size() - 1).get(mKeyColumn);
+        if (mLastKey == null) {
+            throw new IllegalStateException("key column must not be null : " + mKeyColumn);
+        }
+        if (mPrefetchExecutor != null) {
+            Object lastKey = mLastKey;
+            mPrefetch = CompletableFuture.supplyAsync(() -> fetch(lastKey), mPrefetchExecutor);
+        }
+        return page;
+    }
+
+    private List<Row> takePage() {
+        if (mPrefetch == null) {
+            return fetch(mLastKey);
+        }
+        CompletableFuture<List<Row>> prefetch = mPrefetch;
+        mPrefetch = null;
+        try {
+            return prefetch.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private List<Row> fetch(Object lastKey) {
+        try {
+            return mFetcher.fetch(lastKey, mPageSize);
+        } catch (SQLException e) {
+            throw new UncheckedSQLException(e);
+        }
+    }
+
+    /**
+     * 以降のページを読み出さないようにします。先読み中の問い合わせの結果は破棄されます。
+     */
+    @Override
+    public void close() {
+        mFinished = true;
+        mNextPage = null;
+        if (mPrefetch != null) {
+            mPrefetch.cancel(false);
+            mPrefetch = null;
+        }
+    }
+
+    /**
+     * 一ページ分の行を取得する関数
+     */
+    @FunctionalInterface
+    interface PageFetcher {
+
+        /**
+         * @param lastKey 前のページの最後のキー。最初のページであればnull
+         * @param pageSize 取得する最大の行数
+         * @return キーの昇順に並んだ行
+         * @throws SQLException データベースアクセスエラーが発生した場合
+         */
+        List<Row> fetch(Object lastKey, int pageSize) throws SQLException;
+    }
+}
@@ -0,0 +1,186 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * 条件節のプレイスホルダーに埋め込む値を、ボクシングせずに保持するバッファです。
+ * <p>
+ * プリミティブ値は型ごとの配列に直接格納するため、値を追加してもオブジェクトは生成されません。<br>
+ * {@link #clear()}で空にして繰り返し使用できます。
+ * <pre>
+ * Params params = new Params();
+ * for (int id : ids) {
+ *     try (ResultSet rs = db.selectAllColumns(Table.class, "id=? and score&gt;?", params.clear().addInt(id).addLong(40))) {
+ *         // ...
+ *     }
+ * }
+ * </pre>
+ * このクラスはスレッドセーフではありません。
+ */
+public final class Params {
+    private static final byte INT = 0;
+    private static final byte LONG = 1;
+    private static final byte DOUBLE = 2;
+    private static final byte FLOAT = 3;
+    private static final byte BOOLEAN = 4;
+    private static final byte OBJECT = 5;
+
+    private byte[] mTypes;
+    private long[] mPrimitives;
+    private Object[] mObjects;
+    private int mSize = 0;
+
+    public Params() {
+        this(8);
+    }
+
+    /**
+     * @param initialCapacity 最初に確保する値の数
+     */
+    public Params(int initialCapacity) {
+        if (initialCapacity < 0) {
+            throw new IllegalArgumentException("initial capacity must not be negative : " + initialCapacity);
+        }
+        mTypes = new byte[initialCapacity];
+        mPrimitives = new long[initialCapacity];
+        mObjects = new Object[initialCapacity];
+    }
+
+    public Params addInt(int x) {
+        int index = next(INT);
+        mPrimitives[index] = x;
+        return this;
+    }
+
+    public Params addLong(long x) {
+        int index = next(LONG);
+        mPrimitives[index] = x;
+        return this;
+    }
+
+    public Params addDouble(double x) {
+        int index = next(DOUBLE);
+        mPrimitives[index] = Double.doubleToRawLongBits(x);
+        return this;
+    }
+
+    public Params addFloat(float x) {
+        int index = next(FLOAT);
+        mPrimitives[index] = Float.floatToRawIntBits(x);
+        return this;
+    }
+
+    public Params addBoolean(boolean x) {
+        int index = next(BOOLEAN);
+        mPrimitives[index] = x ? 1 : 0;
+        return this;
+    }
+
+    /**
+     * 文字列や日時など、プリミティブでない値を追加します。
+     * @param x 追加する値。nullならNULLとして扱われる
+     */
+    public Params add(Object x) {
+        int index = next(OBJECT);
+        mObjects[index] = x;
+        return this;
+    }
+
+    /**
+     * 保持している値をすべて取り除きます。確保した領域は解放しません。
+     * @return 自らのインスタンス
+     */
+    public Params clear() {
+        Arrays.fill(mObjects, 0, mSize, null);
+        mSize = 0;
+        return this;
+    }
+
+    /**
+     * @return 保持している値の数
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * 保持している値を複製した新しいインスタンスを返します。
+     * 再利用されるインスタンスの値を、別のスレッドでの実行に渡す場合に使用します。
+     */
+    Params copy() {
+        Params copy = new Params(mSize);
+        System.arraycopy(mTypes, 0, copy.mTypes, 0, mSize);
+        System.arraycopy(mPrimitives, 0, copy.mPrimitives, 0, mSize);
+        System.arraycopy(mObjects, 0, copy.mObjects, 0, mSize);
+        copy.mSize = mSize;
+        return copy;
+    }
+
+    /**
+     * 保持している値を追加した順にEntryへセットします。
+     * @throws SQLException データベースアクセスエラーが発生した場合
+     */
+    void bindTo(SQLDatabase.Entry entry) throws SQLException {
+        for (int i = 0; i < mSize; i++) {
+            switch (mTypes[i]) {
+            case INT:
+                entry.setInt((int) mPrimitives[i]);
+                break;
+            case LONG:
+                entry.setLong(mPrimitives[i]);
+                break;
+            case DOUBLE:
+                entry.setDouble(Double.longBitsToDouble(mPrimitives[i]));
+                break;
+            case FLOAT:
+                entry.setFloat(Float.intBitsToFloat((int) mPrimitives[i]));
+                break;
+            case BOOLEAN:
+                entry.setBoolean(mPrimitives[i] != 0);
+                break;
+            default:
+                Binders.bind(entry, mObjects[i]);
+            }
+        }
+    }
+
+    private int next(byte type) {
+        if (mSize == mTypes.length) {
+            int capacity = Math.max(8, mSize * 2);
+            mTypes = Arrays.copyOf(mTypes, capacity);
+            mPrimitives = Arrays.copyOf(mPrimitives, capacity);
+            mObjects = Arrays.copyOf(mObjects, capacity);
+        }
+        mTypes[mSize] = type;
+        return mSize++;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("Params[");
+        for (int i = 0; i < mSize; i++) {
+            if (i != 0) {
+                sb.append(", ");
+            }
+            switch (mTypes[i]) {
+            case INT:
+            case LONG:
+                sb.append(mPrimitives[i]);
+                break;
+            case DOUBLE:
+                sb.append(Double.longBitsToDouble(mPrimitives[i]));
+                break;
+            case FLOAT:
+                sb.append(Float.intBitsToFloat((int) mPrimitives[i]));
+                break;
+            case BOOLEAN:
+                sb.append(mPrimitives[i] != 0);
+                break;
+            default:
+                sb.append(mObjects[i]);
+            }
+        }
+        return sb.append("]").toString();
+    }
+}
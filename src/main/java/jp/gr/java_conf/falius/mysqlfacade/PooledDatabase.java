@@ -0,0 +1,1075 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+import javax.sql.rowset.CachedRowSet;
+import javax.sql.rowset.RowSetFactory;
+import javax.sql.rowset.RowSetProvider;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 接続プールを使用する、スレッドセーフな{@link SQLDatabase}の実装です。
+ * <p>
+ * 各メソッドは呼び出しごとにプールから接続を借り受け、処理が終わると返却します。<br>
+ * 同時に貸し出される接続の数はmaxTotalまでに制限され、空きがなければacquireTimeoutMillisまで待機します。
+ *     待機がタイムアウトした場合はSQLTransientConnectionExceptionが投げられます。
+ * <p>
+ * 接続をすぐに返却するため、selectなどResultSetを返すメソッドは結果をすべて読み込んだ
+ *     CachedRowSetを返します。<br>
+ * executeメソッドで得たEntryは、クローズされるまで接続を占有します。
+ */
+public class PooledDatabase implements SQLDatabase {
+    private static final Logger LOG = LoggerFactory.getLogger(PooledDatabase.class);
+    private static final long DEFAULT_ACQUIRE_TIMEOUT_MILLIS = 30000;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+    private static final long VALIDATION_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final SQLSupplier<Connection> mConnectionFactory;
+    private final int mMinIdle;
+    private final int mMaxIdle;
+    private final int mMaxTotal;
+    private final long mAcquireTimeoutMillis;
+    private final int mStatementCacheSize;
+    private final RowSetFactory mRowSetFactory;
+
+    private final BlockingDeque<PooledConnection> mIdle = new LinkedBlockingDeque<PooledConnection>();
+    private final Semaphore mPermits;
+    private final AtomicInteger mTotal = new AtomicInteger();
+    private final Set<PooledEntry> mEntries = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean mReplenishing = new AtomicBoolean();
+    private volatile boolean mClosed = false;
+    private volatile QueryListener mQueryListener = null;
+    private volatile long mValidationIntervalNanos = VALIDATION_INTERVAL_NANOS;
+
+    private final LongAdder mBorrowCount = new LongAdder();
+    private final LongAdder mTimeoutCount = new LongAdder();
+    private final LongAdder mCreatedCount = new LongAdder();
+    private final LongAdder mDestroyedCount = new LongAdder();
+    private final LongAdder mValidationFailureCount = new LongAdder();
+    private final LongAdder mAcquireNanos = new LongAdder();
+    private final AtomicLong mMaxAcquireNanos = new AtomicLong();
+
+    /**
+     * ローカルホストのデータベースへの接続を最大maxTotal個まで貸し出すインスタンスを作成します。
+     * @param dbName 接続するデータベース名
+     * @param user ユーザー名
+     * @param password パスワード
+     * @param maxTotal 同時に貸し出す接続の最大数
+     * @throws SQLException データベースに接続できなかった場合
+     */
+    public PooledDatabase(String dbName, String user, String password, int maxTotal) throws SQLException {
+        this(() -> PreparedDatabase.connect(dbName, user, password),
+                0, maxTotal, maxTotal, DEFAULT_ACQUIRE_TIMEOUT_MILLIS, 0);
+    }
+
+    /**
+     * @param connectionFactory 新しい接続を作成する関数
+     * @param minIdle 常に確保しておく待機中の接続の数。
+     *     検証の失敗などで接続を破棄して下回った場合は、その場で補充する
+     * @param maxIdle 待機させておく接続の最大数。これを超えて返却された接続はクローズされる
+     * @param maxTotal 同時に貸し出す接続の最大数
+     * @param acquireTimeoutMillis 接続の空きを待機する最大時間(ミリ秒)
+     * @param statementCacheSize 接続ごとにキャッシュするPreparedStatementの最大数。0以下ならキャッシュしない
+     * @throws SQLException minIdle個の接続を作成できなかった場合
+     * @throws IllegalArgumentException 各サイズの関係が不正な場合
+     */
+    public PooledDatabase(SQLSupplier<Connection> connectionFactory, int minIdle, int maxIdle, int maxTotal,
+            long acquireTimeoutMillis, int statementCacheSize) throws SQLException {
+        if (maxTotal <= 0 || minIdle < 0 || minIdle > maxIdle || maxIdle > maxTotal) {
+            throw new IllegalArgumentException(String.format(
+                    "require 0 <= minIdle <= maxIdle <= maxTotal and 0 < maxTotal : %d, %d, %d",
+                    minIdle, maxIdle, maxTotal));
+        }
+        mConnectionFactory = connectionFactory;
+        mMinIdle = minIdle;
+        mMaxIdle = maxIdle;
+        mMaxTotal = maxTotal;
+        mAcquireTimeoutMillis = acquireTimeoutMillis;
+        mStatementCacheSize = statementCacheSize;
+        mRowSetFactory = RowSetProvider.newFactory();
+        mPermits = new Semaphore(maxTotal, true);
+
+        try {
+            fillMinIdle();
+        } catch (SQLException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T extends DatabaseColumn> ResultSet select(Class<?> table, T[] columns, String whereClause,
+            Object... whereArgs) throws SQLException {
+        return query(db -> db.select(table, columns, whereClause, whereArgs));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T extends DatabaseColumn> ResultSet select(Class<?> table, T[] columns, String whereClause,
+            Params whereArgs) throws SQLException {
+        return query(db -> db.select(table, columns, whereClause, whereArgs));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ResultSet selectAllColumns(Class<?> table, String whereClause, Object... whereArgs) throws SQLException {
+        return query(db -> db.selectAllColumns(table, whereClause, whereArgs));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ResultSet selectAllColumns(Class<?> table, String whereClause, Params whereArgs) throws SQLException {
+        return query(db -> db.selectAllColumns(table, whereClause, whereArgs));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ResultSet selectAllColumns(Class<?> table, DatabaseColumn whereColumn, Object whereArg) throws SQLException {
+        return query(db -> db.selectAllColumns(table, whereColumn, whereArg));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ResultSet selectAll(Class<?> table) throws SQLException {
+        return query(db -> db.selectAll(table));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Streamを読み終えるかクローズするまで、接続を占有します。
+     */
+    @Override
+    public <T extends DatabaseColumn> Stream<Row> stream(Class<?> table, T[] columns, String whereClause,
+            Object... whereArgs) throws SQLException {
+        return stream(db -> db.stream(table, columns, whereClause, whereArgs));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Streamを読み終えるかクローズするまで、接続を占有します。
+     */
+    @Override
+    public <R> Stream<R> stream(Class<?> table, RowMapper<R> mapper, String whereClause, Object... whereArgs)
+            throws SQLException {
+        return stream(db -> db.stream(table, mapper, whereClause, whereArgs));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <R> List<R> selectList(Class<?> table, RowMapper<R> mapper, String whereClause, Object... whereArgs)
+            throws SQLException {
+        return call(db -> db.selectList(table, mapper, whereClause, whereArgs));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T extends Enum<T> & DatabaseColumn> List<EnumMap<T, Object>> selectMaps(Class<T> table,
+            String whereClause, Object... whereArgs) throws SQLException {
+        return call(db -> db.selectMaps(table, whereClause, whereArgs));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Streamを読み終えるかクローズするまで、接続を占有します。
+     */
+    @Override
+    public Stream<Row> streamAllColumns(Class<?> table, String whereClause, Object... whereArgs)
+            throws SQLException {
+        return stream(db -> db.streamAllColumns(table, whereClause, whereArgs));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Streamを読み終えるかクローズするまで、接続を占有します。
+     */
+    @Override
+    public Stream<Row> streamAll(Class<?> table) throws SQLException {
+        return stream(db -> db.streamAll(table));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * ページごとに接続を借り受けるため、ページの間は接続を占有しません。
+     */
+    @Override
+    public PageIterator paginate(Class<?> table, DatabaseColumn keyColumn, int pageSize, Executor prefetchExecutor) {
+        return new PageIterator((lastKey, size) -> call(db -> db.selectPage(table, keyColumn, lastKey, size)),
+                keyColumn, pageSize, prefetchExecutor);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ResultSet selectIn(Class<?> table, DatabaseColumn column, Collection<?> keys) throws SQLException {
+        return query(db -> db.selectIn(table, column, keys));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int update(Class<?> table, Map<? extends DatabaseColumn, ?> values, String whereClause, Object... whereArgs)
+            throws SQLException {
+        return call(db -> db.update(table, values, whereClause, whereArgs));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int update(Class<?> table, Map<? extends DatabaseColumn, ?> values, String whereClause, Params whereArgs)
+            throws SQLException {
+        return call(db -> db.update(table, values, whereClause, whereArgs));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int update(Class<?> table, Map<? extends DatabaseColumn, ?> values, DatabaseColumn whereColumn,
+            Object whereArg) throws SQLException {
+        return call(db -> db.update(table, values, whereColumn, whereArg));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int updateIn(Class<?> table, Map<? extends DatabaseColumn, ?> values, DatabaseColumn column,
+            Collection<?> keys) throws SQLException {
+        return call(db -> db.updateIn(table, values, column, keys));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long insert(Class<?> table, Map<? extends DatabaseColumn, ?> values) throws SQLException {
+        return call(db -> db.insert(table, values));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long[] insertAll(Class<?> table, Collection<? extends Map<? extends DatabaseColumn, ?>> rows)
+            throws SQLException {
+        return call(db -> db.insertAll(table, rows));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long[] insertAll(Class<?> table, Collection<? extends Map<? extends DatabaseColumn, ?>> rows,
+            int batchSize) throws SQLException {
+        return call(db -> db.insertAll(table, rows, batchSize));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public UpsertResult upsert(Class<?> table, Map<? extends DatabaseColumn, ?> values,
+            DatabaseColumn... updateColumns) throws SQLException {
+        return call(db -> db.upsert(table, values, updateColumns));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public UpsertResult upsertAll(Class<?> table, Collection<? extends Map<? extends DatabaseColumn, ?>> rows,
+            DatabaseColumn... updateColumns) throws SQLException {
+        return call(db -> db.upsertAll(table, rows, updateColumns));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public UpsertResult upsertAll(Class<?> table, Collection<? extends Map<? extends DatabaseColumn, ?>> rows,
+            int batchSize, DatabaseColumn... updateColumns) throws SQLException {
+        return call(db -> db.upsertAll(table, rows, batchSize, updateColumns));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int bulkLoad(Class<?> table, Iterator<? extends Map<? extends DatabaseColumn, ?>> rows)
+            throws SQLException {
+        return call(db -> db.bulkLoad(table, rows));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int bulkLoad(Class<?> table, InputStream tsv) throws SQLException {
+        return call(db -> db.bulkLoad(table, tsv));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int delete(Class<?> table, String whereClause, Object... whereArgs) throws SQLException {
+        return call(db -> db.delete(table, whereClause, whereArgs));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int delete(Class<?> table, String whereClause, Params whereArgs) throws SQLException {
+        return call(db -> db.delete(table, whereClause, whereArgs));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int delete(Class<?> table, DatabaseColumn whereColumn, Object whereArg) throws SQLException {
+        return call(db -> db.delete(table, whereColumn, whereArg));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int deleteIn(Class<?> table, DatabaseColumn column, Collection<?> keys) throws SQLException {
+        return call(db -> db.deleteIn(table, column, keys));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T extends Enum<T> & DatabaseColumn> void create(Class<T> table) throws SQLException {
+        call(db -> {
+            db.create(table);
+            return null;
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int empty(Class<?> table) throws SQLException {
+        return call(db -> db.empty(table));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void drop(Class<?> table) throws SQLException {
+        call(db -> {
+            db.drop(table);
+            return null;
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isExistTable(Class<?> table) throws SQLException {
+        return call(db -> db.isExistTable(table));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isExistRecord(Class<?> table, String whereClause, Object... whereArgs) throws SQLException {
+        return call(db -> db.isExistRecord(table, whereClause, whereArgs));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isExistRecord(Class<?> table, DatabaseColumn whereColumn, Object whereArg) throws SQLException {
+        return call(db -> db.isExistRecord(table, whereColumn, whereArg));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Object> existing(Class<?> table, DatabaseColumn column, Collection<?> keys) throws SQLException {
+        return call(db -> db.existing(table, column, keys));
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * 返されるEntryはクローズされるまで接続を占有します。
+     *     Entryをクローズすると、{@link #withDatabase(SQLFunction)}と同じく接続のセッションの状態を元に戻します。
+     */
+    @Override
+    public Entry execute(String sql) throws SQLException {
+        PooledConnection connection = borrow();
+        connection.mArbitrarySql = true;
+        try {
+            PooledEntry entry = new PooledEntry(connection, connection.mDatabase.execute(sql));
+            mEntries.add(entry);
+            return entry;
+        } catch (SQLException | RuntimeException e) {
+            giveBack(connection);
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * トランザクションを終えるまで、一つの接続を占有します。
+     */
+    @Override
+    public <R> R inTransaction(SQLFunction<? super SQLDatabase, ? extends R> work) throws SQLException {
+        return call(db -> db.inTransaction(work));
+    }
+
+    /**
+     * 一つの接続を借り受けたまま、渡された処理を実行します。
+     * 処理の中では渡されたSQLDatabaseを使用し、外部に持ち出さないでください。
+     * <p>
+     * 処理の中で開始して終えていないトランザクションはロールバックされ、
+     *     自動コミットとトランザクション分離レベル、データベースは接続を作成したときの状態に戻されます。
+     * @param work 実行する処理
+     * @return 処理の結果
+     * @throws SQLException 接続を借り受けられなかった場合、処理中にデータベースアクセスエラーが発生した場合
+     */
+    public <R> R withDatabase(SQLFunction<? super SQLDatabase, ? extends R> work) throws SQLException {
+        PooledConnection connection = borrow();
+        connection.mArbitrarySql = true;
+        try {
+            return work.apply(connection.mDatabase);
+        } finally {
+            giveBack(connection);
+        }
+    }
+
+    /**
+     * プールを閉じ、待機中の接続と、executeメソッドで貸し出しているEntryをクローズします。
+     * 処理中の呼び出しで使用されている接続は、返却された時点でクローズされます。
+     */
+    @Override
+    public void close() throws SQLException {
+        mClosed = true;
+        clear();
+        PooledConnection connection;
+        while ((connection = mIdle.pollFirst()) != null) {
+            destroy(connection);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * executeメソッドで貸し出しているEntryをクローズし、接続をプールに返却します。
+     */
+    @Override
+    public void clear() throws SQLException {
+        List<PooledEntry> entries = new ArrayList<PooledEntry>(mEntries);
+        SQLException exception = null;
+        for (PooledEntry entry : entries) {
+            try {
+                entry.close();
+            } catch (SQLException e) {
+                if (exception == null) {
+                    exception = e;
+                } else {
+                    exception.addSuppressed(e);
+                }
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int sum(Class<?> table, DatabaseColumn column) throws SQLException {
+        return call(db -> db.sum(table, column));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int sum(Class<?> table, DatabaseColumn column, String whereClause, Object... whereArgs) throws SQLException {
+        return call(db -> db.sum(table, column, whereClause, whereArgs));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int max(Class<?> table, DatabaseColumn column) throws SQLException {
+        return call(db -> db.max(table, column));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int max(Class<?> table, DatabaseColumn column, String whereClause, Object... whereArgs) throws SQLException {
+        return call(db -> db.max(table, column, whereClause, whereArgs));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int min(Class<?> table, DatabaseColumn column) throws SQLException {
+        return call(db -> db.min(table, column));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int min(Class<?> table, DatabaseColumn column, String whereClause, Object... whereArgs) throws SQLException {
+        return call(db -> db.min(table, column, whereClause, whereArgs));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int count(Class<?> table) throws SQLException {
+        return call(db -> db.count(table));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int count(Class<?> table, DatabaseColumn column) throws SQLException {
+        return call(db -> db.count(table, column));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int count(Class<?> table, DatabaseColumn column, String whereClause, Object... whereArgs)
+            throws SQLException {
+        return call(db -> db.count(table, column, whereClause, whereArgs));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AggregateResult aggregate(Class<?> table, DatabaseColumn column, String whereClause, Object[] whereArgs,
+            Agg... aggs) throws SQLException {
+        return call(db -> db.aggregate(table, column, whereClause, whereArgs, aggs));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<Object, BigDecimal> aggregateBy(Class<?> table, DatabaseColumn groupColumn, Agg agg,
+            DatabaseColumn column, String whereClause, Object... whereArgs) throws SQLException {
+        return call(db -> db.aggregateBy(table, groupColumn, agg, column, whereClause, whereArgs));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<Timestamp, BigDecimal> aggregateByTime(Class<?> table, DatabaseColumn timeColumn, TimeBucket bucket,
+            Agg agg, DatabaseColumn column, String whereClause, Object... whereArgs) throws SQLException {
+        return call(db -> db.aggregateByTime(table, timeColumn, bucket, agg, column, whereClause, whereArgs));
+    }
+
+    /**
+     * @return 同時に貸し出す接続の最大数
+     */
+    public int maxTotal() {
+        return mMaxTotal;
+    }
+
+    /**
+     * @return 現在貸し出している接続の数
+     */
+    public int activeCount() {
+        return mMaxTotal - mPermits.availablePermits();
+    }
+
+    /**
+     * @return 待機中の接続の数
+     */
+    public int idleCount() {
+        return mIdle.size();
+    }
+
+    /**
+     * @return 接続を貸し出した回数
+     */
+    public long borrowCount() {
+        return mBorrowCount.sum();
+    }
+
+    /**
+     * @return 接続の空きを待機してタイムアウトした回数
+     */
+    public long timeoutCount() {
+        return mTimeoutCount.sum();
+    }
+
+    /**
+     * @return 作成した接続の数
+     */
+    public long createdCount() {
+        return mCreatedCount.sum();
+    }
+
+    /**
+     * @return クローズした接続の数
+     */
+    public long destroyedCount() {
+        return mDestroyedCount.sum();
+    }
+
+    /**
+     * @return 貸し出し前の検証で無効と判断された接続の数
+     */
+    public long validationFailureCount() {
+        return mValidationFailureCount.sum();
+    }
+
+    /**
+     * @return 接続の空きを待機した時間の平均(ミリ秒)。タイムアウトした待機も含む
+     */
+    public double averageAcquireMillis() {
+        long count = mBorrowCount.sum() + mTimeoutCount.sum();
+        return count == 0 ? 0 : mAcquireNanos.sum() / 1e6 / count;
+    }
+
+    /**
+     * @return 接続の空きを待機した時間の最大値(ミリ秒)
+     */
+    public double maxAcquireMillis() {
+        return mMaxAcquireNanos.get() / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PooledDatabase[active=%d, idle=%d, maxTotal=%d, borrow=%d, timeout=%d]",
+                activeCount(), idleCount(), mMaxTotal, borrowCount(), timeoutCount());
+    }
+
+    private ResultSet query(SQLFunction<PreparedDatabase, ResultSet> query) throws SQLException {
+        return call(db -> {
+            try (ResultSet rs = query.apply(db)) {
+                CachedRowSet rowSet = mRowSetFactory.createCachedRowSet();
+                rowSet.populate(rs);
+                return rowSet;
+            }
+        });
+    }
+
+    private <R> Stream<R> stream(SQLFunction<PreparedDatabase, Stream<R>> open) throws SQLException {
+        PooledConnection connection = borrow();
+        try {
+            return ResultStreams.withResource(open.apply(connection.mDatabase), () -> giveBack(connection));
+        } catch (SQLException | RuntimeException e) {
+            giveBack(connection);
+            throw e;
+        }
+    }
+
+    private <R> R call(SQLFunction<PreparedDatabase, R> work) throws SQLException {
+        PooledConnection connection = borrow();
+        try {
+            return work.apply(connection.mDatabase);
+        } finally {
+            giveBack(connection);
+        }
+    }
+
+    /**
+     * すべての接続で、SQL文の実行の前後に呼び出されるリスナーを設定します。
+     * 設定した後に貸し出された接続で作成されたEntryが対象となります。
+     * @param listener リスナー。スレッドセーフであること。nullを渡すと呼び出しをやめる
+     * @see QueryRecorder
+     */
+    public void setQueryListener(QueryListener listener) {
+        mQueryListener = listener;
+    }
+
+    private PooledConnection borrow() throws SQLException {
+        if (mClosed) {
+            throw new SQLException("pool is closed");
+        }
+
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = mPermits.tryAcquire(mAcquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("interrupted while waiting for a connection", e);
+        }
+        long waited = System.nanoTime() - start;
+        mAcquireNanos.add(waited);
+        mMaxAcquireNanos.accumulateAndGet(waited, Math::max);
+        if (!acquired) {
+            mTimeoutCount.increment();
+            throw new SQLTransientConnectionException(String.format(
+                    "timed out after %d ms waiting for a connection : %s", mAcquireTimeoutMillis, this));
+        }
+
+        boolean destroyed = false;
+        PooledConnection connection;
+        try {
+            while ((connection = mIdle.pollFirst()) != null) {
+                if (validate(connection)) {
+                    break;
+                }
+                mValidationFailureCount.increment();
+                destroy(connection);
+                destroyed = true;
+            }
+            if (connection == null) {
+                connection = create();
+            }
+        } catch (SQLException | RuntimeException e) {
+            mPermits.release();
+            throw e;
+        }
+        if (destroyed) {
+            replenish();
+        }
+        return lend(connection);
+    }
+
+    private PooledConnection lend(PooledConnection connection) {
+        connection.mDatabase.setQueryListener(mQueryListener);
+        mBorrowCount.increment();
+        return connection;
+    }
+
+    private void giveBack(PooledConnection connection) {
+        try {
+            connection.mDatabase.clear();
+            resetSession(connection);
+            if (mClosed || mIdle.size() >= mMaxIdle) {
+                destroy(connection);
+            } else {
+                connection.mLastUsedNanos = System.nanoTime();
+                // 最近使われた接続から貸し出すよう先頭に戻す
+                mIdle.offerFirst(connection);
+            }
+        } catch (SQLException | RuntimeException e) {
+            LOG.warn("failed to reset a returned connection", e);
+            destroy(connection);
+        } finally {
+            mPermits.release();
+        }
+        replenish();
+    }
+
+    /**
+     * 借り手が変えたセッションの状態を、接続を作成したときの状態に戻します。
+     * 確定されていないトランザクションはロールバックします。
+     */
+    private void resetSession(PooledConnection pooled) throws SQLException {
+        Connection connection = pooled.mConnection;
+        if (!connection.getAutoCommit()) {
+            connection.rollback();
+            connection.setAutoCommit(true);
+        }
+        if (!pooled.mArbitrarySql) {
+            return;
+        }
+        // SQL文で開始したトランザクションや変更したセッションの状態はドライバから見えないため、サーバーで戻す
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("ROLLBACK");
+            statement.execute("SET autocommit=1");
+        }
+        connection.setTransactionIsolation(pooled.mIsolation);
+        if (pooled.mCatalog != null) {
+            connection.setCatalog(pooled.mCatalog);
+        }
+        pooled.mArbitrarySql = false;
+    }
+
+    private boolean validate(PooledConnection connection) throws SQLException {
+        if (System.nanoTime() - connection.mLastUsedNanos < mValidationIntervalNanos) {
+            return true;
+        }
+        return connection.mDatabase.isValid(VALIDATION_TIMEOUT_SECONDS);
+    }
+
+    private PooledConnection create() throws SQLException {
+        Connection connection = mConnectionFactory.get();
+        PooledConnection pooled;
+        try {
+            pooled = new PooledConnection(new PreparedDatabase(connection, mStatementCacheSize), connection);
+        } catch (SQLException | RuntimeException e) {
+            connection.close();
+            throw e;
+        }
+        mTotal.incrementAndGet();
+        mCreatedCount.increment();
+        return pooled;
+    }
+
+    private void destroy(PooledConnection connection) {
+        mTotal.decrementAndGet();
+        mDestroyedCount.increment();
+        try {
+            connection.mDatabase.close();
+        } catch (SQLException e) {
+            LOG.debug("failed to close a pooled connection", e);
+        }
+    }
+
+    private void fillMinIdle() throws SQLException {
+        while (!mClosed && mIdle.size() < mMinIdle && mTotal.get() < mMaxTotal) {
+            mIdle.offerLast(create());
+        }
+    }
+
+    /**
+     * 接続の破棄で待機中の接続がminIdleを下回っていれば補充します。
+     * 同時に補充するのは一つのスレッドだけで、失敗してもログに出力するだけで次の機会に再び補充を試みます。
+     */
+    private void replenish() {
+        if (mIdle.size() >= mMinIdle || !mReplenishing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            fillMinIdle();
+        } catch (SQLException | RuntimeException e) {
+            LOG.warn("failed to replenish idle connections", e);
+        } finally {
+            mReplenishing.set(false);
+        }
+    }
+
+    /**
+     * 待機中の接続を貸し出す前に検証するまでの、最後に使われてからの時間を設定します。
+     * @param intervalMillis この時間(ミリ秒)以上使われていない接続を検証する。0なら毎回検証する
+     */
+    void setValidationInterval(long intervalMillis) {
+        mValidationIntervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+    }
+
+    /**
+     * プールが保持する接続
+     */
+    private static class PooledConnection {
+        private final PreparedDatabase mDatabase;
+        private final Connection mConnection;
+        private final int mIsolation;
+        private final String mCatalog;
+        private volatile long mLastUsedNanos = System.nanoTime();
+        /**
+         * 任意のSQL文を実行できる形で貸し出したかどうか。返却時にセッションの状態をサーバーで戻す必要がある
+         */
+        private volatile boolean mArbitrarySql = false;
+
+        private PooledConnection(PreparedDatabase database, Connection connection) throws SQLException {
+            mDatabase = database;
+            mConnection = connection;
+            mIsolation = connection.getTransactionIsolation();
+            mCatalog = connection.getCatalog();
+        }
+    }
+
+    /**
+     * クローズされるまで接続を占有するEntry
+     */
+    private class PooledEntry implements Entry {
+        private final PooledConnection mConnection;
+        private final Entry mEntry;
+        private final AtomicBoolean mClosed = new AtomicBoolean();
+
+        private PooledEntry(PooledConnection connection, Entry entry) {
+            mConnection = connection;
+            mEntry = entry;
+        }
+
+        @Override
+        public ResultSet query() throws SQLException {
+            return mEntry.query();
+        }
+
+        @Override
+        public int update() throws SQLException {
+            return mEntry.update();
+        }
+
+        @Override
+        public ResultSet getGeneratedKeys() throws SQLException {
+            return mEntry.getGeneratedKeys();
+        }
+
+        @Override
+        public Entry addBatch() throws SQLException {
+            mEntry.addBatch();
+            return this;
+        }
+
+        @Override
+        public int[] executeBatch() throws SQLException {
+            return mEntry.executeBatch();
+        }
+
+        @Override
+        public void close() throws SQLException {
+            if (!mClosed.compareAndSet(false, true)) {
+                return;
+            }
+            mEntries.remove(this);
+            try {
+                mEntry.close();
+            } finally {
+                giveBack(mConnection);
+            }
+        }
+
+        @Override
+        public Entry setInt(int x) throws SQLException {
+            mEntry.setInt(x);
+            return this;
+        }
+
+        @Override
+        public Entry setString(String x) throws SQLException {
+            mEntry.setString(x);
+            return this;
+        }
+
+        @Override
+        public Entry setDouble(double x) throws SQLException {
+            mEntry.setDouble(x);
+            return this;
+        }
+
+        @Override
+        public Entry setFloat(float x) throws SQLException {
+            mEntry.setFloat(x);
+            return this;
+        }
+
+        @Override
+        public Entry setLong(long x) throws SQLException {
+            mEntry.setLong(x);
+            return this;
+        }
+
+        @Override
+        public Entry setObject(Object x) throws SQLException {
+            mEntry.setObject(x);
+            return this;
+        }
+
+        @Override
+        public Entry setBoolean(boolean x) throws SQLException {
+            mEntry.setBoolean(x);
+            return this;
+        }
+
+        @Override
+        public Entry setBigDecimal(BigDecimal x) throws SQLException {
+            mEntry.setBigDecimal(x);
+            return this;
+        }
+
+        @Override
+        public Entry setBytes(byte[] x) throws SQLException {
+            mEntry.setBytes(x);
+            return this;
+        }
+
+        @Override
+        public Entry setTimestamp(Timestamp x) throws SQLException {
+            mEntry.setTimestamp(x);
+            return this;
+        }
+
+        @Override
+        public Entry setDate(Date x) throws SQLException {
+            mEntry.setDate(x);
+            return this;
+        }
+
+        @Override
+        public Entry setTime(Time x) throws SQLException {
+            mEntry.setTime(x);
+            return this;
+        }
+
+        @Override
+        public Entry setNull() throws SQLException {
+            mEntry.setNull();
+            return this;
+        }
+    }
+}
@@ -1,17 +1,39 @@
 package jp.gr.java_conf.falius.mysqlfacade;
 
+import java.io.InputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
 import java.sql.Connection;
+import java.sql.Date;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Savepoint;
 import java.sql.Statement;
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+
+import javax.sql.DataSource;
 
 /**
  * {@inheritDoc}
@@ -20,9 +42,15 @@ public class PreparedDatabase implements SQLDatabase {
     private static final boolean USE_SSL = false;
     private static final boolean USE_LEGACY_DATETIME_CODE = false;
     private static final String SERVER_TIME_ZONE = "JST";
+    private static final int MAX_OPEN_ENTRIES = 256;
+    private static final int IN_CHUNK_SIZE = 128;
+    private static final int IN_KEY_TABLE_THRESHOLD = 2048;
     private final String mDBName;
-    private final Deque<Entry> mEntries = new ArrayDeque<Entry>();
+    private final EntryTracker mEntries;
     private final Connection mConnection;
+    private final StatementCache mStatementCache;
+    private int mTransactionDepth = 0;
+    private QueryListener mQueryListener = null;
 
     /**
      * @param dbName 接続するデータベース名
@@ -31,20 +59,66 @@ public class PreparedDatabase implements SQLDatabase {
      * @throws SQLException データベースに接続できなかった場合、ドライバをインスタンス化できなかった場合、データベースにアクセスできなかった場合
      */
     public PreparedDatabase(String dbName, String user, String password) throws SQLException {
+        this(dbName, user, password, 0);
+    }
+
+    /**
+     * 同じSQL文のPreparedStatementを再利用するキャッシュを持つインスタンスを作成します。
+     * <p>
+     * キャッシュを有効にすると、同じSQL文を再度実行した時点で前回の実行で得たResultSetはクローズされます。
+     * @param dbName 接続するデータベース名
+     * @param user ユーザー名
+     * @param password パスワード
+     * @param statementCacheSize キャッシュするPreparedStatementの最大数。0以下ならキャッシュしない
+     * @throws SQLException データベースに接続できなかった場合、ドライバをインスタンス化できなかった場合、データベースにアクセスできなかった場合
+     */
+    public PreparedDatabase(String dbName, String user, String password, int statementCacheSize)
+            throws SQLException {
+        this(dbName, connect(dbName, user, password), statementCacheSize, MAX_OPEN_ENTRIES);
+    }
+
+    /**
+     * 確立済みの接続を使用するインスタンスを作成します。
+     * データベース名は接続のカタログ名から取得します。
+     * @param connection 使用する接続。closeメソッドによってクローズされる
+     * @param statementCacheSize キャッシュするPreparedStatementの最大数。0以下ならキャッシュしない
+     * @throws SQLException データベースアクセスエラーが発生した場合
+     */
+    PreparedDatabase(Connection connection, int statementCacheSize) throws SQLException {
+        this(connection.getCatalog(), connection, statementCacheSize, MAX_OPEN_ENTRIES);
+    }
+
+    private PreparedDatabase(String dbName, Connection connection, int statementCacheSize, int maxOpenEntries) {
         mDBName = dbName;
-        try {
-            // JDBCドライバをロードする
-            Class.forName("com.mysql.cj.jdbc.Driver").newInstance();
+        mConnection = connection;
+        mEntries = new EntryTracker(maxOpenEntries);
+        mStatementCache = statementCacheSize > 0 ? new StatementCache(mConnection, statementCacheSize) : null;
+    }
 
-            // Drivermanagerに接続(データベースへの接続)
-            String url = String.format("jdbc:mysql://localhost/%s?"
-                    + "useSSL=%b&useLegacyDatetimeCode=%b&serverTimezone=%s",
-                    dbName, USE_SSL, USE_LEGACY_DATETIME_CODE, SERVER_TIME_ZONE);
-            mConnection = DriverManager.getConnection(url, user, password);
+    /**
+     * 接続先やドライバのプロパティを細かく指定してインスタンスを作成するビルダーを返します。
+     * <pre>
+     * {@code
+     * SQLDatabase db = PreparedDatabase.builder()
+     *         .host("db.example.com").port(3306).database("sample_db")
+     *         .user("sample_user").password("pass")
+     *         .property("rewriteBatchedStatements", true)
+     *         .property("useServerPrepStmts", true)
+     *         .statementCacheSize(64)
+     *         .build();
+     * }
+     * </pre>
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
 
-        } catch (ClassNotFoundException | SQLException | InstantiationException | IllegalAccessException e) {
-            throw new SQLException("database failed connect", e);
-        }
+    /**
+     * ローカルホストのデータベースに接続します。
+     * @throws SQLException データベースに接続できなかった場合、ドライバをインスタンス化できなかった場合、データベースにアクセスできなかった場合
+     */
+    static Connection connect(String dbName, String user, String password) throws SQLException {
+        return builder().database(dbName).user(user).password(password).connectionFactory().get();
     }
 
     /**
@@ -53,12 +127,26 @@ public class PreparedDatabase implements SQLDatabase {
     @Override
     public <T extends DatabaseColumn> ResultSet select(Class<?> table, T[] columns, String whereClause,
             Object... whereArgs) throws SQLException {
-        String tableName = tableName(table);
+        String tableName = TableMeta.of(table).name();
         String sql = SQLs.createSelectSql(tableName, columns, whereClause);
 
-        Entry entry = execute(sql);
+        PreparedEntry entry = prepare(sql);
         setArgs(entry, whereArgs);
-        return entry.query();
+        return entry.scopedQuery();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T extends DatabaseColumn> ResultSet select(Class<?> table, T[] columns, String whereClause,
+            Params whereArgs) throws SQLException {
+        String tableName = TableMeta.of(table).name();
+        String sql = SQLs.createSelectSql(tableName, columns, whereClause);
+
+        PreparedEntry entry = prepare(sql);
+        whereArgs.bindTo(entry);
+        return entry.scopedQuery();
     }
 
     /**
@@ -66,12 +154,23 @@ public class PreparedDatabase implements SQLDatabase {
      */
     @Override
     public ResultSet selectAllColumns(Class<?> table, String whereClause, Object... whereArgs) throws SQLException {
-        String tableName = tableName(table);
-        String sql = SQLs.createSelectSql(tableName, new String[] { "*" }, whereClause);
+        String sql = TableMeta.of(table).selectAllSql(whereClause);
 
-        Entry entry = execute(sql);
+        PreparedEntry entry = prepare(sql);
         setArgs(entry, whereArgs);
-        return entry.query();
+        return entry.scopedQuery();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public ResultSet selectAllColumns(Class<?> table, String whereClause, Params whereArgs) throws SQLException {
+        String sql = TableMeta.of(table).selectAllSql(whereClause);
+
+        PreparedEntry entry = prepare(sql);
+        whereArgs.bindTo(entry);
+        return entry.scopedQuery();
     }
 
     /**
@@ -94,150 +193,270 @@ public class PreparedDatabase implements SQLDatabase {
      * {@inheritDoc}
      */
     @Override
-    public int update(Class<?> table, Map<? extends DatabaseColumn, ?> values, String whereClause, Object... whereArgs)
-            throws SQLException {
-        String tableName = tableName(table);
-        String sql = SQLs.createUpdateSql(tableName, values, whereClause);
-
-        Entry entry = execute(sql);
-        setArgs(entry, whereArgs);
-        return entry.update();
+    public <T extends DatabaseColumn> Stream<Row> stream(Class<?> table, T[] columns, String whereClause,
+            Object... whereArgs) throws SQLException {
+        String tableName = TableMeta.of(table).name();
+        String sql = SQLs.createSelectSql(tableName, columns, whereClause);
+        return stream(sql, Row.MAPPER, whereArgs);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public int update(Class<?> table, Map<? extends DatabaseColumn, ?> values, DatabaseColumn whereColumn,
-            Object whereArg) throws SQLException {
-        return update(table, values, whereColumn.toString() + "=?", whereArg);
+    public <R> Stream<R> stream(Class<?> table, RowMapper<R> mapper, String whereClause, Object... whereArgs)
+            throws SQLException {
+        String sql = TableMeta.of(table).selectAllSql(whereClause);
+        return stream(sql, mapper, whereArgs);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public long insert(Class<?> table, Map<? extends DatabaseColumn, ?> values) throws SQLException {
-        String tableName = tableName(table);
-        String sql = SQLs.createInsertSql(tableName, values);
-        Entry entry = execute(sql.toString());
-        int result = entry.update();
-        if (result == 0) {
-            return -1;
-        }
+    public <R> List<R> selectList(Class<?> table, RowMapper<R> mapper, String whereClause, Object... whereArgs)
+            throws SQLException {
+        String sql = TableMeta.of(table).selectAllSql(whereClause);
 
-        ResultSet rs = entry.getGeneratedKeys();
-        if (rs.next()) {
-            return rs.getLong(1);
+        try (Entry entry = prepare(sql)) {
+            setArgs(entry, whereArgs);
+            try (ResultSet rs = entry.query()) {
+                SQLFunction<ResultSet, R> reader = mapper.prepare(rs.getMetaData());
+                List<R> list = new ArrayList<R>();
+                while (rs.next()) {
+                    list.add(reader.apply(rs));
+                }
+                return list;
+            }
         }
-        return -1;
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public int delete(Class<?> table, String whereClause, Object... whereArgs) throws SQLException {
-        String tableName = tableName(table);
-        String sql = SQLs.createDeleteSql(tableName, whereClause);
-
-        Entry entry = execute(sql);
-        setArgs(entry, whereArgs);
-        return entry.update();
+    public <T extends Enum<T> & DatabaseColumn> List<EnumMap<T, Object>> selectMaps(Class<T> table,
+            String whereClause, Object... whereArgs) throws SQLException {
+        return selectList(table, EnumRowMapper.of(table), whereClause, whereArgs);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public int delete(Class<?> table, DatabaseColumn whereColumn, Object whereArg) throws SQLException {
-        return delete(table, whereColumn.toString() + "=?", whereArg);
+    public Stream<Row> streamAllColumns(Class<?> table, String whereClause, Object... whereArgs)
+            throws SQLException {
+        String sql = TableMeta.of(table).selectAllSql(whereClause);
+        return stream(sql, Row.MAPPER, whereArgs);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public <T extends Enum<T> & DatabaseColumn> void create(Class<T> table) throws SQLException {
-        String tableName = tableName(table);
-        String sql = SQLs.createCreateTableSql(tableName, table.getEnumConstants());
-        execute(sql).update();
+    public Stream<Row> streamAll(Class<?> table) throws SQLException {
+        return streamAllColumns(table, "");
+    }
+
+    private <R> Stream<R> stream(String sql, RowMapper<R> mapper, Object... whereArgs) throws SQLException {
+        PreparedEntry entry = prepareStreaming(sql);
+        try {
+            setArgs(entry, whereArgs);
+            ResultSet rs = entry.query();
+            return ResultStreams.of(rs, mapper.prepare(rs.getMetaData()), entry);
+        } catch (SQLException | RuntimeException e) {
+            entry.close();
+            throw e;
+        }
     }
 
     /**
-     * {@inheritDoc}
+     * 結果を一行ずつサーバーから受け取るEntryを作成します。
+     * ストリーミング中は接続を占有するため、キャッシュは使用しません。
      */
-    @Override
-    public int empty(Class<?> table) throws SQLException {
-        return delete(table, "");
+    private PreparedEntry prepareStreaming(String sql) throws SQLException {
+        PreparedStatement statement;
+        try {
+            statement = mConnection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            // Connector/Jでは、Integer.MIN_VALUEを指定すると結果を一行ずつ受け取る
+            statement.setFetchSize(Integer.MIN_VALUE);
+        } catch (SQLException e) {
+            throw new SQLException("fail new Entry", e);
+        }
+        if (mQueryListener != null) {
+            mQueryListener.afterPrepare(sql);
+        }
+        PreparedEntry entry = new PreparedEntry(statement, sql, mEntries, mQueryListener);
+        mEntries.register(entry);
+        return entry;
     }
 
     /**
      * {@inheritDoc}
+     * <p>
+     * このクラスはスレッドセーフではないため、先読み中はこのインスタンスを使用しないでください。
      */
     @Override
-    public void drop(Class<?> table) throws SQLException {
-        String tableName = tableName(table);
-        execute("DROP TABLE " + tableName).update();
+    public PageIterator paginate(Class<?> table, DatabaseColumn keyColumn, int pageSize, Executor prefetchExecutor) {
+        return new PageIterator((lastKey, size) -> selectPage(table, keyColumn, lastKey, size),
+                keyColumn, pageSize, prefetchExecutor);
+    }
+
+    /**
+     * キーの列の昇順に、lastKeyより大きいキーを持つ行をpageSize行まで取得します。
+     * @param lastKey 前のページの最後のキー。nullなら先頭から取得する
+     */
+    List<Row> selectPage(Class<?> table, DatabaseColumn keyColumn, Object lastKey, int pageSize)
+            throws SQLException {
+        String sql = SQLs.createSeekSql(TableMeta.of(table).name(), keyColumn.toString(), lastKey == null);
+        try (Entry entry = prepare(sql)) {
+            if (lastKey != null) {
+                Binders.bind(entry, lastKey);
+            }
+            entry.setInt(pageSize);
+            try (ResultSet rs = entry.query()) {
+                SQLFunction<ResultSet, Row> reader = Row.MAPPER.prepare(rs.getMetaData());
+                List<Row> rows = new ArrayList<Row>(pageSize);
+                while (rs.next()) {
+                    rows.add(reader.apply(rs));
+                }
+                return rows;
+            }
+        }
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public boolean isExistTable(Class<?> table) throws SQLException {
-        String tableName = tableName(table);
-        return execute(String.format("show tables where Tables_in_%s like ?", mDBName))
-                .setString(tableName).query().next();
+    public ResultSet selectIn(Class<?> table, DatabaseColumn column, Collection<?> keys) throws SQLException {
+        String tableName = TableMeta.of(table).name();
+        Object[] distinctKeys = new LinkedHashSet<Object>(keys).toArray();
+        if (distinctKeys.length == 0) {
+            return selectAllColumns(table, "1 = 0");
+        }
+
+        if (distinctKeys.length > IN_KEY_TABLE_THRESHOLD) {
+            loadKeyTable(column, distinctKeys);
+            try {
+                String sql = SQLs.createSelectSql(SQLs.createKeyJoin(tableName, column.toString()),
+                        new String[] { tableName + ".*" }, null);
+                return prepare(sql).scopedQuery();
+            } finally {
+                dropKeyTable();
+            }
+        }
+
+        int shape = inShape(distinctKeys.length);
+        String sql = SQLs.createSelectSql(tableName, new String[] { "*" },
+                SQLs.createInClause(column.toString(), shape));
+        PreparedEntry entry = prepare(sql);
+        setKeys(entry, distinctKeys, 0, distinctKeys.length, shape);
+        return entry.scopedQuery();
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public boolean isExistRecord(Class<?> table, String whereClause, Object... whereArgs) throws SQLException {
-        ResultSet rs = selectAllColumns(table, whereClause, whereArgs);
-        return rs.next();
+    public int update(Class<?> table, Map<? extends DatabaseColumn, ?> values, String whereClause, Object... whereArgs)
+            throws SQLException {
+        String tableName = TableMeta.of(table).name();
+        DatabaseColumn[] columns = columnsOf(values);
+        String sql = SQLs.createUpdateSql(tableName, columns, whereClause);
+
+        try (Entry entry = prepare(sql)) {
+            setValues(entry, columns, values);
+            setArgs(entry, whereArgs);
+            return entry.update();
+        }
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public boolean isExistRecord(Class<?> table, DatabaseColumn whereColumn, Object whereArg) throws SQLException {
-        return isExistRecord(table, whereColumn.toString() + "=?", whereArg);
+    public int update(Class<?> table, Map<? extends DatabaseColumn, ?> values, String whereClause, Params whereArgs)
+            throws SQLException {
+        String tableName = TableMeta.of(table).name();
+        DatabaseColumn[] columns = columnsOf(values);
+        String sql = SQLs.createUpdateSql(tableName, columns, whereClause);
+
+        try (Entry entry = prepare(sql)) {
+            setValues(entry, columns, values);
+            whereArgs.bindTo(entry);
+            return entry.update();
+        }
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public Entry execute(String sql) throws SQLException {
-        Entry entry = new PreparedEntry(mConnection, sql);
-        mEntries.add(entry);
-        return entry;
+    public int update(Class<?> table, Map<? extends DatabaseColumn, ?> values, DatabaseColumn whereColumn,
+            Object whereArg) throws SQLException {
+        return update(table, values, whereColumn.toString() + "=?", whereArg);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public void close() throws SQLException {
-        if (mConnection != null) {
-            mConnection.close();
+    public int updateIn(Class<?> table, Map<? extends DatabaseColumn, ?> values, DatabaseColumn column,
+            Collection<?> keys) throws SQLException {
+        String tableName = TableMeta.of(table).name();
+        Object[] distinctKeys = new LinkedHashSet<Object>(keys).toArray();
+        if (distinctKeys.length == 0) {
+            return 0;
         }
-        clear();
+        DatabaseColumn[] columns = columnsOf(values);
+
+        if (distinctKeys.length > IN_KEY_TABLE_THRESHOLD) {
+            loadKeyTable(column, distinctKeys);
+            try (Entry entry = prepare(SQLs.createUpdateSql(
+                    SQLs.createKeyJoin(tableName, column.toString()), columns, null))) {
+                setValues(entry, columns, values);
+                return entry.update();
+            } finally {
+                dropKeyTable();
+            }
+        }
+
+        int count = 0;
+        for (int from = 0; from < distinctKeys.length; from += IN_CHUNK_SIZE) {
+            int to = Math.min(distinctKeys.length, from + IN_CHUNK_SIZE);
+            int shape = inShape(to - from);
+            String sql = SQLs.createUpdateSql(tableName, columns, SQLs.createInClause(column.toString(), shape));
+            try (Entry entry = prepare(sql)) {
+                setValues(entry, columns, values);
+                setKeys(entry, distinctKeys, from, to, shape);
+                count += entry.update();
+            }
+        }
+        return count;
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public void clear() throws SQLException {
-        int size = mEntries.size();
-        for (int i = 0; i < size; i++) {
-            Entry entry = mEntries.pop();
-            entry.close();
+    public long insert(Class<?> table, Map<? extends DatabaseColumn, ?> values) throws SQLException {
+        String tableName = TableMeta.of(table).name();
+        DatabaseColumn[] columns = columnsOf(values);
+        String sql = SQLs.createInsertSql(tableName, columns);
+        try (Entry entry = prepare(sql)) {
+            setValues(entry, columns, values);
+            int result = entry.update();
+            if (result == 0) {
+                return -1;
+            }
+
+            try (ResultSet rs = entry.getGeneratedKeys()) {
+                if (rs.next()) {
+                    return rs.getLong(1);
+                }
+            }
+            return -1;
         }
     }
 
@@ -245,186 +464,1343 @@ public class PreparedDatabase implements SQLDatabase {
      * {@inheritDoc}
      */
     @Override
-    public int sum(Class<?> table, DatabaseColumn column) throws SQLException {
-        return sum(table, column, "");
+    public long[] insertAll(Class<?> table, Collection<? extends Map<? extends DatabaseColumn, ?>> rows)
+            throws SQLException {
+        return insertAll(table, rows, DEFAULT_BATCH_SIZE);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public int sum(Class<?> table, DatabaseColumn column, String whereClause, Object... whereArgs) throws SQLException {
-        return execIntFunc("sum", table, column.toString(), whereClause, whereArgs);
+    public long[] insertAll(Class<?> table, Collection<? extends Map<? extends DatabaseColumn, ?>> rows,
+            int batchSize) throws SQLException {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batch size must be positive : " + batchSize);
+        }
+        if (rows.isEmpty()) {
+            return new long[0];
+        }
+
+        String tableName = TableMeta.of(table).name();
+        DatabaseColumn[] columns = columnsOf(rows.iterator().next());
+        String sql = SQLs.createInsertSql(tableName, columns);
+
+        long[] keys = new long[rows.size()];
+        int keyCount = 0;
+        try (Entry entry = prepare(sql)) {
+            int pending = 0;
+            for (Map<? extends DatabaseColumn, ?> row : rows) {
+                setRow(entry, columns, row);
+                entry.addBatch();
+
+                if (++pending == batchSize) {
+                    keyCount = executeBatch(entry, keys, keyCount);
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                keyCount = executeBatch(entry, keys, keyCount);
+            }
+        }
+        return keyCount == keys.length ? keys : Arrays.copyOf(keys, keyCount);
+    }
+
+    private int executeBatch(Entry entry, long[] keys, int keyCount) throws SQLException {
+        entry.executeBatch();
+        return readKeys(entry, keys, keyCount);
+    }
+
+    private int readKeys(Entry entry, long[] keys, int keyCount) throws SQLException {
+        try (ResultSet rs = entry.getGeneratedKeys()) {
+            while (rs.next() && keyCount < keys.length) {
+                keys[keyCount++] = rs.getLong(1);
+            }
+        }
+        return keyCount;
     }
 
     /**
-     * {@inheritDoc}
+     * 一行分の値をcolumnsの順にセットします。
+     * @throws IllegalArgumentException rowがcolumnsと異なるカラムの組を持つ場合
      */
-    @Override
-    public int max(Class<?> table, DatabaseColumn column) throws SQLException {
-        return execIntFunc("max", table, column.toString(), "");
+    private void setRow(Entry entry, DatabaseColumn[] columns, Map<? extends DatabaseColumn, ?> row)
+            throws SQLException {
+        if (row.size() != columns.length) {
+            throw new IllegalArgumentException("every row must have the same columns : " + row.keySet());
+        }
+        for (DatabaseColumn column : columns) {
+            if (!row.containsKey(column)) {
+                throw new IllegalArgumentException("every row must have the same columns : " + row.keySet());
+            }
+            Binders.bind(entry, row.get(column));
+        }
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public int max(Class<?> table, DatabaseColumn column, String whereClause, Object... whereArgs) throws SQLException {
-        return execIntFunc("max", table, column.toString(), whereClause, whereArgs);
+    public UpsertResult upsert(Class<?> table, Map<? extends DatabaseColumn, ?> values,
+            DatabaseColumn... updateColumns) throws SQLException {
+        String tableName = TableMeta.of(table).name();
+        DatabaseColumn[] columns = columnsOf(values);
+        String sql = SQLs.createUpsertSql(tableName, columns, updateColumnsOf(values, columns, updateColumns));
+        try (Entry entry = prepare(sql)) {
+            setValues(entry, columns, values);
+            int result = entry.update();
+            long[] keys = new long[1];
+            int keyCount = result == 0 ? 0 : readKeys(entry, keys, 0);
+            return new UpsertResult(result, keyCount == 1 ? keys : new long[0]);
+        }
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public int min(Class<?> table, DatabaseColumn column) throws SQLException {
-        return execIntFunc("min", table, column.toString(), "");
+    public UpsertResult upsertAll(Class<?> table, Collection<? extends Map<? extends DatabaseColumn, ?>> rows,
+            DatabaseColumn... updateColumns) throws SQLException {
+        return upsertAll(table, rows, DEFAULT_BATCH_SIZE, updateColumns);
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public int min(Class<?> table, DatabaseColumn column, String whereClause, Object... whereArgs) throws SQLException {
-        return execIntFunc("min", table, column.toString(), whereClause, whereArgs);
+    public UpsertResult upsertAll(Class<?> table, Collection<? extends Map<? extends DatabaseColumn, ?>> rows,
+            int batchSize, DatabaseColumn... updateColumns) throws SQLException {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batch size must be positive : " + batchSize);
+        }
+        if (rows.isEmpty()) {
+            return new UpsertResult(0, new long[0]);
+        }
+
+        String tableName = TableMeta.of(table).name();
+        Map<? extends DatabaseColumn, ?> first = rows.iterator().next();
+        DatabaseColumn[] columns = columnsOf(first);
+        String sql = SQLs.createUpsertSql(tableName, columns, updateColumnsOf(first, columns, updateColumns));
+
+        int[] counts = new int[rows.size()];
+        int executed = 0;
+        long[] keys = new long[rows.size()];
+        int keyCount = 0;
+        try (Entry entry = prepare(sql)) {
+            int pending = 0;
+            for (Map<? extends DatabaseColumn, ?> row : rows) {
+                setRow(entry, columns, row);
+                entry.addBatch();
+
+                if (++pending == batchSize || executed + pending == counts.length) {
+                    int[] batchCounts = entry.executeBatch();
+                    System.arraycopy(batchCounts, 0, counts, executed, Math.min(batchCounts.length, pending));
+                    executed += pending;
+                    keyCount = readKeys(entry, keys, keyCount);
+                    pending = 0;
+                }
+            }
+        }
+        return UpsertResult.ofBatch(counts, keyCount == keys.length ? keys : Arrays.copyOf(keys, keyCount));
     }
 
     /**
-     * {@inheritDoc}
+     * @return 更新するカラム。updateColumnsが空であればcolumns
+     * @throws IllegalArgumentException updateColumnsにvaluesに含まれないカラムがある場合
      */
-    @Override
-    public int count(Class<?> table) throws SQLException {
-        return execIntFunc("count", table, "*", "");
+    private static DatabaseColumn[] updateColumnsOf(Map<? extends DatabaseColumn, ?> values,
+            DatabaseColumn[] columns, DatabaseColumn[] updateColumns) {
+        if (updateColumns.length == 0) {
+            return columns;
+        }
+        for (DatabaseColumn column : updateColumns) {
+            if (!values.containsKey(column)) {
+                throw new IllegalArgumentException("update column is not in values : " + column);
+            }
+        }
+        return updateColumns;
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public int count(Class<?> table, DatabaseColumn column) throws SQLException {
-        return count(table, column, "");
+    public int bulkLoad(Class<?> table, Iterator<? extends Map<? extends DatabaseColumn, ?>> rows)
+            throws SQLException {
+        TableMeta meta = TableMeta.of(table);
+        DatabaseColumn[] constants = meta.columns();
+        if (!rows.hasNext()) {
+            return 0;
+        }
+
+        Map<? extends DatabaseColumn, ?> first = rows.next();
+        List<DatabaseColumn> columns = new ArrayList<DatabaseColumn>();
+        for (DatabaseColumn column : constants) {
+            if (first.containsKey(column)) {
+                columns.add(column);
+            }
+        }
+
+        Iterator<Map<? extends DatabaseColumn, ?>> allRows = new Iterator<Map<? extends DatabaseColumn, ?>>() {
+            private Map<? extends DatabaseColumn, ?> mFirst = first;
+
+            @Override
+            public boolean hasNext() {
+                return mFirst != null || rows.hasNext();
+            }
+
+            @Override
+            public Map<? extends DatabaseColumn, ?> next() {
+                if (mFirst == null) {
+                    return rows.next();
+                }
+                Map<? extends DatabaseColumn, ?> row = mFirst;
+                mFirst = null;
+                return row;
+            }
+        };
+
+        DatabaseColumn[] columnArray = columns.toArray(new DatabaseColumn[0]);
+        TsvInputStream tsv = new TsvInputStream(allRows, columnArray);
+        int count = loadData(meta.name(), columnArray, tsv);
+        if (tsv.error() != null) {
+            // 変換できない行の手前でデータを終えているため、それまでの行は読み込まれている
+            throw new IllegalArgumentException(String.format("stopped loading after %d rows : %s", count,
+                    tsv.error().getMessage()), tsv.error());
+        }
+        return count;
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public int count(Class<?> table, DatabaseColumn column, String whereClause, Object... whereArgs)
-            throws SQLException {
-        return execIntFunc("count", table, column.toString(), whereClause, whereArgs);
+    public int bulkLoad(Class<?> table, InputStream tsv) throws SQLException {
+        TableMeta meta = TableMeta.of(table);
+        return loadData(meta.name(), meta.columns(), tsv);
     }
 
-    private int execIntFunc(String funcName, Class<?> table, String column, String whereClause, Object... whereArgs)
-            throws SQLException {
-        String tableName = tableName(table);
-        String sql = SQLs.createSelectFuncSql(funcName, tableName, column, whereClause);
+    private int loadData(String tableName, DatabaseColumn[] columns, InputStream data) throws SQLException {
+        String sql = SQLs.createLoadDataSql(tableName, columns);
+        // LOAD DATA文はサーバーサイドのプリペアドステートメントで実行できないため、Statementを使用する
+        try (Statement statement = mConnection.createStatement()) {
+            setLocalInfileInputStream(statement, data);
+            QueryListener listener = mQueryListener;
+            if (listener == null) {
+                return statement.executeUpdate(sql);
+            }
 
-        Entry entry = execute(sql);
-        setArgs(entry, whereArgs);
-        ResultSet resultSet = entry.query();
-        if (resultSet.next()) {
-            return resultSet.getInt(1);
-        } else {
-            throw new NoSuchElementException();
+            listener.beforeExecute(QueryEvent.Kind.UPDATE, sql);
+            long start = System.nanoTime();
+            int result;
+            try {
+                result = statement.executeUpdate(sql);
+            } catch (SQLException | RuntimeException e) {
+                listener.afterExecute(new QueryEvent(QueryEvent.Kind.UPDATE, sql, new Object[0],
+                        System.nanoTime() - start, -1, e));
+                throw e;
+            }
+            listener.afterExecute(new QueryEvent(QueryEvent.Kind.UPDATE, sql, new Object[0],
+                    System.nanoTime() - start, result, null));
+            return result;
         }
     }
 
-    private void setArgs(Entry entry, Object... whereArgs) throws SQLException {
-        for (Object arg : whereArgs) {
-            setArg(entry, arg);
+    /**
+     * LOAD DATA LOCAL INFILE文で送るデータをドライバのStatementに設定します。
+     * <p>
+     * ドライバ固有のクラスに依存しないよう、setLocalInfileInputStreamメソッドをリフレクションで探します。
+     *     コネクションプールなどのラッパーであれば、ラップされたStatementからも探します。
+     * @throws SQLFeatureNotSupportedException ドライバがストリームからの読み込みに対応していない場合
+     */
+    private static void setLocalInfileInputStream(Statement statement, InputStream data) throws SQLException {
+        Object target = statement;
+        Method method = findPublicMethod(statement.getClass(), "setLocalInfileInputStream", InputStream.class);
+        if (method == null && statement.isWrapperFor(Statement.class)) {
+            target = statement.unwrap(Statement.class);
+            method = findPublicMethod(target.getClass(), "setLocalInfileInputStream", InputStream.class);
         }
-    }
-
-    private void setArg(Entry entry, Object whereArg) throws SQLException {
-        if (whereArg instanceof Integer) {
-            entry.setInt((Integer) whereArg);
-        } else if (whereArg instanceof String) {
-            entry.setString((String) whereArg);
-        } else if (whereArg instanceof Long) {
-            entry.setLong((Long) whereArg);
-        } else if (whereArg instanceof Float) {
-            entry.setFloat((Float) whereArg);
-        } else if (whereArg instanceof Double) {
-            entry.setDouble((Double) whereArg);
-        } else {
-            throw new IllegalArgumentException();
+        if (method == null) {
+            throw new SQLFeatureNotSupportedException(
+                    "driver does not support LOAD DATA LOCAL INFILE from a stream : " + target.getClass().getName());
         }
-    }
 
-    private String tableName(Class<?> table) {
         try {
-            Method method = table.getMethod(DatabaseColumn.TABLE_NAME_METHOD);
-            return (String) method.invoke(null);
-        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException e) {
-            throw new IllegalArgumentException("not found static tableName method\n"
-                    + "require public 'static' String " + DatabaseColumn.TABLE_NAME_METHOD + "() in "
-                    + table.getName());
+            method.invoke(target, data);
+        } catch (IllegalAccessException e) {
+            throw new SQLFeatureNotSupportedException("cannot access " + method, e);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            throw new SQLException(cause);
         }
     }
 
     /**
-     * データベースへの各問い合わせを担当するクラス
+     * 実装クラスが公開されていなくても呼び出せるよう、公開されたクラスかインターフェースからメソッドを探します。
+     * @return 見つからなければnull
      */
-    public static class PreparedEntry implements Entry {
-        private final PreparedStatement mPreparedStatement;
-        private int mIndexCounter = 0;
-
-        /**
-         * @param sql SQL文
-         * @throws SQLException 生成失敗
-         */
-        private PreparedEntry(Connection connect, String sql) throws SQLException {
-            try {
-                mIndexCounter = 0;
-                mPreparedStatement = connect.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
-            } catch (SQLException e) {
-                throw new SQLException("fail new Entry", e);
+    private static Method findPublicMethod(Class<?> type, String name, Class<?>... parameterTypes) {
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            List<Class<?>> candidates = new ArrayList<Class<?>>();
+            candidates.add(c);
+            candidates.addAll(Arrays.asList(c.getInterfaces()));
+            for (Class<?> candidate : candidates) {
+                if (!Modifier.isPublic(candidate.getModifiers())) {
+                    continue;
+                }
+                try {
+                    return candidate.getMethod(name, parameterTypes);
+                } catch (NoSuchMethodException e) {
+                    // 次の候補から探す
+                }
             }
         }
+        return null;
+    }
 
-        /**
-         *    {@inheritDoc}
-         */
-        @Override
-        public ResultSet query() throws SQLException {
-            return mPreparedStatement.executeQuery();
-        }
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int delete(Class<?> table, String whereClause, Object... whereArgs) throws SQLException {
+        String sql = TableMeta.of(table).deleteSql(whereClause);
 
-        /**
-         * {@inheritDoc}
-         */
-        @Override
-        public int update() throws SQLException {
-            return mPreparedStatement.executeUpdate();
+        try (Entry entry = prepare(sql)) {
+            setArgs(entry, whereArgs);
+            return entry.update();
         }
+    }
 
-        /**
-         * {@inheritDoc}
-         */
-        @Override
-        public ResultSet getGeneratedKeys() throws SQLException {
-            return mPreparedStatement.getGeneratedKeys();
-        }
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int delete(Class<?> table, String whereClause, Params whereArgs) throws SQLException {
+        String sql = TableMeta.of(table).deleteSql(whereClause);
 
-        /**
-         * 終了処理を行います
-         * PreparedDatabaseのcloseによって自動的に実行されるため、必ずしもEntryインスタンスにおいて実行する必要はありません
-         * すでにクローズされた状態でcloseメソッドを呼び出すと、操作は行われません
-         * @throws SQLException データベースアクセスエラーが発生した場合
-         */
-        @Override
-        public void close() throws SQLException {
-            mPreparedStatement.close();
-            // Statementをcloseすると、ResultSetも自動的にcloseされる
+        try (Entry entry = prepare(sql)) {
+            whereArgs.bindTo(entry);
+            return entry.update();
         }
+    }
 
-        /**
-         * {@inheritDoc}
-         */
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int delete(Class<?> table, DatabaseColumn whereColumn, Object whereArg) throws SQLException {
+        return delete(table, whereColumn.toString() + "=?", whereArg);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int deleteIn(Class<?> table, DatabaseColumn column, Collection<?> keys) throws SQLException {
+        String tableName = TableMeta.of(table).name();
+        Object[] distinctKeys = new LinkedHashSet<Object>(keys).toArray();
+        if (distinctKeys.length == 0) {
+            return 0;
+        }
+
+        if (distinctKeys.length > IN_KEY_TABLE_THRESHOLD) {
+            loadKeyTable(column, distinctKeys);
+            try (Entry entry = prepare(SQLs.createJoinDeleteSql(tableName,
+                    SQLs.createKeyJoin(tableName, column.toString())))) {
+                return entry.update();
+            } finally {
+                dropKeyTable();
+            }
+        }
+
+        int count = 0;
+        for (int from = 0; from < distinctKeys.length; from += IN_CHUNK_SIZE) {
+            int to = Math.min(distinctKeys.length, from + IN_CHUNK_SIZE);
+            int shape = inShape(to - from);
+            String sql = SQLs.createDeleteSql(tableName, SQLs.createInClause(column.toString(), shape));
+            try (Entry entry = prepare(sql)) {
+                setKeys(entry, distinctKeys, from, to, shape);
+                count += entry.update();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * キーの数以上で最小の2の累乗を返します。
+     * IN句のプレイスホルダーの数をこの値に揃えることで、SQL文の種類を少なく保ちます。
+     */
+    private static int inShape(int keyCount) {
+        return keyCount <= 1 ? 1 : Integer.highestOneBit(keyCount - 1) << 1;
+    }
+
+    /**
+     * keys[from]からkeys[to - 1]までをセットし、shape個に満たない分は最後のキーを繰り返してセットします。
+     */
+    private void setKeys(Entry entry, Object[] keys, int from, int to, int shape) throws SQLException {
+        for (int i = from; i < to; i++) {
+            Binders.bind(entry, keys[i]);
+        }
+        for (int i = to - from; i < shape; i++) {
+            Binders.bind(entry, keys[to - 1]);
+        }
+    }
+
+    private void loadKeyTable(DatabaseColumn column, Object[] keys) throws SQLException {
+        dropKeyTable();
+        try (Entry entry = prepare(SQLs.createKeyTableSql(column.type()))) {
+            entry.update();
+        }
+
+        try (Entry entry = prepare(SQLs.createInsertKeySql())) {
+            int pending = 0;
+            for (int i = 0; i < keys.length; i++) {
+                entry.setInt(i);
+                Binders.bind(entry, keys[i]);
+                entry.addBatch();
+                if (++pending == DEFAULT_BATCH_SIZE) {
+                    entry.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                entry.executeBatch();
+            }
+        }
+    }
+
+    private void dropKeyTable() throws SQLException {
+        try (Entry entry = prepare(SQLs.createDropKeyTableSql())) {
+            entry.update();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T extends Enum<T> & DatabaseColumn> void create(Class<T> table) throws SQLException {
+        try (Entry entry = prepare(TableMeta.of(table).createTableSql())) {
+            entry.update();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int empty(Class<?> table) throws SQLException {
+        return delete(table, "");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void drop(Class<?> table) throws SQLException {
+        try (Entry entry = prepare(TableMeta.of(table).dropSql())) {
+            entry.update();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isExistTable(Class<?> table) throws SQLException {
+        String tableName = TableMeta.of(table).name();
+        try (Entry entry = prepare(String.format("show tables where Tables_in_%s like ?", mDBName))) {
+            return entry.setString(tableName).query().next();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isExistRecord(Class<?> table, String whereClause, Object... whereArgs) throws SQLException {
+        try (Entry entry = prepare(TableMeta.of(table).existsSql(whereClause))) {
+            setArgs(entry, whereArgs);
+            try (ResultSet rs = entry.query()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isExistRecord(Class<?> table, DatabaseColumn whereColumn, Object whereArg) throws SQLException {
+        return isExistRecord(table, whereColumn.toString() + "=?", whereArg);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Set<Object> existing(Class<?> table, DatabaseColumn column, Collection<?> keys) throws SQLException {
+        // NaNや無限大は列に格納できず、どの値とも等しくならない
+        Set<Object> distinct = new LinkedHashSet<Object>();
+        for (Object key : keys) {
+            if (!isNonFinite(key)) {
+                distinct.add(key);
+            }
+        }
+        Object[] distinctKeys = distinct.toArray();
+        if (distinctKeys.length == 0) {
+            return new LinkedHashSet<Object>();
+        }
+
+        // 照合順序や型の変換に従うよう、キーと値の比較はサーバーで行い、存在したキーの位置を受け取る
+        boolean[] exists = new boolean[distinctKeys.length];
+        String tableName = TableMeta.of(table).name();
+        if (distinctKeys.length > IN_KEY_TABLE_THRESHOLD) {
+            loadKeyTable(column, distinctKeys);
+            try (Entry entry = prepare(SQLs.createExistingKeysSql(tableName, column.toString()));
+                    ResultSet rs = entry.query()) {
+                while (rs.next()) {
+                    exists[rs.getInt(1)] = true;
+                }
+            } finally {
+                dropKeyTable();
+            }
+        } else {
+            for (int from = 0; from < distinctKeys.length; from += IN_CHUNK_SIZE) {
+                int to = Math.min(distinctKeys.length, from + IN_CHUNK_SIZE);
+                int shape = inShape(to - from);
+                try (Entry entry = prepare(SQLs.createExistingSql(tableName, column.toString(), shape))) {
+                    setKeys(entry, distinctKeys, from, to, shape);
+                    setKeys(entry, distinctKeys, from, to, shape);
+                    try (ResultSet rs = entry.query()) {
+                        // 集約関数だけを選択しているため常に1行が返り、一致する行がなければNULLになる
+                        rs.next();
+                        for (int i = from; i < to; i++) {
+                            exists[i] = rs.getInt(i - from + 1) == 1;
+                        }
+                    }
+                }
+            }
+        }
+
+        Set<Object> ret = new LinkedHashSet<Object>();
+        for (int i = 0; i < distinctKeys.length; i++) {
+            if (exists[i]) {
+                ret.add(distinctKeys[i]);
+            }
+        }
+        return ret;
+    }
+
+    private static boolean isNonFinite(Object key) {
+        if (key instanceof Double) {
+            return ((Double) key).isNaN() || ((Double) key).isInfinite();
+        }
+        if (key instanceof Float) {
+            return ((Float) key).isNaN() || ((Float) key).isInfinite();
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <R> R inTransaction(SQLFunction<? super SQLDatabase, ? extends R> work) throws SQLException {
+        if (mTransactionDepth > 0 || !mConnection.getAutoCommit()) {
+            // 内側の処理はやり直さない。デッドロックではトランザクション全体がロールバックされるため、外側でやり直す
+            // 呼び出し元が自動コミットを無効にしていれば、そのトランザクションの内側として扱う
+            return inSavepoint(work);
+        }
+        for (int attempt = 0;; attempt++) {
+            try {
+                return transaction(work);
+            } catch (SQLException e) {
+                if (attempt >= DeadlockRetry.MAX_RETRIES || !DeadlockRetry.isRetryable(e)) {
+                    throw e;
+                }
+                DeadlockRetry.backoff(attempt, e);
+            }
+        }
+    }
+
+    private <R> R transaction(SQLFunction<? super SQLDatabase, ? extends R> work) throws SQLException {
+        mConnection.setAutoCommit(false);
+        mTransactionDepth++;
+        Throwable failure = null;
+        try {
+            R result = work.apply(this);
+            mConnection.commit();
+            return result;
+        } catch (SQLException | RuntimeException | Error e) {
+            failure = e;
+            try {
+                mConnection.rollback();
+            } catch (SQLException ex) {
+                e.addSuppressed(ex);
+            }
+            throw e;
+        } finally {
+            mTransactionDepth--;
+            try {
+                mConnection.setAutoCommit(true);
+            } catch (SQLException e) {
+                // 元の例外を隠さない
+                if (failure == null) {
+                    throw e;
+                }
+                failure.addSuppressed(e);
+            }
+        }
+    }
+
+    private <R> R inSavepoint(SQLFunction<? super SQLDatabase, ? extends R> work) throws SQLException {
+        Savepoint savepoint = mConnection.setSavepoint();
+        mTransactionDepth++;
+        try {
+            R result = work.apply(this);
+            mConnection.releaseSavepoint(savepoint);
+            return result;
+        } catch (SQLException | RuntimeException | Error e) {
+            try {
+                mConnection.rollback(savepoint);
+            } catch (SQLException ex) {
+                e.addSuppressed(ex);
+            }
+            throw e;
+        } finally {
+            mTransactionDepth--;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Entry execute(String sql) throws SQLException {
+        return prepare(sql);
+    }
+
+    private PreparedEntry prepare(String sql) throws SQLException {
+        if (mStatementCache != null) {
+            long misses = mStatementCache.missCount();
+            PreparedStatement statement = mStatementCache.prepare(sql);
+            if (mQueryListener != null && mStatementCache.missCount() != misses) {
+                mQueryListener.afterPrepare(sql);
+            }
+            // キャッシュされたPreparedStatementはキャッシュが管理するため、mEntriesには加えない
+            return new PreparedEntry(statement, sql, null, mQueryListener);
+        }
+        PreparedStatement statement;
+        try {
+            statement = mConnection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+        } catch (SQLException e) {
+            throw new SQLException("fail new Entry", e);
+        }
+        if (mQueryListener != null) {
+            mQueryListener.afterPrepare(sql);
+        }
+        PreparedEntry entry = new PreparedEntry(statement, sql, mEntries, mQueryListener);
+        mEntries.register(entry);
+        return entry;
+    }
+
+    /**
+     * 接続が有効かどうかを確認します。
+     * @param timeoutSeconds 確認を待機する最大秒数
+     * @return 接続が有効であればtrue
+     * @throws SQLException timeoutSecondsが負の場合
+     */
+    boolean isValid(int timeoutSeconds) throws SQLException {
+        return mConnection.isValid(timeoutSeconds);
+    }
+
+    /**
+     * クローズされないまま一定時間が経過したEntryを、生成時のスタックトレースとともにログに出力するようにします。
+     * 閾値を設定した後に生成されたEntryが対象となります。
+     * 検査はバックグラウンドのスレッドで1秒ごとに行われ、このデータベースをクローズすると止まります。
+     * @param thresholdMillis リークとみなすまでの時間(ミリ秒)。0以下を渡すとリーク検出を無効にする
+     */
+    public void setLeakDetectionThreshold(long thresholdMillis) {
+        mEntries.setLeakThreshold(thresholdMillis);
+    }
+
+    /**
+     * SQL文の実行の前後に呼び出されるリスナーを設定します。設定した後に作成されたEntryが対象となります。
+     * <p>
+     * 読み出した行を数えるため、リスナーがある間は問い合わせが返すResultSetは行を数えるResultSetでラップされます。
+     * @param listener リスナー。nullを渡すと呼び出しをやめる
+     * @throws IllegalArgumentException このインスタンスでEXPLAINを実行するSlowQueryLoggerを渡した場合
+     * @see QueryRecorder
+     */
+    public void setQueryListener(QueryListener listener) {
+        if (listener instanceof SlowQueryLogger && ((SlowQueryLogger) listener).explainsOn(this)) {
+            // バックグラウンドのスレッドが、実行元と同じ接続でEXPLAINを実行することになる
+            throw new IllegalArgumentException("slow query logger must explain on another database");
+        }
+        mQueryListener = listener;
+    }
+
+    /**
+     * @return PreparedStatementのキャッシュ。キャッシュが無効であればnull
+     */
+    public StatementCache statementCache() {
+        return mStatementCache;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() throws SQLException {
+        mEntries.stopLeakDetection();
+        if (mStatementCache != null) {
+            mStatementCache.clear();
+        }
+        if (mConnection != null) {
+            mConnection.close();
+        }
+        clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void clear() throws SQLException {
+        mEntries.closeAll();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int sum(Class<?> table, DatabaseColumn column) throws SQLException {
+        return sum(table, column, "");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int sum(Class<?> table, DatabaseColumn column, String whereClause, Object... whereArgs) throws SQLException {
+        return execIntFunc("sum", table, column.toString(), whereClause, whereArgs);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int max(Class<?> table, DatabaseColumn column) throws SQLException {
+        return execIntFunc("max", table, column.toString(), "");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int max(Class<?> table, DatabaseColumn column, String whereClause, Object... whereArgs) throws SQLException {
+        return execIntFunc("max", table, column.toString(), whereClause, whereArgs);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int min(Class<?> table, DatabaseColumn column) throws SQLException {
+        return execIntFunc("min", table, column.toString(), "");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int min(Class<?> table, DatabaseColumn column, String whereClause, Object... whereArgs) throws SQLException {
+        return execIntFunc("min", table, column.toString(), whereClause, whereArgs);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int count(Class<?> table) throws SQLException {
+        return execIntFunc("count", table, "*", "");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int count(Class<?> table, DatabaseColumn column) throws SQLException {
+        return count(table, column, "");
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int count(Class<?> table, DatabaseColumn column, String whereClause, Object... whereArgs)
+            throws SQLException {
+        return execIntFunc("count", table, column.toString(), whereClause, whereArgs);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AggregateResult aggregate(Class<?> table, DatabaseColumn column, String whereClause, Object[] whereArgs,
+            Agg... aggs) throws SQLException {
+        Agg[] distinctAggs = distinctAggs(aggs);
+        String sql = SQLs.createAggregateSql(TableMeta.of(table).name(), column.toString(), distinctAggs, whereClause);
+
+        try (Entry entry = prepare(sql)) {
+            setArgs(entry, whereArgs);
+            try (ResultSet rs = entry.query()) {
+                if (!rs.next()) {
+                    throw new NoSuchElementException();
+                }
+                EnumMap<Agg, BigDecimal> values = new EnumMap<Agg, BigDecimal>(Agg.class);
+                for (int i = 0; i < distinctAggs.length; i++) {
+                    values.put(distinctAggs[i], rs.getBigDecimal(i + 1));
+                }
+                return new AggregateResult(values);
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<Object, BigDecimal> aggregateBy(Class<?> table, DatabaseColumn groupColumn, Agg agg,
+            DatabaseColumn column, String whereClause, Object... whereArgs) throws SQLException {
+        String sql = SQLs.createGroupBySql(TableMeta.of(table).name(), groupColumn.toString(),
+                agg.expression(column.toString()), whereClause);
+        ColumnReader reader = ColumnReader.forType(groupColumn.type());
+        return groupBy(sql, rs -> reader.read(rs, 1), whereArgs);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<Timestamp, BigDecimal> aggregateByTime(Class<?> table, DatabaseColumn timeColumn, TimeBucket bucket,
+            Agg agg, DatabaseColumn column, String whereClause, Object... whereArgs) throws SQLException {
+        String sql = SQLs.createGroupBySql(TableMeta.of(table).name(), bucket.expression(timeColumn.toString()),
+                agg.expression(column.toString()), whereClause);
+        return groupBy(sql, rs -> rs.getTimestamp(1), whereArgs);
+    }
+
+    private <K> Map<K, BigDecimal> groupBy(String sql, SQLFunction<ResultSet, K> keyReader, Object... whereArgs)
+            throws SQLException {
+        try (Entry entry = prepare(sql)) {
+            setArgs(entry, whereArgs);
+            try (ResultSet rs = entry.query()) {
+                Map<K, BigDecimal> values = new LinkedHashMap<K, BigDecimal>();
+                while (rs.next()) {
+                    values.put(keyReader.apply(rs), rs.getBigDecimal(2));
+                }
+                return values;
+            }
+        }
+    }
+
+    private static Agg[] distinctAggs(Agg[] aggs) {
+        if (aggs.length == 0) {
+            throw new IllegalArgumentException("require at least one aggregate function");
+        }
+        return EnumSet.copyOf(Arrays.asList(aggs)).toArray(new Agg[0]);
+    }
+
+    private int execIntFunc(String funcName, Class<?> table, String column, String whereClause, Object... whereArgs)
+            throws SQLException {
+        String tableName = TableMeta.of(table).name();
+        String sql = SQLs.createSelectFuncSql(funcName, tableName, column, whereClause);
+
+        try (Entry entry = prepare(sql)) {
+            setArgs(entry, whereArgs);
+            try (ResultSet resultSet = entry.query()) {
+                if (resultSet.next()) {
+                    return resultSet.getInt(1);
+                } else {
+                    throw new NoSuchElementException();
+                }
+            }
+        }
+    }
+
+    private static DatabaseColumn[] columnsOf(Map<? extends DatabaseColumn, ?> values) {
+        return values.keySet().toArray(new DatabaseColumn[values.size()]);
+    }
+
+    private void setValues(Entry entry, DatabaseColumn[] columns, Map<? extends DatabaseColumn, ?> values)
+            throws SQLException {
+        for (DatabaseColumn column : columns) {
+            Binders.bind(entry, values.get(column));
+        }
+    }
+
+    private void setArgs(Entry entry, Object... whereArgs) throws SQLException {
+        for (Object arg : whereArgs) {
+            Binders.bind(entry, arg);
+        }
+    }
+
+    /**
+     * PreparedDatabaseを作成するビルダーです。
+     * <p>
+     * 接続の取得方法は次のいずれかです。DataSourceと関数は後から指定したものが有効になります。
+     * <ul>
+     * <li>{@link #dataSource(DataSource)}で渡したDataSourceから取得する
+     * <li>{@link #connectionSupplier(SQLSupplier)}で渡した関数から取得する
+     * <li>いずれも指定されていなければ、host、port、databaseとドライバのプロパティから
+     *     URLを組み立ててDriverManagerから取得する
+     * </ul>
+     * ドライバのプロパティの既定値はuseSSL=false、useLegacyDatetimeCode=false、serverTimezone=JSTです。
+     */
+    public static class Builder {
+        private String mHost = "localhost";
+        private int mPort = -1;
+        private String mDatabase = null;
+        private String mUser = null;
+        private String mPassword = null;
+        private final Map<String, String> mProperties = new LinkedHashMap<String, String>();
+        private DataSource mDataSource = null;
+        private SQLSupplier<Connection> mConnectionSupplier = null;
+        private int mStatementCacheSize = 0;
+        private int mMaxOpenEntries = MAX_OPEN_ENTRIES;
+        private long mLeakDetectionThreshold = 0;
+        private QueryListener mQueryListener = null;
+
+        private Builder() {
+            mProperties.put("useSSL", String.valueOf(USE_SSL));
+            mProperties.put("useLegacyDatetimeCode", String.valueOf(USE_LEGACY_DATETIME_CODE));
+            mProperties.put("serverTimezone", SERVER_TIME_ZONE);
+        }
+
+        /**
+         * @param host 接続先のホスト名。既定値はlocalhost
+         */
+        public Builder host(String host) {
+            mHost = host;
+            return this;
+        }
+
+        /**
+         * @param port 接続先のポート番号。指定しなければドライバの既定値
+         */
+        public Builder port(int port) {
+            mPort = port;
+            return this;
+        }
+
+        /**
+         * @param database 接続するデータベース名
+         */
+        public Builder database(String database) {
+            mDatabase = database;
+            return this;
+        }
+
+        /**
+         * @param user ユーザー名
+         */
+        public Builder user(String user) {
+            mUser = user;
+            return this;
+        }
+
+        /**
+         * @param password パスワード
+         */
+        public Builder password(String password) {
+            mPassword = password;
+            return this;
+        }
+
+        /**
+         * ドライバのプロパティを設定します。
+         * 例えば、rewriteBatchedStatements、useServerPrepStmts、cachePrepStmts、prepStmtCacheSize、useCursorFetchなどです。
+         * @param key プロパティ名
+         * @param value 値。toString()の戻り値が使われる
+         */
+        public Builder property(String key, Object value) {
+            mProperties.put(key, String.valueOf(value));
+            return this;
+        }
+
+        /**
+         * ドライバのプロパティをまとめて設定します。
+         * @param properties プロパティ名から値へのマップ
+         */
+        public Builder properties(Map<String, ?> properties) {
+            for (Map.Entry<String, ?> mapEntry : properties.entrySet()) {
+                mProperties.put(mapEntry.getKey(), String.valueOf(mapEntry.getValue()));
+            }
+            return this;
+        }
+
+        /**
+         * 接続をDataSourceから取得するようにします。
+         * ユーザー名が設定されていれば、ユーザー名とパスワードを指定して接続を取得します。
+         * @param dataSource 接続を取得するDataSource
+         */
+        public Builder dataSource(DataSource dataSource) {
+            mDataSource = dataSource;
+            mConnectionSupplier = null;
+            return this;
+        }
+
+        /**
+         * 接続を渡された関数から取得するようにします。
+         * @param connectionSupplier 接続を返す関数
+         */
+        public Builder connectionSupplier(SQLSupplier<Connection> connectionSupplier) {
+            mConnectionSupplier = connectionSupplier;
+            mDataSource = null;
+            return this;
+        }
+
+        /**
+         * @param statementCacheSize キャッシュするPreparedStatementの最大数。0以下ならキャッシュしない
+         * @see PreparedDatabase#PreparedDatabase(String, String, String, int)
+         */
+        public Builder statementCacheSize(int statementCacheSize) {
+            mStatementCacheSize = statementCacheSize;
+            return this;
+        }
+
+        /**
+         * @param maxOpenEntries 同時に保持するクローズされていないEntryの最大数。超えると最も古いEntryがクローズされる
+         */
+        public Builder maxOpenEntries(int maxOpenEntries) {
+            mMaxOpenEntries = maxOpenEntries;
+            return this;
+        }
+
+        /**
+         * @param thresholdMillis リークとみなすまでの時間(ミリ秒)。0以下ならリーク検出を行わない
+         * @see PreparedDatabase#setLeakDetectionThreshold(long)
+         */
+        public Builder leakDetectionThreshold(long thresholdMillis) {
+            mLeakDetectionThreshold = thresholdMillis;
+            return this;
+        }
+
+        /**
+         * @param listener SQL文の実行の前後に呼び出すリスナー
+         * @see PreparedDatabase#setQueryListener(QueryListener)
+         */
+        public Builder queryListener(QueryListener listener) {
+            mQueryListener = listener;
+            return this;
+        }
+
+        /**
+         * 現在の設定で接続を取得する関数を返します。
+         * {@link PooledDatabase}に渡して接続プールの接続を作成するために使用できます。
+         */
+        public SQLSupplier<Connection> connectionFactory() {
+            if (mConnectionSupplier != null) {
+                return mConnectionSupplier;
+            }
+            if (mDataSource != null) {
+                DataSource dataSource = mDataSource;
+                String user = mUser;
+                String password = mPassword;
+                if (user != null) {
+                    return () -> dataSource.getConnection(user, password);
+                }
+                return dataSource::getConnection;
+            }
+
+            String urlString = url();
+            Properties info = info();
+            return () -> {
+                try {
+                    // JDBCドライバをロードする
+                    Class.forName("com.mysql.cj.jdbc.Driver").newInstance();
+
+                    // Drivermanagerに接続(データベースへの接続)
+                    return DriverManager.getConnection(urlString, info);
+
+                } catch (ClassNotFoundException | SQLException | InstantiationException | IllegalAccessException e) {
+                    throw new SQLException("database failed connect", e);
+                }
+            };
+        }
+
+        /**
+         * @return DriverManagerに渡す接続先のURL
+         * @throws IllegalStateException データベース名が設定されていない場合
+         */
+        String url() {
+            if (mDatabase == null) {
+                throw new IllegalStateException("database name is not set");
+            }
+            StringBuilder url = new StringBuilder("jdbc:mysql://").append(mHost);
+            if (mPort > 0) {
+                url.append(":").append(mPort);
+            }
+            return url.append("/").append(mDatabase).toString();
+        }
+
+        /**
+         * @return DriverManagerに渡す、ユーザー名とパスワードを含めたプロパティ
+         */
+        Properties info() {
+            Properties info = new Properties();
+            info.putAll(mProperties);
+            if (mUser != null) {
+                info.setProperty("user", mUser);
+            }
+            if (mPassword != null) {
+                info.setProperty("password", mPassword);
+            }
+            return info;
+        }
+
+        /**
+         * @throws SQLException データベースに接続できなかった場合
+         * @throws IllegalStateException 接続の取得方法を指定せず、データベース名も設定されていない場合
+         */
+        public PreparedDatabase build() throws SQLException {
+            Connection connection = connectionFactory().get();
+            PreparedDatabase database;
+            try {
+                String dbName = mDatabase != null ? mDatabase : connection.getCatalog();
+                database = new PreparedDatabase(dbName, connection, mStatementCacheSize, mMaxOpenEntries);
+            } catch (SQLException | RuntimeException e) {
+                connection.close();
+                throw e;
+            }
+            database.setLeakDetectionThreshold(mLeakDetectionThreshold);
+            database.setQueryListener(mQueryListener);
+            return database;
+        }
+    }
+
+    /**
+     * データベースへの各問い合わせを担当するクラス
+     */
+    public static class PreparedEntry implements Entry, EntryTracker.Trackable {
+        private final PreparedStatement mPreparedStatement;
+        private final String mSql;
+        private final EntryTracker mTracker;
+        private final QueryListener mListener;
+        private final List<Object> mArgs;
+        private final long mCreatedNanos = System.nanoTime();
+        private final Throwable mCreationTrace;
+        private ResultSet mResultSet = null;
+        private CountingResultSet mFetch = null;
+        private int mIndexCounter = 0;
+
+        /**
+         * @param statement 準備済みのPreparedStatement
+         * @param sql SQL文
+         * @param tracker このEntryを追跡するトラッカー。
+         *     nullであればstatementはキャッシュが管理しているものとみなし、closeメソッドではクローズしない
+         * @param listener 実行の前後に呼び出すリスナー。なければnull
+         */
+        private PreparedEntry(PreparedStatement statement, String sql, EntryTracker tracker, QueryListener listener) {
+            mPreparedStatement = statement;
+            mSql = sql;
+            mTracker = tracker;
+            mListener = listener;
+            // リスナーに渡すため、リスナーがある場合のみセットした値を保持する
+            mArgs = listener != null ? new ArrayList<Object>() : null;
+            mCreationTrace = tracker != null && tracker.isLeakDetectionEnabled()
+                    ? new Throwable("entry created here") : null;
+        }
+
+        /**
+         * 問い合わせを実行し、返されたResultSetのクローズとともにこのEntryも解放されるようにします。
+         */
+        private ResultSet scopedQuery() throws SQLException {
+            if (mTracker != null) {
+                mPreparedStatement.closeOnCompletion();
+            }
+            return query();
+        }
+
+        /**
+         *    {@inheritDoc}
+         */
+        @Override
+        public ResultSet query() throws SQLException {
+            if (mListener == null) {
+                mResultSet = mPreparedStatement.executeQuery();
+                return mResultSet;
+            }
+
+            // 再実行すると前回のResultSetはクローズされる
+            finishFetch();
+            mListener.beforeExecute(QueryEvent.Kind.QUERY, mSql);
+            long start = System.nanoTime();
+            try {
+                mResultSet = mPreparedStatement.executeQuery();
+            } catch (SQLException | RuntimeException e) {
+                fire(QueryEvent.Kind.QUERY, start, -1, e);
+                throw e;
+            }
+            fire(QueryEvent.Kind.QUERY, start, -1, null);
+            mFetch = new CountingResultSet(mResultSet, rows -> mListener.afterFetch(mSql, rows));
+            return mFetch;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int update() throws SQLException {
+            if (mListener == null) {
+                return mPreparedStatement.executeUpdate();
+            }
+
+            mListener.beforeExecute(QueryEvent.Kind.UPDATE, mSql);
+            long start = System.nanoTime();
+            int result;
+            try {
+                result = mPreparedStatement.executeUpdate();
+            } catch (SQLException | RuntimeException e) {
+                fire(QueryEvent.Kind.UPDATE, start, -1, e);
+                throw e;
+            }
+            fire(QueryEvent.Kind.UPDATE, start, result, null);
+            return result;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public ResultSet getGeneratedKeys() throws SQLException {
+            return mPreparedStatement.getGeneratedKeys();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Entry addBatch() throws SQLException {
+            mPreparedStatement.addBatch();
+            mIndexCounter = 0;
+            return this;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int[] executeBatch() throws SQLException {
+            if (mListener == null) {
+                return mPreparedStatement.executeBatch();
+            }
+
+            mListener.beforeExecute(QueryEvent.Kind.BATCH, mSql);
+            long start = System.nanoTime();
+            int[] result;
+            try {
+                result = mPreparedStatement.executeBatch();
+            } catch (SQLException | RuntimeException e) {
+                fire(QueryEvent.Kind.BATCH, start, -1, e);
+                throw e;
+            }
+            long rows = 0;
+            for (int count : result) {
+                if (count < 0) {
+                    // ドライバが行数を返さなかった
+                    rows = -1;
+                    break;
+                }
+                rows += count;
+            }
+            fire(QueryEvent.Kind.BATCH, start, rows, null);
+            return result;
+        }
+
+        private void fire(QueryEvent.Kind kind, long startNanos, long rows, Throwable error) {
+            mListener.afterExecute(new QueryEvent(kind, mSql, mArgs.toArray(), System.nanoTime() - startNanos,
+                    rows, error));
+        }
+
+        private void finishFetch() {
+            if (mFetch != null) {
+                mFetch.finish();
+                mFetch = null;
+            }
+        }
+
+        private void bound(Object x) {
+            if (mIndexCounter <= mArgs.size()) {
+                mArgs.set(mIndexCounter - 1, x);
+            } else {
+                mArgs.add(x);
+            }
+        }
+
+        /**
+         * 終了処理を行います
+         * PreparedDatabaseのcloseによって自動的に実行されるため、必ずしもEntryインスタンスにおいて実行する必要はありません
+         * すでにクローズされた状態でcloseメソッドを呼び出すと、操作は行われません
+         * キャッシュされたPreparedStatementを使用している場合は、問い合わせ結果のみをクローズします
+         * @throws SQLException データベースアクセスエラーが発生した場合
+         */
+        @Override
+        public void close() throws SQLException {
+            if (mTracker != null) {
+                mTracker.unregister(this);
+            }
+            closeAbandoned();
+        }
+
+        @Override
+        public void closeAbandoned() throws SQLException {
+            if (mListener != null) {
+                finishFetch();
+            }
+            if (mTracker != null) {
+                mPreparedStatement.close();
+                // Statementをcloseすると、ResultSetも自動的にcloseされる
+            } else if (mResultSet != null) {
+                mResultSet.close();
+            }
+            mResultSet = null;
+        }
+
+        @Override
+        public boolean isClosed() throws SQLException {
+            return mPreparedStatement.isClosed();
+        }
+
+        @Override
+        public String sql() {
+            return mSql;
+        }
+
+        @Override
+        public long createdNanos() {
+            return mCreatedNanos;
+        }
+
+        @Override
+        public Throwable creationTrace() {
+            return mCreationTrace;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
         @Override
         public Entry setInt(int x) throws SQLException {
             mIndexCounter++;
             mPreparedStatement.setInt(mIndexCounter, x);
+            if (mArgs != null) {
+                bound(x);
+            }
             return this;
         }
 
@@ -435,6 +1811,9 @@ public class PreparedDatabase implements SQLDatabase {
         public Entry setString(String x) throws SQLException {
             mIndexCounter++;
             mPreparedStatement.setString(mIndexCounter, x);
+            if (mArgs != null) {
+                bound(x);
+            }
             return this;
         }
 
@@ -445,6 +1824,9 @@ public class PreparedDatabase implements SQLDatabase {
         public Entry setDouble(double x) throws SQLException {
             mIndexCounter++;
             mPreparedStatement.setDouble(mIndexCounter, x);
+            if (mArgs != null) {
+                bound(x);
+            }
             return this;
         }
 
@@ -455,6 +1837,9 @@ public class PreparedDatabase implements SQLDatabase {
         public Entry setFloat(float x) throws SQLException {
             mIndexCounter++;
             mPreparedStatement.setFloat(mIndexCounter, x);
+            if (mArgs != null) {
+                bound(x);
+            }
             return this;
         }
 
@@ -465,6 +1850,113 @@ public class PreparedDatabase implements SQLDatabase {
         public Entry setLong(long x) throws SQLException {
             mIndexCounter++;
             mPreparedStatement.setLong(mIndexCounter, x);
+            if (mArgs != null) {
+                bound(x);
+            }
+            return this;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Entry setObject(Object x) throws SQLException {
+            mIndexCounter++;
+            mPreparedStatement.setObject(mIndexCounter, x);
+            if (mArgs != null) {
+                bound(x);
+            }
+            return this;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Entry setBoolean(boolean x) throws SQLException {
+            mIndexCounter++;
+            mPreparedStatement.setBoolean(mIndexCounter, x);
+            if (mArgs != null) {
+                bound(x);
+            }
+            return this;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Entry setBigDecimal(BigDecimal x) throws SQLException {
+            mIndexCounter++;
+            mPreparedStatement.setBigDecimal(mIndexCounter, x);
+            if (mArgs != null) {
+                bound(x);
+            }
+            return this;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Entry setBytes(byte[] x) throws SQLException {
+            mIndexCounter++;
+            mPreparedStatement.setBytes(mIndexCounter, x);
+            if (mArgs != null) {
+                bound(x);
+            }
+            return this;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Entry setTimestamp(Timestamp x) throws SQLException {
+            mIndexCounter++;
+            mPreparedStatement.setTimestamp(mIndexCounter, x);
+            if (mArgs != null) {
+                bound(x);
+            }
+            return this;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Entry setDate(Date x) throws SQLException {
+            mIndexCounter++;
+            mPreparedStatement.setDate(mIndexCounter, x);
+            if (mArgs != null) {
+                bound(x);
+            }
+            return this;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Entry setTime(Time x) throws SQLException {
+            mIndexCounter++;
+            mPreparedStatement.setTime(mIndexCounter, x);
+            if (mArgs != null) {
+                bound(x);
+            }
+            return this;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Entry setNull() throws SQLException {
+            mIndexCounter++;
+            mPreparedStatement.setNull(mIndexCounter, Types.NULL);
+            if (mArgs != null) {
+                bound(null);
+            }
             return this;
         }
     }
@@ -0,0 +1,128 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * SQL文を一度実行した結果です。{@link QueryListener#afterExecute(QueryEvent)}に渡されます。
+ * <p>
+ * SQL文は値をプレイスホルダーで表した形のままであるため、同じ形の文ごとに集計するキーとして使用できます。
+ * <p>
+ * このクラスは不変です。
+ */
+public final class QueryEvent {
+    private static final Pattern TABLE = Pattern.compile(
+            "\\b(?:INTO\\s+TABLE|FROM|INTO|UPDATE|TABLE)\\s+([`\\w.$]+)", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * 実行の種類
+     */
+    public enum Kind {
+        /**
+         * 結果を返す問い合わせ
+         */
+        QUERY,
+        /**
+         * 行数を返す更新
+         */
+        UPDATE,
+        /**
+         * バッチの実行
+         */
+        BATCH,
+    }
+
+    private final Kind mKind;
+    private final String mSql;
+    private final Object[] mArgs;
+    private final long mElapsedNanos;
+    private final long mRows;
+    private final Throwable mError;
+
+    QueryEvent(Kind kind, String sql, Object[] args, long elapsedNanos, long rows, Throwable error) {
+        mKind = kind;
+        mSql = sql;
+        mArgs = args;
+        mElapsedNanos = elapsedNanos;
+        mRows = rows;
+        mError = error;
+    }
+
+    public Kind kind() {
+        return mKind;
+    }
+
+    /**
+     * @return 実行したSQL文。値はプレイスホルダーで表される
+     */
+    public String sql() {
+        return mSql;
+    }
+
+    /**
+     * @return プレイスホルダーにセットした値をセットした順に格納した配列。バッチであれば最後に追加した行の値
+     */
+    public Object[] args() {
+        return mArgs.clone();
+    }
+
+    /**
+     * @return SQL文が対象とするテーブル名。判別できなければnull
+     */
+    public String table() {
+        return tableOf(mSql);
+    }
+
+    /**
+     * @return 実行にかかった時間(ナノ秒)
+     */
+    public long elapsedNanos() {
+        return mElapsedNanos;
+    }
+
+    /**
+     * @return 実行にかかった時間(ミリ秒)
+     */
+    public double elapsedMillis() {
+        return mElapsedNanos / 1e6;
+    }
+
+    /**
+     * @return 更新した行数。バッチであれば各文の行数の合計。
+     *     問い合わせの場合や、失敗した場合、ドライバが行数を返さなかった場合は-1。
+     *     問い合わせで読み出した行数は{@link QueryListener#afterFetch(String, long)}で通知される
+     */
+    public long rows() {
+        return mRows;
+    }
+
+    /**
+     * @return 実行に失敗した場合はその例外。成功した場合はnull
+     */
+    public Throwable error() {
+        return mError;
+    }
+
+    /**
+     * @return 実行に成功した場合はtrue
+     */
+    public boolean isSuccess() {
+        return mError == null;
+    }
+
+    /**
+     * SQL文の最初のFROM、INTO、UPDATE、TABLEに続く名前をテーブル名とみなして返します。
+     * @return テーブル名。見つからなければnull
+     */
+    static String tableOf(String sql) {
+        Matcher matcher = TABLE.matcher(sql);
+        return matcher.find() ? matcher.group(1).replace("`", "") : null;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("QueryEvent[kind=%s, sql=%s, elapsed=%dms, rows=%d, error=%s]",
+                mKind, mSql, TimeUnit.NANOSECONDS.toMillis(mElapsedNanos), mRows, mError);
+    }
+}
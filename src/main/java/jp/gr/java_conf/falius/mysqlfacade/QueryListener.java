@@ -0,0 +1,83 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+/**
+ * SQL文の実行の前後に呼び出されるリスナーです。
+ * <p>
+ * {@link PreparedDatabase#setQueryListener(QueryListener)}や{@link PooledDatabase#setQueryListener(QueryListener)}で登録すると、
+ *     Entryのquery、update、executeBatchメソッドと、bulkLoadメソッドによる実行ごとに呼び出されます。
+ *     PreparedStatementの作成と、問い合わせの結果の読み出しの終了も通知されます。<br>
+ * リスナーは実行したスレッドで同期的に呼び出されるため、時間のかかる処理は行わないでください。
+ *     また、例外を投げないでください。投げた例外は実行の呼び出し元に伝わります。
+ * <p>
+ * 複数の接続から同時に呼び出されることがあるため、実装はスレッドセーフである必要があります。
+ * @see QueryRecorder
+ */
+@FunctionalInterface
+public interface QueryListener {
+
+    /**
+     * SQL文を実行する直前に呼び出されます。
+     * @param kind 実行の種類
+     * @param sql 実行するSQL文。値はプレイスホルダーで表される
+     */
+    default void beforeExecute(QueryEvent.Kind kind, String sql) {}
+
+    /**
+     * SQL文の実行を終えた直後に、成功したか失敗したかにかかわらず呼び出されます。
+     * @param event 実行の結果
+     */
+    void afterExecute(QueryEvent event);
+
+    /**
+     * 新しいPreparedStatementを作成した直後に呼び出されます。
+     *     ステートメントキャッシュにあるものを再利用した場合は呼び出されません。
+     * @param sql 準備したSQL文
+     */
+    default void afterPrepare(String sql) {}
+
+    /**
+     * 問い合わせの結果の読み出しを終えたときに呼び出されます。
+     *     ResultSetかEntryをクローズしたとき、または同じEntryで次の問い合わせを実行したときに呼び出されます。
+     * @param sql 実行したSQL文。値はプレイスホルダーで表される
+     * @param rows ResultSetのnextメソッドで読み出した行数
+     */
+    default void afterFetch(String sql, long rows) {}
+
+    /**
+     * 渡されたリスナーを順に呼び出すリスナーを返します。
+     * @param listeners 呼び出すリスナー
+     */
+    static QueryListener of(QueryListener... listeners) {
+        QueryListener[] copy = listeners.clone();
+        return new QueryListener() {
+
+            @Override
+            public void beforeExecute(QueryEvent.Kind kind, String sql) {
+                for (QueryListener listener : copy) {
+                    listener.beforeExecute(kind, sql);
+                }
+            }
+
+            @Override
+            public void afterExecute(QueryEvent event) {
+                for (QueryListener listener : copy) {
+                    listener.afterExecute(event);
+                }
+            }
+
+            @Override
+            public void afterPrepare(String sql) {
+                for (QueryListener listener : copy) {
+                    listener.afterPrepare(sql);
+                }
+            }
+
+            @Override
+            public void afterFetch(String sql, long rows) {
+                for (QueryListener listener : copy) {
+                    listener.afterFetch(sql, rows);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,271 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * SQL文の形ごとに、実行回数、失敗した回数、更新した行数、読み出した行数、PreparedStatementを作成した回数と、
+ *     実行時間の分布を記録する{@link QueryListener}です。
+ * <p>
+ * 記録はロックを使わずに行い、実行時間はバケットの数が一定のヒストグラムに数えるため、実行のたびにかかる負荷は小さく抑えられます。<br>
+ * 集計するSQL文の形はmaxShapes個までで、それを超えた形の文はまとめて{@link #OTHER_SHAPE}として集計されます。
+ *     条件節に値を直接埋め込んだ文は、値ごとに別の形として扱われることに注意してください。
+ * <pre>
+ * QueryRecorder recorder = new QueryRecorder();
+ * recorder.registerMBean("main");
+ * pooledDatabase.setQueryListener(recorder);
+ * // ...
+ * for (QueryStats stats : recorder.snapshot()) {
+ *     System.out.println(stats);
+ * }
+ * </pre>
+ * このクラスはスレッドセーフです。
+ */
+public class QueryRecorder implements QueryListener, QueryRecorderMXBean {
+    /**
+     * 集計する形の数が上限に達した後の文をまとめて集計する際のキー
+     */
+    public static final String OTHER_SHAPE = "(other)";
+    private static final int DEFAULT_MAX_SHAPES = 512;
+
+    private final int mMaxShapes;
+    private final ConcurrentMap<String, ShapeStats> mShapes = new ConcurrentHashMap<String, ShapeStats>();
+    private volatile ObjectName mObjectName = null;
+
+    public QueryRecorder() {
+        this(DEFAULT_MAX_SHAPES);
+    }
+
+    /**
+     * @param maxShapes 集計するSQL文の形の最大数
+     * @throws IllegalArgumentException maxShapesが0以下の場合
+     */
+    public QueryRecorder(int maxShapes) {
+        if (maxShapes <= 0) {
+            throw new IllegalArgumentException("max shapes must be positive : " + maxShapes);
+        }
+        mMaxShapes = maxShapes;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterExecute(QueryEvent event) {
+        shapeOf(event.sql()).record(event);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterPrepare(String sql) {
+        shapeOf(sql).mPreparedCount.increment();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterFetch(String sql, long rows) {
+        shapeOf(sql).mFetchedRows.add(rows);
+    }
+
+    private ShapeStats shapeOf(String sql) {
+        ShapeStats stats = mShapes.get(sql);
+        if (stats != null) {
+            return stats;
+        }
+        if (mShapes.size() >= mMaxShapes) {
+            return mShapes.computeIfAbsent(OTHER_SHAPE, k -> new ShapeStats(k, null));
+        }
+        return mShapes.computeIfAbsent(sql, k -> new ShapeStats(k, QueryEvent.tableOf(k)));
+    }
+
+    /**
+     * @return SQL文の形ごとの現時点での統計。合計の実行時間が長い順
+     */
+    public List<QueryStats> snapshot() {
+        List<QueryStats> ret = new ArrayList<QueryStats>(mShapes.size());
+        for (ShapeStats stats : mShapes.values()) {
+            ret.add(stats.snapshot());
+        }
+        ret.sort(Comparator.comparingDouble(QueryStats::getTotalMillis).reversed());
+        return ret;
+    }
+
+    /**
+     * @return sqlの形の現時点での統計。記録していなければnull
+     */
+    public QueryStats snapshot(String sql) {
+        ShapeStats stats = mShapes.get(sql);
+        return stats == null ? null : stats.snapshot();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<QueryStats> getStatements() {
+        return snapshot();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getExecutionCount() {
+        long count = 0;
+        for (ShapeStats stats : mShapes.values()) {
+            count += stats.mCount.sum();
+        }
+        return count;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getErrorCount() {
+        long count = 0;
+        for (ShapeStats stats : mShapes.values()) {
+            count += stats.mErrorCount.sum();
+        }
+        return count;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getRowCount() {
+        long count = 0;
+        for (ShapeStats stats : mShapes.values()) {
+            count += stats.mRows.sum();
+        }
+        return count;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getFetchedRowCount() {
+        long count = 0;
+        for (ShapeStats stats : mShapes.values()) {
+            count += stats.mFetchedRows.sum();
+        }
+        return count;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long getPreparedCount() {
+        long count = 0;
+        for (ShapeStats stats : mShapes.values()) {
+            count += stats.mPreparedCount.sum();
+        }
+        return count;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getShapeCount() {
+        return mShapes.size();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void reset() {
+        mShapes.clear();
+    }
+
+    /**
+     * プラットフォームのMBeanサーバーに、このインスタンスを登録します。
+     * @param name 登録名に含める名前。同じMBeanサーバーで一意であること
+     * @return 登録したオブジェクト名
+     * @throws JMException 同じ名前のMBeanが登録済みの場合など、登録に失敗した場合
+     * @throws IllegalStateException すでに登録されている場合
+     */
+    public synchronized ObjectName registerMBean(String name) throws JMException {
+        if (mObjectName != null) {
+            throw new IllegalStateException("already registered : " + mObjectName);
+        }
+        ObjectName objectName = new ObjectName(getClass().getPackage().getName() + ":type=QueryRecorder,name="
+                + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        mObjectName = objectName;
+        return objectName;
+    }
+
+    /**
+     * MBeanサーバーへの登録を解除します。登録されていなければ何もしません。
+     * @throws JMException 登録の解除に失敗した場合
+     */
+    public synchronized void unregisterMBean() throws JMException {
+        if (mObjectName == null) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(mObjectName)) {
+            server.unregisterMBean(mObjectName);
+        }
+        mObjectName = null;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("QueryRecorder[shapes=%d, executions=%d, errors=%d]",
+                getShapeCount(), getExecutionCount(), getErrorCount());
+    }
+
+    private static final class ShapeStats {
+        private final String mSql;
+        private final String mTable;
+        private final LongAdder mCount = new LongAdder();
+        private final LongAdder mErrorCount = new LongAdder();
+        private final LongAdder mRows = new LongAdder();
+        private final LongAdder mFetchedRows = new LongAdder();
+        private final LongAdder mPreparedCount = new LongAdder();
+        private final LongAdder mTotalNanos = new LongAdder();
+        private final LatencyHistogram mHistogram = new LatencyHistogram();
+
+        ShapeStats(String sql, String table) {
+            mSql = sql;
+            mTable = table;
+        }
+
+        void record(QueryEvent event) {
+            mCount.increment();
+            if (!event.isSuccess()) {
+                mErrorCount.increment();
+            }
+            if (event.rows() > 0) {
+                mRows.add(event.rows());
+            }
+            mTotalNanos.add(event.elapsedNanos());
+            mHistogram.record(event.elapsedNanos());
+        }
+
+        QueryStats snapshot() {
+            return new QueryStats(mSql, mTable, mCount.sum(), mErrorCount.sum(), mRows.sum(), mFetchedRows.sum(),
+                    mPreparedCount.sum(), mTotalNanos.sum() / 1e6, mHistogram.percentile(0.5) / 1e6,
+                    mHistogram.percentile(0.99) / 1e6, mHistogram.max() / 1e6);
+        }
+    }
+}
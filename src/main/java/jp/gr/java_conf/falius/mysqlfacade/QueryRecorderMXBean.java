@@ -0,0 +1,50 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.util.List;
+
+/**
+ * {@link QueryRecorder}の統計をJMXで公開するためのインターフェースです。
+ * @see QueryRecorder#registerMBean(String)
+ */
+public interface QueryRecorderMXBean {
+
+    /**
+     * @return すべてのSQL文を実行した回数
+     */
+    long getExecutionCount();
+
+    /**
+     * @return すべてのSQL文の実行に失敗した回数
+     */
+    long getErrorCount();
+
+    /**
+     * @return 更新した行数の合計
+     */
+    long getRowCount();
+
+    /**
+     * @return 問い合わせの結果から読み出した行数の合計
+     */
+    long getFetchedRowCount();
+
+    /**
+     * @return 新しく作成したPreparedStatementの数。ステートメントキャッシュのヒットは含まない
+     */
+    long getPreparedCount();
+
+    /**
+     * @return 集計しているSQL文の形の数
+     */
+    int getShapeCount();
+
+    /**
+     * @return SQL文の形ごとの統計。合計の実行時間が長い順
+     */
+    List<QueryStats> getStatements();
+
+    /**
+     * すべての統計を破棄します。
+     */
+    void reset();
+}
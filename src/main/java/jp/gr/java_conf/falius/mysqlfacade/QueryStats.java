@@ -0,0 +1,112 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+/**
+ * {@link QueryRecorder}が同じ形のSQL文ごとに集計した、ある時点での統計です。
+ * <p>
+ * 時間はミリ秒で表し、パーセンタイルは近似値です。<br>
+ * このクラスは不変です。
+ */
+public final class QueryStats {
+    private final String mSql;
+    private final String mTable;
+    private final long mCount;
+    private final long mErrorCount;
+    private final long mRows;
+    private final long mFetchedRows;
+    private final long mPreparedCount;
+    private final double mTotalMillis;
+    private final double mP50Millis;
+    private final double mP99Millis;
+    private final double mMaxMillis;
+
+    QueryStats(String sql, String table, long count, long errorCount, long rows, long fetchedRows,
+            long preparedCount, double totalMillis, double p50Millis, double p99Millis, double maxMillis) {
+        mSql = sql;
+        mTable = table;
+        mCount = count;
+        mErrorCount = errorCount;
+        mRows = rows;
+        mFetchedRows = fetchedRows;
+        mPreparedCount = preparedCount;
+        mTotalMillis = totalMillis;
+        mP50Millis = p50Millis;
+        mP99Millis = p99Millis;
+        mMaxMillis = maxMillis;
+    }
+
+    /**
+     * @return SQL文。値はプレイスホルダーで表される
+     */
+    public String getSql() {
+        return mSql;
+    }
+
+    /**
+     * @return SQL文が対象とするテーブル名。判別できなければnull
+     */
+    public String getTable() {
+        return mTable;
+    }
+
+    /**
+     * @return 実行した回数
+     */
+    public long getCount() {
+        return mCount;
+    }
+
+    /**
+     * @return 実行に失敗した回数
+     */
+    public long getErrorCount() {
+        return mErrorCount;
+    }
+
+    /**
+     * @return 更新した行数の合計。問い合わせの行数は含まず、{@link #getFetchedRows()}で得られる
+     */
+    public long getRows() {
+        return mRows;
+    }
+
+    /**
+     * @return 問い合わせの結果から読み出した行数の合計
+     */
+    public long getFetchedRows() {
+        return mFetchedRows;
+    }
+
+    /**
+     * @return PreparedStatementを新しく作成した回数
+     */
+    public long getPreparedCount() {
+        return mPreparedCount;
+    }
+
+    public double getTotalMillis() {
+        return mTotalMillis;
+    }
+
+    public double getMeanMillis() {
+        return mCount == 0 ? 0 : mTotalMillis / mCount;
+    }
+
+    public double getP50Millis() {
+        return mP50Millis;
+    }
+
+    public double getP99Millis() {
+        return mP99Millis;
+    }
+
+    public double getMaxMillis() {
+        return mMaxMillis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("QueryStats[sql=%s, count=%d, errors=%d, rows=%d, fetched=%d, prepared=%d,"
+                + " p50=%.3fms, p99=%.3fms, max=%.3fms]",
+                mSql, mCount, mErrorCount, mRows, mFetchedRows, mPreparedCount, mP50Millis, mP99Millis, mMaxMillis);
+    }
+}
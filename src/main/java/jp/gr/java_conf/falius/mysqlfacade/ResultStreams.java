@@ -0,0 +1,128 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * ResultSetを一行ずつ読み進めるStreamを作成するユーティリティです。
+ * <p>
+ * 作成されたStreamは、最後まで読み終えた時点、例外が発生した時点、
+ *     またはStreamがクローズされた時点で関連する資源を一度だけクローズします。<br>
+ * 読み出し中に発生したSQLExceptionは{@link UncheckedSQLException}にラップして投げられます。
+ */
+final class ResultStreams {
+
+    private ResultStreams() {}
+
+    /**
+     * @param rs 読み出すResultSet
+     * @param reader 現在の行を要素に変換する関数
+     * @param resource 読み終えた時点でクローズする資源
+     */
+    static <R> Stream<R> of(ResultSet rs, SQLFunction<ResultSet, R> reader, AutoCloseable resource) {
+        Closer closer = new Closer(resource);
+        // 利用者の関数はnullを返しうるため、NONNULLは指定しない
+        Spliterator<R> spliterator = new Spliterators.AbstractSpliterator<R>(Long.MAX_VALUE, Spliterator.ORDERED) {
+
+            @Override
+            public boolean tryAdvance(Consumer<? super R> action) {
+                if (closer.isClosed()) {
+                    return false;
+                }
+                try {
+                    if (!rs.next()) {
+                        closer.close();
+                        return false;
+                    }
+                    action.accept(reader.apply(rs));
+                    return true;
+                } catch (SQLException e) {
+                    closer.closeQuietly(e);
+                    throw new UncheckedSQLException(e);
+                }
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(closer::close);
+    }
+
+    /**
+     * 渡されたStreamを読み終えた時点、またはクローズした時点で、さらにresourceもクローズするStreamを返します。
+     */
+    static <R> Stream<R> withResource(Stream<R> stream, AutoCloseable resource) {
+        Closer closer = new Closer(() -> {
+            try {
+                stream.close();
+            } finally {
+                resource.close();
+            }
+        });
+        Spliterator<R> source = stream.spliterator();
+        Spliterator<R> spliterator = new Spliterators.AbstractSpliterator<R>(source.estimateSize(),
+                source.characteristics() & ~Spliterator.SIZED) {
+
+            @Override
+            public boolean tryAdvance(Consumer<? super R> action) {
+                if (closer.isClosed()) {
+                    return false;
+                }
+                boolean advanced;
+                try {
+                    advanced = source.tryAdvance(action);
+                } catch (RuntimeException e) {
+                    closer.closeQuietly(e);
+                    throw e;
+                }
+                if (!advanced) {
+                    closer.close();
+                }
+                return advanced;
+            }
+        };
+        return StreamSupport.stream(spliterator, false).onClose(closer::close);
+    }
+
+    /**
+     * 資源を一度だけクローズする
+     */
+    private static class Closer {
+        private final AutoCloseable mResource;
+        private boolean mClosed = false;
+
+        private Closer(AutoCloseable resource) {
+            mResource = resource;
+        }
+
+        private boolean isClosed() {
+            return mClosed;
+        }
+
+        private void close() {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            try {
+                mResource.close();
+            } catch (SQLException e) {
+                throw new UncheckedSQLException(e);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private void closeQuietly(Exception cause) {
+            try {
+                close();
+            } catch (RuntimeException e) {
+                cause.addSuppressed(e);
+            }
+        }
+    }
+}
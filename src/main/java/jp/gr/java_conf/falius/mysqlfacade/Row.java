@@ -0,0 +1,170 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 問い合わせ結果の一行分の値を保持するクラスです。
+ * <p>
+ * ResultSetのカーソルの位置に依存しないため、ResultSetを読み進めた後やクローズした後でも値を参照できます。<br>
+ * 列ラベルから列番号への対応は問い合わせ結果ごとに一度だけ求められ、すべての行で共有されます。
+ */
+public final class Row {
+    private final Labels mLabels;
+    private final Object[] mValues;
+
+    private Row(Labels labels, Object[] values) {
+        mLabels = labels;
+        mValues = values;
+    }
+
+    /**
+     * 問い合わせ結果の各行をRowに変換するRowMapper
+     */
+    public static final RowMapper<Row> MAPPER = metaData -> {
+        Labels labels = new Labels(metaData);
+        int columnCount = labels.mNames.length;
+        return rs -> {
+            Object[] values = new Object[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                values[i] = rs.getObject(i + 1);
+            }
+            return new Row(labels, values);
+        };
+    };
+
+    /**
+     * @return 列の数
+     */
+    public int size() {
+        return mValues.length;
+    }
+
+    /**
+     * @param columnIndex 1から始まる列番号
+     * @return 列の値。NULLであればnull
+     * @throws IndexOutOfBoundsException 列番号が範囲外の場合
+     */
+    public Object get(int columnIndex) {
+        return mValues[columnIndex - 1];
+    }
+
+    /**
+     * @param label 列ラベル。大文字と小文字は区別しない
+     * @return 列の値。NULLであればnull
+     * @throws IllegalArgumentException 列ラベルが結果に含まれない場合
+     */
+    public Object get(String label) {
+        return mValues[mLabels.indexOf(label)];
+    }
+
+    /**
+     * @return 列の値。NULLであればnull
+     * @throws IllegalArgumentException 列が結果に含まれない場合
+     */
+    public Object get(DatabaseColumn column) {
+        return get(column.toString());
+    }
+
+    /**
+     * @return 列の値の文字列表現。NULLであればnull
+     */
+    public String getString(DatabaseColumn column) {
+        Object value = get(column);
+        return value == null ? null : value.toString();
+    }
+
+    /**
+     * @return 列の値。NULLであれば0
+     * @throws ClassCastException 値が数値でない場合
+     */
+    public int getInt(DatabaseColumn column) {
+        Object value = get(column);
+        return value == null ? 0 : ((Number) value).intValue();
+    }
+
+    /**
+     * @return 列の値。NULLであれば0
+     * @throws ClassCastException 値が数値でない場合
+     */
+    public long getLong(DatabaseColumn column) {
+        Object value = get(column);
+        return value == null ? 0 : ((Number) value).longValue();
+    }
+
+    /**
+     * @return 列の値。NULLであれば0
+     * @throws ClassCastException 値が数値でない場合
+     */
+    public double getDouble(DatabaseColumn column) {
+        Object value = get(column);
+        return value == null ? 0 : ((Number) value).doubleValue();
+    }
+
+    /**
+     * @return 列ラベルから値への、列の順序を保ったマップ
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> map = new LinkedHashMap<String, Object>();
+        for (int i = 0; i < mValues.length; i++) {
+            map.put(mLabels.mNames[i], mValues[i]);
+        }
+        return map;
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof Row)) {
+            return false;
+        }
+        Row other = (Row) obj;
+        return Arrays.equals(mLabels.mNames, other.mLabels.mNames) && Arrays.equals(mValues, other.mValues);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(mValues);
+    }
+
+    /**
+     * 問い合わせ結果の列ラベルと列番号の対応
+     */
+    private static class Labels {
+        private final String[] mNames;
+        private final Map<String, Integer> mIndexes = new HashMap<String, Integer>();
+
+        private Labels(ResultSetMetaData metaData) throws SQLException {
+            int columnCount = metaData.getColumnCount();
+            mNames = new String[columnCount];
+            for (int i = 0; i < columnCount; i++) {
+                String label = metaData.getColumnLabel(i + 1);
+                mNames[i] = label;
+                // 同じラベルが複数あれば最初の列を優先する
+                mIndexes.putIfAbsent(label, i);
+                mIndexes.putIfAbsent(label.toLowerCase(Locale.ROOT), i);
+            }
+        }
+
+        private int indexOf(String label) {
+            Integer index = mIndexes.get(label);
+            if (index == null) {
+                index = mIndexes.get(label.toLowerCase(Locale.ROOT));
+            }
+            if (index == null) {
+                throw new IllegalArgumentException("no such column : " + label);
+            }
+            return index;
+        }
+    }
+}
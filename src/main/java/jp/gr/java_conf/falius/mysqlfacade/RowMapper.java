@@ -0,0 +1,39 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * 問い合わせ結果の各行をオブジェクトに変換するインタフェースです。
+ * <p>
+ * {@link #prepare(ResultSetMetaData)}は問い合わせ結果ごとに一度だけ呼ばれます。
+ *     列ラベルの解決など行によらない処理はここで済ませ、各行の変換では列番号による読み出しだけを行うようにします。
+ * <pre>
+ * {@code
+ * RowMapper<String> names = metaData -> {
+ *     int index = ...; // metaDataから"name"列の番号を求める
+ *     return rs -> rs.getString(index);
+ * };
+ * }
+ * </pre>
+ * @param <R> 変換後の型
+ */
+@FunctionalInterface
+public interface RowMapper<R> {
+
+    /**
+     * @param metaData 問い合わせ結果の列の情報
+     * @return ResultSetの現在の行を変換する関数
+     * @throws SQLException データベースアクセスエラーが発生した場合
+     */
+    SQLFunction<ResultSet, R> prepare(ResultSetMetaData metaData) throws SQLException;
+
+    /**
+     * 列の情報を使用せず、各行を渡された関数で変換するRowMapperを返します。
+     * @param mapper ResultSetの現在の行を変換する関数
+     */
+    static <R> RowMapper<R> of(SQLFunction<ResultSet, R> mapper) {
+        return metaData -> mapper;
+    }
+}
@@ -0,0 +1,164 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 問い合わせの結果を、購読者の要求した数だけ一行ずつ発行するPublisherです。
+ * <p>
+ * 問い合わせは購読ごとに、最初の要求を受けた時点で実行されます。<br>
+ * 行はrequestメソッドを呼び出したスレッドで発行され、ResultSetからは要求された分だけ読み出されます。
+ *     すべての行を発行し終えるか、購読が取り消されるか、エラーが発生した時点で、問い合わせに使用したEntryはクローズされます。
+ */
+final class RowPublisher implements Publisher<Row> {
+    private static final Logger LOG = LoggerFactory.getLogger(RowPublisher.class);
+
+    private final SQLSupplier<Stream<Row>> mQuery;
+
+    /**
+     * @param query 結果を読み出すStreamを返す関数。Streamのクローズで問い合わせに使用した資源が解放されること
+     */
+    RowPublisher(SQLSupplier<Stream<Row>> query) {
+        mQuery = query;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super Row> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("subscriber must not be null");
+        }
+        subscriber.onSubscribe(new RowSubscription(subscriber));
+    }
+
+    private final class RowSubscription implements Subscription {
+        private final Subscriber<? super Row> mSubscriber;
+        private final AtomicLong mRequested = new AtomicLong();
+        private final AtomicInteger mWorking = new AtomicInteger();
+        private volatile boolean mCancelled = false;
+        private volatile IllegalArgumentException mInvalidRequest = null;
+
+        // 以下はdrainメソッドの中でのみ扱う
+        private Stream<Row> mStream = null;
+        private Iterator<Row> mRows = null;
+        private boolean mDone = false;
+
+        RowSubscription(Subscriber<? super Row> subscriber) {
+            mSubscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                mInvalidRequest = new IllegalArgumentException("request must be positive : " + n);
+            } else {
+                long current;
+                long next;
+                do {
+                    current = mRequested.get();
+                    if (current == Long.MAX_VALUE) {
+                        break;
+                    }
+                    next = current + n;
+                    if (next < 0) {
+                        next = Long.MAX_VALUE;
+                    }
+                } while (!mRequested.compareAndSet(current, next));
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            mCancelled = true;
+            drain();
+        }
+
+        /**
+         * 発行処理を一つのスレッドだけが行うようにします。
+         * 発行中に別の要求や取り消しがあった場合は、発行中のスレッドが続けて処理します。
+         */
+        private void drain() {
+            if (mWorking.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                if (!mDone) {
+                    emit();
+                }
+                missed = mWorking.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void emit() {
+            if (mCancelled) {
+                finish();
+                return;
+            }
+            if (mInvalidRequest != null) {
+                finish();
+                mSubscriber.onError(mInvalidRequest);
+                return;
+            }
+
+            long requested = mRequested.get();
+            long emitted = 0;
+            try {
+                if (mRows == null && requested > 0) {
+                    mStream = mQuery.get();
+                    mRows = mStream.iterator();
+                }
+                while (emitted != requested) {
+                    if (mCancelled) {
+                        finish();
+                        return;
+                    }
+                    if (!mRows.hasNext()) {
+                        finish();
+                        mSubscriber.onComplete();
+                        return;
+                    }
+                    mSubscriber.onNext(mRows.next());
+                    emitted++;
+                }
+            } catch (SQLException e) {
+                finish();
+                mSubscriber.onError(e);
+                return;
+            } catch (UncheckedSQLException e) {
+                finish();
+                mSubscriber.onError(e.getCause());
+                return;
+            } catch (RuntimeException | Error e) {
+                finish();
+                throw e;
+            }
+
+            if (emitted != 0 && requested != Long.MAX_VALUE) {
+                mRequested.addAndGet(-emitted);
+            }
+        }
+
+        private void finish() {
+            mDone = true;
+            mRows = null;
+            if (mStream != null) {
+                try {
+                    mStream.close();
+                } catch (UncheckedSQLException e) {
+                    LOG.debug("failed to close the query", e);
+                }
+                mStream = null;
+            }
+        }
+    }
+}
@@ -1,8 +1,22 @@
 package jp.gr.java_conf.falius.mysqlfacade;
 
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.sql.Date;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+
+import org.reactivestreams.Publisher;
 
 /**
  *
@@ -96,8 +110,16 @@ import java.util.Map;
  */
 public interface SQLDatabase extends AutoCloseable {
 
+    /**
+     * {@link #insertAll(Class, Collection)}で一度に送信する行数の既定値
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
     /**
      * SQLのSelect文を実行します。
+     * <p>
+     * 返されたResultSetをクローズすると、問い合わせに使用したEntryも解放されます。
+     *     try-with-resources文で使用してください。
      * @param table static変数tableNameにテーブル名を保持しているクラス
      * @param columns 選択するカラム
      * @param whereClause 条件節
@@ -106,12 +128,27 @@ public interface SQLDatabase extends AutoCloseable {
     <T extends DatabaseColumn> ResultSet select(
             Class<?> table, T[] columns, String whereClause, Object... whereArgs) throws SQLException;
 
+    /**
+     * 条件節に埋め込む値をParamsで渡してSelect文を実行します。
+     * @param whereArgs 条件節の?に埋め込む値
+     * @see #select(Class, DatabaseColumn[], String, Object...)
+     */
+    <T extends DatabaseColumn> ResultSet select(
+            Class<?> table, T[] columns, String whereClause, Params whereArgs) throws SQLException;
+
     /**
      * 条件に合致した行のすべての列を取得します。
      * @throws SQLException
      */
     ResultSet selectAllColumns(Class<?> table, String whereClause, Object... whereArgs) throws SQLException;
 
+    /**
+     * 条件に合致した行のすべての列を取得します。
+     * @param whereArgs 条件節の?に埋め込む値
+     * @throws SQLException
+     */
+    ResultSet selectAllColumns(Class<?> table, String whereClause, Params whereArgs) throws SQLException;
+
     /**
      * whereColumnの値がwhereArgである行のすべての列を取得します。
      * @throws SQLException
@@ -127,7 +164,7 @@ public interface SQLDatabase extends AutoCloseable {
     /**
      * 条件に合致した行を更新します。
      * @param table static変数tableNameにテーブル名を保持しているクラス
-     * @param values 更新列からその新しい値へのマップ。値がString型であれば''(シングルくオーテーション)で囲み、そうでなければtoString()の戻り値がそのままSQL文に埋め込まれます。
+     * @param values 更新列からその新しい値へのマップ。値はプレイスホルダーを通して、その型に応じてセットされます。
      * @param whereClause 条件節
      * @param whereArgs 条件節に?が含まれていれば、埋め込む値
      * @throws SQLException
@@ -135,6 +172,14 @@ public interface SQLDatabase extends AutoCloseable {
     int update(Class<?> table, Map<? extends DatabaseColumn, ?> values, String whereClause, Object... whereArgs)
             throws SQLException;
 
+    /**
+     * 条件に合致した行を更新します。
+     * @param whereArgs 条件節の?に埋め込む値
+     * @throws SQLException
+     */
+    int update(Class<?> table, Map<? extends DatabaseColumn, ?> values, String whereClause, Params whereArgs)
+            throws SQLException;
+
     /**
      *
      * @param table
@@ -147,6 +192,158 @@ public interface SQLDatabase extends AutoCloseable {
     int update(Class<?> table, Map<? extends DatabaseColumn, ?> values, DatabaseColumn whereColumn, Object whereArg)
             throws SQLException;
 
+    /**
+     * SQLのSelect文を実行し、結果を一行ずつ読み出すStreamを返します。
+     * <p>
+     * 結果はサーバーから一行ずつ受け取るため、結果の行数にかかわらずメモリ使用量は一定です。<br>
+     * Streamを最後まで読み終えるかクローズした時点で問い合わせに使用したEntryは解放されます。
+     *     途中で読むのをやめる場合に備えて、try-with-resources文で使用してください。<br>
+     * Streamが解放されるまで、同じ接続では他の問い合わせを実行できません。<br>
+     * 読み出し中に発生したSQLExceptionは{@link UncheckedSQLException}にラップして投げられます。
+     * @param table static変数tableNameにテーブル名を保持しているクラス
+     * @param columns 選択するカラム
+     * @param whereClause 条件節
+     * @param whereArgs 条件節に?が含まれていれば、埋め込む値
+     * @throws SQLException
+     */
+    <T extends DatabaseColumn> Stream<Row> stream(
+            Class<?> table, T[] columns, String whereClause, Object... whereArgs) throws SQLException;
+
+    /**
+     * 条件に合致した行のすべての列を一行ずつ読み出し、mapperで変換するStreamを返します。
+     * @param mapper 各行を変換するRowMapper
+     * @throws SQLException
+     * @see #stream(Class, DatabaseColumn[], String, Object...)
+     */
+    <R> Stream<R> stream(Class<?> table, RowMapper<R> mapper, String whereClause, Object... whereArgs)
+            throws SQLException;
+
+    /**
+     * 条件に合致した行のすべての列を取得し、各行をmapperで変換したリストを返します。
+     * @param mapper 各行を変換するRowMapper
+     * @throws SQLException
+     */
+    <R> List<R> selectList(Class<?> table, RowMapper<R> mapper, String whereClause, Object... whereArgs)
+            throws SQLException;
+
+    /**
+     * 条件に合致した行のすべての列を取得し、各行をテーブルの列挙型をキーとするEnumMapに変換したリストを返します。
+     * <p>
+     * 値は{@link DatabaseColumn#type()}に応じた型で読み出されます。例えばintの列はInteger、datetimeの列はTimestampです。
+     * @param table DatabaseColumnを実装した列挙型のクラス
+     * @throws SQLException
+     * @see EnumRowMapper
+     */
+    <T extends Enum<T> & DatabaseColumn> List<EnumMap<T, Object>> selectMaps(
+            Class<T> table, String whereClause, Object... whereArgs) throws SQLException;
+
+    /**
+     * 条件に合致した行のすべての列を一行ずつ読み出すStreamを返します。
+     * @throws SQLException
+     * @see #stream(Class, DatabaseColumn[], String, Object...)
+     */
+    Stream<Row> streamAllColumns(Class<?> table, String whereClause, Object... whereArgs) throws SQLException;
+
+    /**
+     * すべての行のすべての列を一行ずつ読み出すStreamを返します。
+     * @throws SQLException
+     * @see #stream(Class, DatabaseColumn[], String, Object...)
+     */
+    Stream<Row> streamAll(Class<?> table) throws SQLException;
+
+    /**
+     * キーの列の昇順に、テーブルの行をpageSize行ずつ読み出すイテレータを返します。
+     * <p>
+     * 各ページは前のページの最後のキーを起点に問い合わせるため、ページの位置によらず一定の負荷で読み出せます。
+     *     キーの列は一意で、NULLを含まない必要があります。
+     * @param table static変数tableNameにテーブル名を保持しているクラス
+     * @param keyColumn キーの列
+     * @param pageSize 一ページの行数
+     * @throws IllegalArgumentException pageSizeが正でない場合
+     * @see PageIterator
+     */
+    default PageIterator paginate(Class<?> table, DatabaseColumn keyColumn, int pageSize) {
+        return paginate(table, keyColumn, pageSize, null);
+    }
+
+    /**
+     * キーの列の昇順に、テーブルの行をpageSize行ずつ読み出すイテレータを返します。
+     * <p>
+     * prefetchExecutorを渡すと、ページを返すたびに次のページをprefetchExecutorで先読みします。
+     *     先読みは呼び出し元の処理と並行して行われるため、スレッドセーフな実装でのみ使用してください。
+     * @param prefetchExecutor 次のページを先読みするExecutor。nullなら先読みしない
+     * @throws IllegalArgumentException pageSizeが正でない場合
+     * @see #paginate(Class, DatabaseColumn, int)
+     */
+    PageIterator paginate(Class<?> table, DatabaseColumn keyColumn, int pageSize, Executor prefetchExecutor);
+
+    /**
+     * Select文の結果を、購読者の要求に応じて一行ずつ発行するPublisherを返します。
+     * <p>
+     * 問い合わせは購読ごとに、最初の要求を受けた時点で{@link #stream(Class, DatabaseColumn[], String, Object...)}により実行され、
+     *     ResultSetからは要求された行数だけが読み出されます。<br>
+     * 行はrequestを呼び出したスレッドで発行されます。すべての行を発行し終えるか、購読が取り消されるか、
+     *     エラーが発生するとEntryはクローズされます。エラーはSQLExceptionとしてonErrorに渡されます。<br>
+     * Java 9以降のFlow.Publisherが必要な場合はorg.reactivestreams.FlowAdaptersで変換してください。
+     * @param table static変数tableNameにテーブル名を保持しているクラス
+     * @param columns 選択するカラム
+     * @param whereClause 条件節
+     * @param whereArgs 条件節に?が含まれていれば、埋め込む値
+     */
+    default <T extends DatabaseColumn> Publisher<Row> publish(Class<?> table, T[] columns, String whereClause,
+            Object... whereArgs) {
+        return new RowPublisher(() -> stream(table, columns, whereClause, whereArgs));
+    }
+
+    /**
+     * 条件に合致した行のすべての列を発行するPublisherを返します。
+     * @see #publish(Class, DatabaseColumn[], String, Object...)
+     */
+    default Publisher<Row> publishAllColumns(Class<?> table, String whereClause, Object... whereArgs) {
+        return new RowPublisher(() -> streamAllColumns(table, whereClause, whereArgs));
+    }
+
+    /**
+     * すべての行のすべての列を発行するPublisherを返します。
+     * @see #publish(Class, DatabaseColumn[], String, Object...)
+     */
+    default Publisher<Row> publishAll(Class<?> table) {
+        return new RowPublisher(() -> streamAll(table));
+    }
+
+    /**
+     * columnの値がkeysのいずれかである行のすべての列を取得します。
+     * <p>
+     * キーの数に応じてプレイスホルダーの数を2の累乗に揃えたIN句で問い合わせるため、
+     *     キーの数が変わってもSQL文の種類は限られます。
+     *     キーが非常に多い場合は、一時テーブルに読み込んで結合します。
+     * @param keys 絞り込むキー。重複は取り除かれる
+     * @throws SQLException
+     */
+    ResultSet selectIn(Class<?> table, DatabaseColumn column, Collection<?> keys) throws SQLException;
+
+    /**
+     * columnの値がkeysのいずれかである行を更新します。
+     * <p>
+     * キーは一定数ごとにIN句にまとめて更新し、キーが非常に多い場合は一時テーブルに読み込んで結合します。
+     * @param values 更新列からその新しい値へのマップ
+     * @param keys 絞り込むキー。重複は取り除かれる
+     * @return 更新した行数
+     * @throws SQLException
+     */
+    int updateIn(Class<?> table, Map<? extends DatabaseColumn, ?> values, DatabaseColumn column, Collection<?> keys)
+            throws SQLException;
+
+    /**
+     * columnの値がkeysのいずれかである行を削除します。
+     * <p>
+     * キーは一定数ごとにIN句にまとめて削除し、キーが非常に多い場合は一時テーブルに読み込んで結合します。
+     * @param keys 絞り込むキー。重複は取り除かれる
+     * @return 削除した行数
+     * @throws SQLException
+     */
+    int deleteIn(Class<?> table, DatabaseColumn column, Collection<?> keys) throws SQLException;
+
     /**
      * 新しいレコードを作成します。
      * @param values カラムからその値へのマップ
@@ -155,12 +352,112 @@ public interface SQLDatabase extends AutoCloseable {
      */
     long insert(Class<?> table, Map<? extends DatabaseColumn, ?> values) throws SQLException;
 
+    /**
+     * 複数のレコードを、{@link #DEFAULT_BATCH_SIZE}行ずつまとめて作成します。
+     * @see #insertAll(Class, Collection, int)
+     */
+    long[] insertAll(Class<?> table, Collection<? extends Map<? extends DatabaseColumn, ?>> rows)
+            throws SQLException;
+
+    /**
+     * 複数のレコードを、batchSize行ずつバッチにまとめて作成します。
+     * <p>
+     * すべての行は同じカラムの組を持っている必要があります。<br>
+     * ドライバのプロパティrewriteBatchedStatementsをtrueにすると、各バッチが一つの複数行INSERT文として送信されます。
+     * @param rows カラムからその値へのマップのコレクション
+     * @param batchSize 一度に送信する行数
+     * @return 挿入した行のIDを挿入した順に格納した配列。IDが生成されなかった行は含まれない
+     * @throws SQLException
+     * @throws IllegalArgumentException 行によってカラムの組が異なる場合、batchSizeが0以下の場合
+     */
+    long[] insertAll(Class<?> table, Collection<? extends Map<? extends DatabaseColumn, ?>> rows, int batchSize)
+            throws SQLException;
+
+    /**
+     * 新しいレコードを作成し、主キーまたはユニークキーが重複する場合は既存のレコードを更新します。
+     * <p>
+     * INSERT ... ON DUPLICATE KEY UPDATE文を一度だけ送信するため、存在を確認してから挿入または更新する場合と異なり、
+     *     並行して同じキーを書き込んでも競合しません。
+     * @param values カラムからその値へのマップ
+     * @param updateColumns キーが重複した場合に、valuesの値で更新するカラム。省略するとvaluesのすべてのカラムを更新する
+     * @return 影響を受けた行数と、挿入した行のID
+     * @throws SQLException
+     * @throws IllegalArgumentException updateColumnsにvaluesに含まれないカラムがある場合
+     */
+    UpsertResult upsert(Class<?> table, Map<? extends DatabaseColumn, ?> values, DatabaseColumn... updateColumns)
+            throws SQLException;
+
+    /**
+     * 複数のレコードを、{@link #DEFAULT_BATCH_SIZE}行ずつまとめて挿入または更新します。
+     * @see #upsertAll(Class, Collection, int, DatabaseColumn...)
+     */
+    UpsertResult upsertAll(Class<?> table, Collection<? extends Map<? extends DatabaseColumn, ?>> rows,
+            DatabaseColumn... updateColumns) throws SQLException;
+
+    /**
+     * 複数のレコードを、batchSize行ずつバッチにまとめて挿入または更新します。
+     * <p>
+     * すべての行は同じカラムの組を持っている必要があります。<br>
+     * ドライバのプロパティrewriteBatchedStatementsをtrueにすると、各バッチが一つの複数行の文として送信されます。
+     *     この場合、ドライバは行数を返さないことがあります。
+     * @param rows カラムからその値へのマップのコレクション
+     * @param batchSize 一度に送信する行数
+     * @param updateColumns キーが重複した場合に、各行の値で更新するカラム。省略すると行のすべてのカラムを更新する
+     * @return 影響を受けた行数と、挿入した行のID
+     * @throws SQLException
+     * @throws IllegalArgumentException 行によってカラムの組が異なる場合、updateColumnsに行に含まれないカラムがある場合、
+     *     batchSizeが0以下の場合
+     * @see #upsert(Class, Map, DatabaseColumn...)
+     */
+    UpsertResult upsertAll(Class<?> table, Collection<? extends Map<? extends DatabaseColumn, ?>> rows, int batchSize,
+            DatabaseColumn... updateColumns) throws SQLException;
+
+    /**
+     * LOAD DATA LOCAL INFILEを使用して、大量の行を高速に読み込みます。
+     * <p>
+     * 行はタブ区切りの形式に一行ずつ変換しながらドライバに渡されるため、一時ファイルを作成せず、
+     *     データ全体をメモリに保持することもありません。<br>
+     * 読み込む列は、最初の行に含まれる列を列挙型の定数の順に並べたものです。
+     *     以降の行に含まれない列やnullの値はNULLとして読み込まれます。<br>
+     * サーバーのlocal_infileとドライバのallowLoadLocalInfileが有効である必要があります。
+     *     ドライバのStatementは、データをストリームで受け取るsetLocalInfileInputStreamメソッドを持つ必要があります。
+     * @param table DatabaseColumnを実装した列挙型のクラス
+     * @param rows カラムからその値へのマップを返すイテレータ
+     * @return 読み込んだ行数
+     * @throws SQLException
+     * @throws java.sql.SQLFeatureNotSupportedException ドライバがストリームからの読み込みに対応していない場合
+     * @throws IllegalArgumentException tableがDatabaseColumnを実装した列挙型でない場合。
+     *     または値にNaNや無限大が含まれる場合。その場合、それより前の行は読み込まれている
+     */
+    int bulkLoad(Class<?> table, Iterator<? extends Map<? extends DatabaseColumn, ?>> rows) throws SQLException;
+
+    /**
+     * LOAD DATA LOCAL INFILEを使用して、タブ区切りのデータを読み込みます。
+     * <p>
+     * データは列挙型の定数の順にすべての列を含み、LOAD DATA文の既定の書式に従ってUTF-8で符号化されている必要があります。
+     * @param table DatabaseColumnを実装した列挙型のクラス
+     * @param tsv 読み込むデータ。クローズはされない
+     * @return 読み込んだ行数
+     * @throws SQLException
+     * @throws java.sql.SQLFeatureNotSupportedException ドライバがストリームからの読み込みに対応していない場合
+     * @throws IllegalArgumentException tableがDatabaseColumnを実装した列挙型でない場合
+     * @see #bulkLoad(Class, Iterator)
+     */
+    int bulkLoad(Class<?> table, InputStream tsv) throws SQLException;
+
     /**
      * 条件に合致したレコードを削除します。
      * @throws SQLException
      */
     int delete(Class<?> table, String whereClause, Object... whereArgs) throws SQLException;
 
+    /**
+     * 条件に合致したレコードを削除します。
+     * @param whereArgs 条件節の?に埋め込む値
+     * @throws SQLException
+     */
+    int delete(Class<?> table, String whereClause, Params whereArgs) throws SQLException;
+
     /**
      * whereColumnの値がwhereArgである行をすべて削除します。
      * @throws SQLException
@@ -192,7 +489,9 @@ public interface SQLDatabase extends AutoCloseable {
     boolean isExistTable(Class<?> table) throws SQLException;
 
     /**
-     *
+     * 条件に合うレコードが存在するかどうかを調べます。
+     * <p>
+     * 一行目が見つかった時点で問い合わせを終えるため、条件に合う行が多くても一行分しか転送しません。
      * @param table
      * @param whereClause
      * @param whereArgs
@@ -211,6 +510,39 @@ public interface SQLDatabase extends AutoCloseable {
      */
     boolean isExistRecord(Class<?> table, DatabaseColumn whereColumn, Object whereArg) throws SQLException;
 
+    /**
+     * keysのうち、columnの値として存在するものを返します。
+     * <p>
+     * キーは{@link #selectIn(Class, DatabaseColumn, Collection)}と同様に一定数ごとにIN句にまとめて問い合わせるため、
+     *     キーごとに{@link #isExistRecord(Class, DatabaseColumn, Object)}を呼び出すよりも問い合わせの回数が少なく済みます。<br>
+     * キーと列の値の比較はデータベースで行われ、列の照合順序や型の変換に従います。
+     *     例えば大文字と小文字を区別しない照合順序の列では"ABC"も"abc"の行に一致し、
+     *     日時の列では文字列やDateで渡したキーも日時として比較されます。NaNや無限大のキーは存在しないものとして扱います。
+     * @param keys 調べるキー。重複は取り除かれる
+     * @return keysの要素のうち、存在するもの。keysでの順序を保つ
+     * @throws SQLException
+     */
+    Set<Object> existing(Class<?> table, DatabaseColumn column, Collection<?> keys) throws SQLException;
+
+    /**
+     * 渡された処理を一つのトランザクションとして実行します。
+     * <p>
+     * 処理の間は自動コミットを無効にし、処理を終えた時点で一度だけコミットします。
+     *     処理が例外を投げた場合はロールバックし、例外をそのまま投げます。<br>
+     * 処理の中では渡されたSQLDatabaseを使用し、外部に持ち出さないでください。
+     *     処理の中でさらにこのメソッドを呼び出すと、内側の処理はセーブポイントで区切られ、
+     *     内側の処理が失敗した場合は内側の処理による変更だけが取り消されます。
+     *     自動コミットがすでに無効な接続で呼び出した場合も同様にセーブポイントで区切り、
+     *     呼び出し元のトランザクションはコミットもロールバックもしません。
+     * <p>
+     * デッドロックやロック待ちのタイムアウトで失敗した場合は、間隔を空けてトランザクション全体を一定の回数までやり直します。
+     *     処理は複数回実行されることがあるため、データベースの外に副作用を持たないようにしてください。
+     * @param work 実行する処理
+     * @return 処理の結果
+     * @throws SQLException 処理中にデータベースアクセスエラーが発生した場合、やり直しても成功しなかった場合
+     */
+    <R> R inTransaction(SQLFunction<? super SQLDatabase, ? extends R> work) throws SQLException;
+
     /**
      * SQL文の実行準備をします。
      * @throws SQLException
@@ -224,7 +556,7 @@ public interface SQLDatabase extends AutoCloseable {
     void close() throws SQLException;
 
     /**
-     * 内部に保持されているEntryオブジェクトすべてに終了処理を施し、Entryスタックを空にします。
+     * 内部に保持されている、クローズされていないEntryオブジェクトすべてに終了処理を施します。
      * @throws SQLException
      */
     void clear() throws SQLException;
@@ -312,12 +644,59 @@ public interface SQLDatabase extends AutoCloseable {
      */
     int count(Class<?> table, DatabaseColumn column, String whereClause, Object... whereArgs) throws SQLException;
 
+    /**
+     * 一つの列に対する複数の集約関数の値を、一度の問い合わせで求めます。
+     * <p>
+     * 値はlongやBigDecimalで取得できるため、intの範囲を超える合計も扱えます。
+     * @param table static変数tableNameにテーブル名を保持しているクラス
+     * @param column 集約する列
+     * @param whereClause 条件節
+     * @param whereArgs 条件節に?が含まれていれば、埋め込む値
+     * @param aggs 求める集約関数。重複は無視される
+     * @return 求めた関数の値
+     * @throws SQLException
+     * @throws IllegalArgumentException aggsが空の場合
+     */
+    AggregateResult aggregate(Class<?> table, DatabaseColumn column, String whereClause, Object[] whereArgs,
+            Agg... aggs) throws SQLException;
+
+    /**
+     * groupColumnの値ごとに、columnに集約関数を適用した値を一度の問い合わせで求めます。
+     * @param table static変数tableNameにテーブル名を保持しているクラス
+     * @param groupColumn グループ分けする列
+     * @param agg 求める集約関数
+     * @param column 集約する列
+     * @param whereClause 条件節
+     * @param whereArgs 条件節に?が含まれていれば、埋め込む値
+     * @return グループの値から関数の値へのマップ。グループの値の昇順に並ぶ
+     * @throws SQLException
+     */
+    Map<Object, BigDecimal> aggregateBy(Class<?> table, DatabaseColumn groupColumn, Agg agg, DatabaseColumn column,
+            String whereClause, Object... whereArgs) throws SQLException;
+
+    /**
+     * 日時の列の値を区間に切り捨て、区間ごとにcolumnに集約関数を適用した値を一度の問い合わせで求めます。
+     * @param table static変数tableNameにテーブル名を保持しているクラス
+     * @param timeColumn 日時の列
+     * @param bucket 区間の幅
+     * @param agg 求める集約関数
+     * @param column 集約する列
+     * @param whereClause 条件節
+     * @param whereArgs 条件節に?が含まれていれば、埋め込む値
+     * @return 区間の先頭の日時から関数の値へのマップ。日時の昇順に並び、該当する行のない区間は含まれない
+     * @throws SQLException
+     */
+    Map<Timestamp, BigDecimal> aggregateByTime(Class<?> table, DatabaseColumn timeColumn, TimeBucket bucket, Agg agg,
+            DatabaseColumn column, String whereClause, Object... whereArgs) throws SQLException;
+
     /**
      *
      * データベースへの各問い合わせを担当するクラスのインタフェース
+     * <p>
+     * try-with-resources文で使用し、不要になった時点でクローズしてください。
      *
      */
-    interface Entry {
+    interface Entry extends AutoCloseable {
 
         /**
          * SQL文の問い合わせを実行します
@@ -335,10 +714,25 @@ public interface SQLDatabase extends AutoCloseable {
 
         ResultSet getGeneratedKeys() throws SQLException;
 
+        /**
+         * 現在セットされているパラメータの組をバッチに加え、次の組のセットを最初のパラメータから始めます
+         * @return 自らのインスタンス
+         * @throws SQLException データベースアクセスエラーが発生した場合、またはクローズしたあとで実行された場合
+         */
+        Entry addBatch() throws SQLException;
+
+        /**
+         * バッチに加えたパラメータの組をまとめて実行します
+         * @return 各組の実行で更新された行数
+         * @throws SQLException バッチの実行に失敗した場合
+         */
+        int[] executeBatch() throws SQLException;
+
         /**
          * 終了処理を行います
          * @throws SQLException データベースアクセスエラーが発生した場合
          */
+        @Override
         void close() throws SQLException;
 
         /**
@@ -380,5 +774,68 @@ public interface SQLDatabase extends AutoCloseable {
          * @throws SQLException setした回数がパラメータマーカーに対応しない場合、データベースアクセスエラーが発生した場合、またはクローズしたあとで実行された場合
          */
         Entry setLong(long x) throws SQLException;
+
+        /**
+         * SQL文のクエスチョンマークに任意の値をセットします。値の型に応じたSQLの型に変換されます。
+         * @param x セットする値。nullならNULLをセットする
+         * @return 自らのインスタンス
+         * @throws SQLException setした回数がパラメータマーカーに対応しない場合、データベースアクセスエラーが発生した場合、またはクローズしたあとで実行された場合
+         */
+        Entry setObject(Object x) throws SQLException;
+
+        /**
+         * SQL文のクエスチョンマークにboolean値をセットします
+         * @param x セットするboolean値
+         * @return 自らのインスタンス
+         * @throws SQLException setした回数がパラメータマーカーに対応しない場合、データベースアクセスエラーが発生した場合、またはクローズしたあとで実行された場合
+         */
+        Entry setBoolean(boolean x) throws SQLException;
+
+        /**
+         * SQL文のクエスチョンマークにBigDecimal値をセットします
+         * @param x セットするBigDecimal値
+         * @return 自らのインスタンス
+         * @throws SQLException setした回数がパラメータマーカーに対応しない場合、データベースアクセスエラーが発生した場合、またはクローズしたあとで実行された場合
+         */
+        Entry setBigDecimal(BigDecimal x) throws SQLException;
+
+        /**
+         * SQL文のクエスチョンマークにバイト配列をセットします
+         * @param x セットするバイト配列
+         * @return 自らのインスタンス
+         * @throws SQLException setした回数がパラメータマーカーに対応しない場合、データベースアクセスエラーが発生した場合、またはクローズしたあとで実行された場合
+         */
+        Entry setBytes(byte[] x) throws SQLException;
+
+        /**
+         * SQL文のクエスチョンマークに日時をセットします
+         * @param x セットする日時
+         * @return 自らのインスタンス
+         * @throws SQLException setした回数がパラメータマーカーに対応しない場合、データベースアクセスエラーが発生した場合、またはクローズしたあとで実行された場合
+         */
+        Entry setTimestamp(Timestamp x) throws SQLException;
+
+        /**
+         * SQL文のクエスチョンマークに日付をセットします
+         * @param x セットする日付
+         * @return 自らのインスタンス
+         * @throws SQLException setした回数がパラメータマーカーに対応しない場合、データベースアクセスエラーが発生した場合、またはクローズしたあとで実行された場合
+         */
+        Entry setDate(Date x) throws SQLException;
+
+        /**
+         * SQL文のクエスチョンマークに時刻をセットします
+         * @param x セットする時刻
+         * @return 自らのインスタンス
+         * @throws SQLException setした回数がパラメータマーカーに対応しない場合、データベースアクセスエラーが発生した場合、またはクローズしたあとで実行された場合
+         */
+        Entry setTime(Time x) throws SQLException;
+
+        /**
+         * SQL文のクエスチョンマークにNULLをセットします
+         * @return 自らのインスタンス
+         * @throws SQLException setした回数がパラメータマーカーに対応しない場合、データベースアクセスエラーが発生した場合、またはクローズしたあとで実行された場合
+         */
+        Entry setNull() throws SQLException;
     }
 }
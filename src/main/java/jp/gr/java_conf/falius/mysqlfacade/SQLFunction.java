@@ -0,0 +1,19 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.sql.SQLException;
+
+/**
+ * SQLExceptionを投げることのできる、引数を一つ受け取って結果を返す関数です。
+ * @param <T> 引数の型
+ * @param <R> 戻り値の型
+ */
+@FunctionalInterface
+public interface SQLFunction<T, R> {
+
+    /**
+     * @param t 引数
+     * @return 関数の結果
+     * @throws SQLException データベースアクセスエラーが発生した場合
+     */
+    R apply(T t) throws SQLException;
+}
@@ -0,0 +1,17 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.sql.SQLException;
+
+/**
+ * SQLExceptionを投げることのできる、値を供給する関数です。
+ * @param <T> 供給する値の型
+ */
+@FunctionalInterface
+public interface SQLSupplier<T> {
+
+    /**
+     * @return 供給する値
+     * @throws SQLException データベースアクセスエラーが発生した場合
+     */
+    T get() throws SQLException;
+}
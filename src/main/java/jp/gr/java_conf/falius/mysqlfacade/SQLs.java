@@ -1,9 +1,34 @@
 package jp.gr.java_conf.falius.mysqlfacade;
 
 import java.sql.Timestamp;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class SQLs {
+    /**
+     * 大量のキーによる絞り込みで使用する一時テーブルの名前
+     */
+    public static final String KEY_TABLE = "mysqlfacade_keys";
+    /**
+     * 大量のキーによる絞り込みで使用する一時テーブルの列名
+     */
+    public static final String KEY_COLUMN = "mysqlfacade_key";
+    /**
+     * 大量のキーによる絞り込みで使用する一時テーブルの、キーの位置を表す列名
+     */
+    public static final String KEY_INDEX_COLUMN = "mysqlfacade_index";
+    /**
+     * 集約する際のグループの値を表す式の別名
+     */
+    public static final String GROUP_ALIAS = "mysqlfacade_group";
+
+    /**
+     * 保持するプレイスホルダー付きSQL文の最大数。超えた場合はすべて破棄する
+     */
+    private static final int TEMPLATE_CACHE_SIZE = 1024;
+    private static final ConcurrentMap<Template, String> TEMPLATES = new ConcurrentHashMap<Template, String>();
 
     private SQLs() {}
     /**
@@ -50,6 +75,51 @@ public class SQLs {
         return sql.toString();
     }
 
+    /**
+     * 一つの列に複数の集約関数を適用するSELECT文を作成します。
+     * @param whereClause 条件節。nullか空文字を渡すと条件なしになる。
+     */
+    public static String createAggregateSql(String table, String column, Agg[] aggs, String whereClause) {
+        // SELECT sum(col),min(col),count(col) FROM table
+        // SELECT sum(col),min(col),count(col) FROM table WHERE whereClause
+        String[] expressions = new String[aggs.length];
+        for (int i = 0; i < aggs.length; i++) {
+            expressions[i] = aggs[i].expression(column);
+        }
+        return createSelectSql(table, expressions, whereClause);
+    }
+
+    /**
+     * グループごとに集約関数の値を求め、グループの値の順に並べるSELECT文を作成します。
+     * 一つ目の列がグループの値、二つ目の列が集約関数の値となります。
+     * @param groupExpression グループの値を表す式
+     * @param whereClause 条件節。nullか空文字を渡すと条件なしになる。
+     */
+    public static String createGroupBySql(String table, String groupExpression, String aggExpression,
+            String whereClause) {
+        // SELECT expr AS mysqlfacade_group,agg FROM table WHERE whereClause GROUP BY mysqlfacade_group ORDER BY mysqlfacade_group
+        return createSelectSql(table, new String[] { groupExpression + " AS " + GROUP_ALIAS, aggExpression },
+                whereClause) + " GROUP BY " + GROUP_ALIAS + " ORDER BY " + GROUP_ALIAS;
+    }
+
+    /**
+     * キーの列の昇順に、前のページの最後のキーより大きい行を一ページ分選択するSELECT文を作成します。
+     * 最初のページでなければキー、行数の順にプレイスホルダーを持ちます。
+     * @param first 最初のページであればtrue。キーのプレイスホルダーを持たない
+     */
+    public static String createSeekSql(String table, String keyColumn, boolean first) {
+        // SELECT * FROM table ORDER BY key LIMIT ?
+        // SELECT * FROM table WHERE key > ? ORDER BY key LIMIT ?
+        return createSelectSql(table, new String[] { "*" }, first ? null : keyColumn + " > ?")
+                + " ORDER BY " + keyColumn + " LIMIT ?";
+    }
+
+    /**
+     * 値を直接埋め込んだUPDATE文を作成します。
+     * @deprecated 値ごとに異なるSQL文となり再利用できず、文字列のエスケープも行わないため、
+     *     {@link #createUpdateSql(String, DatabaseColumn[], String)}を使用してください。
+     */
+    @Deprecated
     public static String createUpdateSql(String table, Map<? extends DatabaseColumn, ?> values, String whereClause) {
         // UPDATE table SET key = Object, key = Object, key = Object
         // UPDATE table SET key = Object, key = Object, key = Object WHERE whereClause
@@ -81,6 +151,40 @@ public class SQLs {
         return sql.toString();
     }
 
+    /**
+     * 値をプレイスホルダーで表したUPDATE文を作成します。
+     * 作成したSQL文はテーブル、列、条件節の組ごとに保持され、同じ組に対しては同じ文字列を返します。
+     * @param whereClause 条件節。nullか空文字を渡すと条件なしになる。
+     */
+    public static String createUpdateSql(String table, DatabaseColumn[] columns, String whereClause) {
+        return template(Template.UPDATE, table, columns, null, whereClause);
+    }
+
+    private static String renderUpdateSql(String table, DatabaseColumn[] columns, String whereClause) {
+        // UPDATE table SET col1 = ?,col2 = ?,col3 = ?
+        // UPDATE table SET col1 = ?,col2 = ?,col3 = ? WHERE whereClause
+        StringBuilder sql = new StringBuilder("UPDATE ")
+            .append(table)
+            .append(" SET ");
+        for (int i = 0; i < columns.length; i++) {
+            if (i != 0) {
+                sql.append(",");
+            }
+            sql.append(columns[i].toString()).append(" = ?");
+        }
+
+        if (whereClause != null && whereClause.length() > 0) {
+            sql.append(" WHERE ").append(whereClause);
+        }
+        return sql.toString();
+    }
+
+    /**
+     * 値を直接埋め込んだINSERT文を作成します。
+     * @deprecated 値ごとに異なるSQL文となり再利用できず、文字列のエスケープも行わないため、
+     *     {@link #createInsertSql(String, DatabaseColumn[])}を使用してください。
+     */
+    @Deprecated
     public static String createInsertSql(String table, Map<? extends DatabaseColumn, ?> values) {
         // INSERT INTO table (col1,col2,col3) VALUES (val1,val2,val3)
         StringBuilder sql = new StringBuilder("INSERT INTO ")
@@ -110,6 +214,59 @@ public class SQLs {
         return sql.toString();
     }
 
+    /**
+     * 値をプレイスホルダーで表したINSERT文を作成します。
+     * 作成したSQL文はテーブルと列の組ごとに保持され、同じ組に対しては同じ文字列を返します。
+     */
+    public static String createInsertSql(String table, DatabaseColumn[] columns) {
+        return template(Template.INSERT, table, columns, null, null);
+    }
+
+    /**
+     * 値をプレイスホルダーで表し、キーが重複した場合は既存の行を更新するINSERT文を作成します。
+     * 作成したSQL文はテーブルと列の組ごとに保持され、同じ組に対しては同じ文字列を返します。
+     * @param updateColumns キーが重複した場合に、挿入しようとした値で更新する列。columnsに含まれている必要がある
+     */
+    public static String createUpsertSql(String table, DatabaseColumn[] columns, DatabaseColumn[] updateColumns) {
+        return template(Template.UPSERT, table, columns, updateColumns, null);
+    }
+
+    private static String renderUpsertSql(String table, DatabaseColumn[] columns, DatabaseColumn[] updateColumns) {
+        // INSERT INTO table (col1,col2,col3) VALUES (?,?,?) ON DUPLICATE KEY UPDATE col2=VALUES(col2),col3=VALUES(col3)
+        StringBuilder sql = new StringBuilder(renderInsertSql(table, columns))
+            .append(" ON DUPLICATE KEY UPDATE ");
+        for (int i = 0; i < updateColumns.length; i++) {
+            if (i != 0) {
+                sql.append(",");
+            }
+            String column = updateColumns[i].toString();
+            sql.append(column).append("=VALUES(").append(column).append(")");
+        }
+        return sql.toString();
+    }
+
+    private static String renderInsertSql(String table, DatabaseColumn[] columns) {
+        // INSERT INTO table (col1,col2,col3) VALUES (?,?,?)
+        StringBuilder sql = new StringBuilder("INSERT INTO ")
+            .append(table)
+            .append(" (");
+        for (int i = 0; i < columns.length; i++) {
+            if (i != 0) {
+                sql.append(",");
+            }
+            sql.append(columns[i].toString());
+        }
+        sql.append(") VALUES (");
+        for (int i = 0; i < columns.length; i++) {
+            if (i != 0) {
+                sql.append(",");
+            }
+            sql.append("?");
+        }
+        sql.append(")");
+        return sql.toString();
+    }
+
     public static String createDeleteSql(String table, String whereClause) {
         // DELETE FROM table WHERE
         // DELETE FROM table WHERE whereClause
@@ -123,6 +280,116 @@ public class SQLs {
         return sql.toString();
     }
 
+    /**
+     * クライアントから送信したタブ区切りのデータを読み込むLOAD DATA文を作成します。
+     * データはUTF-8で符号化されている必要があります。
+     */
+    public static String createLoadDataSql(String table, DatabaseColumn[] columns) {
+        // LOAD DATA LOCAL INFILE 'stream' INTO TABLE table CHARACTER SET utf8mb4 (col1,col2,col3)
+        StringBuilder sql = new StringBuilder("LOAD DATA LOCAL INFILE 'stream' INTO TABLE ")
+            .append(table)
+            .append(" CHARACTER SET utf8mb4 (");
+        for (int i = 0; i < columns.length; i++) {
+            if (i != 0) {
+                sql.append(",");
+            }
+            sql.append(columns[i].toString());
+        }
+        sql.append(")");
+        return sql.toString();
+    }
+
+    /**
+     * count個のプレイスホルダーを持つIN句を作成します。
+     */
+    public static String createInClause(String column, int count) {
+        // column IN (?,?,?)
+        StringBuilder sql = new StringBuilder(column.length() + 6 + count * 2)
+            .append(column)
+            .append(" IN (");
+        for (int i = 0; i < count; i++) {
+            if (i != 0) {
+                sql.append(",");
+            }
+            sql.append("?");
+        }
+        sql.append(")");
+        return sql.toString();
+    }
+
+    /**
+     * キーを格納する一時テーブルを作成するSQL文を作成します。
+     * @param type キーのデータ型
+     */
+    public static String createKeyTableSql(String type) {
+        // CREATE TEMPORARY TABLE mysqlfacade_keys (mysqlfacade_index int,mysqlfacade_key type)
+        return "CREATE TEMPORARY TABLE " + KEY_TABLE
+                + " (" + KEY_INDEX_COLUMN + " int," + KEY_COLUMN + " " + type + ")";
+    }
+
+    public static String createDropKeyTableSql() {
+        // DROP TEMPORARY TABLE IF EXISTS mysqlfacade_keys
+        return "DROP TEMPORARY TABLE IF EXISTS " + KEY_TABLE;
+    }
+
+    public static String createInsertKeySql() {
+        // INSERT INTO mysqlfacade_keys (mysqlfacade_index,mysqlfacade_key) VALUES (?,?)
+        return "INSERT INTO " + KEY_TABLE + " (" + KEY_INDEX_COLUMN + "," + KEY_COLUMN + ") VALUES (?,?)";
+    }
+
+    /**
+     * キーごとに、等しい値が列に存在すれば1を返す式を並べたSELECT文を作成します。
+     * 比較はサーバーで行われるため、列の照合順序や型の変換に従います。
+     * プレイスホルダーには、式の分とIN句の分の2回キーをセットします。
+     */
+    public static String createExistingSql(String table, String column, int count) {
+        // SELECT MAX(column = ?),MAX(column = ?) FROM table WHERE column IN (?,?)
+        StringBuilder sql = new StringBuilder("SELECT ");
+        for (int i = 0; i < count; i++) {
+            if (i != 0) {
+                sql.append(",");
+            }
+            sql.append("MAX(").append(column).append(" = ?)");
+        }
+        return sql.append(" FROM ").append(table)
+            .append(" WHERE ").append(createInClause(column, count))
+            .toString();
+    }
+
+    /**
+     * キーを格納した一時テーブルのうち、列に等しい値が存在するキーの位置を返すSELECT文を作成します。
+     */
+    public static String createExistingKeysSql(String table, String column) {
+        // SELECT mysqlfacade_index FROM mysqlfacade_keys
+        //     WHERE EXISTS (SELECT 1 FROM table WHERE table.column = mysqlfacade_keys.mysqlfacade_key)
+        return new StringBuilder("SELECT ").append(KEY_INDEX_COLUMN)
+            .append(" FROM ").append(KEY_TABLE)
+            .append(" WHERE EXISTS (SELECT 1 FROM ").append(table)
+            .append(" WHERE ").append(table).append(".").append(column)
+            .append(" = ").append(KEY_TABLE).append(".").append(KEY_COLUMN).append(")")
+            .toString();
+    }
+
+    /**
+     * テーブルとキーを格納した一時テーブルを、指定した列で結合したテーブル参照を作成します。
+     */
+    public static String createKeyJoin(String table, String column) {
+        // table JOIN mysqlfacade_keys ON table.column = mysqlfacade_keys.mysqlfacade_key
+        return new StringBuilder(table)
+            .append(" JOIN ").append(KEY_TABLE)
+            .append(" ON ").append(table).append(".").append(column)
+            .append(" = ").append(KEY_TABLE).append(".").append(KEY_COLUMN)
+            .toString();
+    }
+
+    /**
+     * 結合したテーブル参照のうち、tableの行だけを削除するDELETE文を作成します。
+     */
+    public static String createJoinDeleteSql(String table, String tableReferences) {
+        // DELETE table FROM tableReferences
+        return "DELETE " + table + " FROM " + tableReferences;
+    }
+
     public static String createCreateTableSql(String table, DatabaseColumn[] columns) {
         // CREATE TABLE table {colStr1,colStr2,colStr3}
         StringBuilder sql = new StringBuilder("CREATE TABLE ").append(table)
@@ -138,6 +405,83 @@ public class SQLs {
         return sql.toString();
     }
 
+    private static String template(int kind, String table, DatabaseColumn[] columns,
+            DatabaseColumn[] updateColumns, String whereClause) {
+        Template key = new Template(kind, table, columns, updateColumns, whereClause);
+        String sql = TEMPLATES.get(key);
+        if (sql != null) {
+            return sql;
+        }
+
+        switch (kind) {
+        case Template.INSERT:
+            sql = renderInsertSql(table, columns);
+            break;
+        case Template.UPSERT:
+            sql = renderUpsertSql(table, columns, updateColumns);
+            break;
+        default:
+            sql = renderUpdateSql(table, columns, whereClause);
+        }
+        if (TEMPLATES.size() >= TEMPLATE_CACHE_SIZE) {
+            // 条件節に値を直接埋め込まれると組が際限なく増えるため、上限に達したら作り直す
+            TEMPLATES.clear();
+        }
+        // 呼び出し元が配列を書き換えても影響を受けないよう、複製してキーにする
+        TEMPLATES.putIfAbsent(new Template(kind, table, columns.clone(),
+                updateColumns == null ? null : updateColumns.clone(), whereClause), sql);
+        return sql;
+    }
+
+    /**
+     * プレイスホルダー付きSQL文を保持する際のキー
+     */
+    private static final class Template {
+        static final int INSERT = 0;
+        static final int UPDATE = 1;
+        static final int UPSERT = 2;
+
+        private final int mKind;
+        private final String mTable;
+        private final DatabaseColumn[] mColumns;
+        private final DatabaseColumn[] mUpdateColumns;
+        private final String mWhereClause;
+        private final int mHash;
+
+        Template(int kind, String table, DatabaseColumn[] columns, DatabaseColumn[] updateColumns,
+                String whereClause) {
+            mKind = kind;
+            mTable = table;
+            mColumns = columns;
+            mUpdateColumns = updateColumns;
+            mWhereClause = whereClause == null ? "" : whereClause;
+            mHash = (((kind * 31 + table.hashCode()) * 31 + Arrays.hashCode(columns)) * 31
+                    + Arrays.hashCode(updateColumns)) * 31 + mWhereClause.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Template)) {
+                return false;
+            }
+            Template other = (Template) obj;
+            return mHash == other.mHash
+                    && mKind == other.mKind
+                    && mTable.equals(other.mTable)
+                    && mWhereClause.equals(other.mWhereClause)
+                    && Arrays.equals(mColumns, other.mColumns)
+                    && Arrays.equals(mUpdateColumns, other.mUpdateColumns);
+        }
+    }
+
     public static String formatString(Timestamp timestamp, String format) {
         long millis = timestamp.getTime();
         return formatString(millis, format);
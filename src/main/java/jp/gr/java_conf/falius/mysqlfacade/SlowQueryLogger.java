@@ -0,0 +1,259 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 実行に一定の時間以上かかったSQL文を、セットした値と経過時間とともにログに出力する{@link QueryListener}です。
+ * <p>
+ * EXPLAINを実行するデータベースを渡すと、遅いSELECT文の実行計画もログに出力します。
+ *     EXPLAINは同じ形の文ごとにexplainIntervalMillisに一度までに制限され、バックグラウンドのスレッドで実行されます。
+ *     実行計画にフルスキャン(type=ALL)やファイルソート(Using filesort)、一時テーブル(Using temporary)が
+ *     含まれていれば、警告として目印を付けて出力します。<br>
+ * EXPLAINを実行するデータベースは、{@link PooledDatabase}などスレッドセーフな実装か、
+ *     EXPLAINのためだけに用意した{@link PreparedDatabase}である必要があります。
+ *     PreparedDatabaseはスレッドセーフではないため、このインスタンスをリスナーとして登録したものと同じインスタンスは
+ *     使えません。<br>
+ * 接続ごとの一時テーブルと結合する文(大量のキーを渡したselectInやexistingの文)は、
+ *     別の接続では一時テーブルが見えずEXPLAINが必ず失敗するため、EXPLAINを実行しません。
+ * <pre>
+ * SlowQueryLogger slowLog = new SlowQueryLogger(200, pooledDatabase);
+ * pooledDatabase.setQueryListener(slowLog);
+ * </pre>
+ * このクラスはスレッドセーフです。
+ */
+public class SlowQueryLogger implements QueryListener, AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(SlowQueryLogger.class);
+    private static final long DEFAULT_EXPLAIN_INTERVAL_MILLIS = 60000;
+    private static final int MAX_EXPLAINED_SHAPES = 1024;
+    private static final int MAX_PENDING_EXPLAINS = 16;
+    private static final int MAX_ARG_LENGTH = 64;
+
+    private final long mThresholdNanos;
+    private final SQLDatabase mExplainDatabase;
+    private final long mExplainIntervalNanos;
+    private final ThreadPoolExecutor mExplainExecutor;
+    private final ConcurrentMap<String, Long> mLastExplained = new ConcurrentHashMap<String, Long>();
+
+    private final LongAdder mSlowCount = new LongAdder();
+    private final LongAdder mExplainCount = new LongAdder();
+    private final LongAdder mFlaggedCount = new LongAdder();
+
+    /**
+     * EXPLAINを実行せず、遅いSQL文だけをログに出力するインスタンスを作成します。
+     * @param thresholdMillis この時間(ミリ秒)以上かかった実行をログに出力する
+     */
+    public SlowQueryLogger(long thresholdMillis) {
+        this(thresholdMillis, null);
+    }
+
+    /**
+     * 同じ形の文のEXPLAINを1分に一度まで実行するインスタンスを作成します。
+     * @param thresholdMillis この時間(ミリ秒)以上かかった実行をログに出力する
+     * @param explainDatabase EXPLAINを実行するデータベース。スレッドセーフであるか、EXPLAINのためだけに用意したものであること。
+     *     nullならEXPLAINを実行しない
+     */
+    public SlowQueryLogger(long thresholdMillis, SQLDatabase explainDatabase) {
+        this(thresholdMillis, explainDatabase, DEFAULT_EXPLAIN_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param thresholdMillis この時間(ミリ秒)以上かかった実行をログに出力する
+     * @param explainDatabase EXPLAINを実行するデータベース。スレッドセーフであるか、EXPLAINのためだけに用意したものであること。
+     *     nullならEXPLAINを実行しない
+     * @param explainIntervalMillis 同じ形の文のEXPLAINを再び実行するまでの最短の間隔(ミリ秒)
+     * @throws IllegalArgumentException thresholdMillisかexplainIntervalMillisが負の場合
+     */
+    public SlowQueryLogger(long thresholdMillis, SQLDatabase explainDatabase, long explainIntervalMillis) {
+        if (thresholdMillis < 0) {
+            throw new IllegalArgumentException("threshold must not be negative : " + thresholdMillis);
+        }
+        if (explainIntervalMillis < 0) {
+            throw new IllegalArgumentException("explain interval must not be negative : " + explainIntervalMillis);
+        }
+        mThresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        mExplainDatabase = explainDatabase;
+        mExplainIntervalNanos = TimeUnit.MILLISECONDS.toNanos(explainIntervalMillis);
+        if (explainDatabase == null) {
+            mExplainExecutor = null;
+        } else {
+            // EXPLAINが滞っても実行元を待たせないよう、待ちきれない分は破棄する
+            mExplainExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(MAX_PENDING_EXPLAINS), r -> {
+                        Thread thread = new Thread(r, "mysqlfacade-explain");
+                        thread.setDaemon(true);
+                        return thread;
+                    }, new ThreadPoolExecutor.DiscardPolicy());
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterExecute(QueryEvent event) {
+        if (event.elapsedNanos() < mThresholdNanos) {
+            return;
+        }
+        mSlowCount.increment();
+        Object[] args = event.args();
+        LOG.warn("slow {} ({} ms) : {} args={}", event.kind().name().toLowerCase(Locale.ROOT),
+                String.format("%.1f", event.elapsedMillis()), event.sql(), formatArgs(args));
+
+        if (mExplainExecutor != null && event.kind() == QueryEvent.Kind.QUERY && isSelect(event.sql())
+                && !event.sql().contains(SQLs.KEY_TABLE) && shouldExplain(event.sql())) {
+            mExplainExecutor.execute(() -> explain(event.sql(), args));
+        }
+    }
+
+    /**
+     * @return databaseを、CachingDatabaseを介したものも含めてEXPLAINの実行に使う場合はtrue
+     */
+    boolean explainsOn(PreparedDatabase database) {
+        SQLDatabase explainDatabase = mExplainDatabase;
+        while (explainDatabase instanceof CachingDatabase) {
+            explainDatabase = ((CachingDatabase) explainDatabase).database();
+        }
+        return explainDatabase == database;
+    }
+
+    /**
+     * 先頭の空白と括弧を読み飛ばし、SELECTかWITHで始まる文であればtrueを返します。
+     */
+    static boolean isSelect(String sql) {
+        int i = 0;
+        while (i < sql.length() && (Character.isWhitespace(sql.charAt(i)) || sql.charAt(i) == '(')) {
+            i++;
+        }
+        return sql.regionMatches(true, i, "SELECT", 0, "SELECT".length())
+                || sql.regionMatches(true, i, "WITH", 0, "WITH".length());
+    }
+
+    /**
+     * 前回のEXPLAINから一定の間隔が経過していれば、今回の時刻を記録してtrueを返します。
+     */
+    private boolean shouldExplain(String sql) {
+        long now = System.nanoTime();
+        Long last = mLastExplained.get(sql);
+        if (last != null) {
+            return now - last >= mExplainIntervalNanos && mLastExplained.replace(sql, last, now);
+        }
+        if (mLastExplained.size() >= MAX_EXPLAINED_SHAPES) {
+            // 条件節に値を直接埋め込まれると形が際限なく増えるため、上限に達したら作り直す
+            mLastExplained.clear();
+        }
+        return mLastExplained.putIfAbsent(sql, now) == null;
+    }
+
+    private void explain(String sql, Object[] args) {
+        try (SQLDatabase.Entry entry = mExplainDatabase.execute("EXPLAIN " + sql)) {
+            for (Object arg : args) {
+                Binders.bind(entry, arg);
+            }
+            mExplainCount.increment();
+            try (ResultSet rs = entry.query()) {
+                while (rs.next()) {
+                    logPlan(sql, rs);
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            LOG.debug("failed to explain : {}", sql, e);
+        }
+    }
+
+    private void logPlan(String sql, ResultSet rs) throws SQLException {
+        String type = rs.getString("type");
+        String extra = rs.getString("Extra");
+        List<String> flags = new ArrayList<String>();
+        if ("ALL".equalsIgnoreCase(type)) {
+            flags.add("FULL SCAN");
+        }
+        if (extra != null && extra.contains("Using filesort")) {
+            flags.add("FILESORT");
+        }
+        if (extra != null && extra.contains("Using temporary")) {
+            flags.add("TEMPORARY");
+        }
+
+        String plan = String.format("table=%s type=%s key=%s rows=%s extra=%s", rs.getString("table"), type,
+                rs.getString("key"), rs.getString("rows"), extra);
+        if (flags.isEmpty()) {
+            LOG.info("explain {} : {}", sql, plan);
+        } else {
+            mFlaggedCount.increment();
+            LOG.warn("explain {} : {} {}", sql, plan, flags);
+        }
+    }
+
+    private static String formatArgs(Object[] args) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < args.length; i++) {
+            if (i != 0) {
+                sb.append(", ");
+            }
+            Object arg = args[i];
+            if (arg instanceof byte[]) {
+                sb.append("byte[").append(((byte[]) arg).length).append("]");
+                continue;
+            }
+            String str = String.valueOf(arg);
+            if (str.length() > MAX_ARG_LENGTH) {
+                sb.append(str, 0, MAX_ARG_LENGTH).append("...");
+            } else {
+                sb.append(str);
+            }
+        }
+        return sb.append("]").toString();
+    }
+
+    /**
+     * @return ログに出力した遅い実行の数
+     */
+    public long slowCount() {
+        return mSlowCount.sum();
+    }
+
+    /**
+     * @return 実行したEXPLAINの数
+     */
+    public long explainCount() {
+        return mExplainCount.sum();
+    }
+
+    /**
+     * @return フルスキャンやファイルソートなどの目印を付けた実行計画の行の数
+     */
+    public long flaggedCount() {
+        return mFlaggedCount.sum();
+    }
+
+    /**
+     * EXPLAINを実行するスレッドを止めます。実行待ちのEXPLAINは破棄されます。
+     * <p>
+     * EXPLAINを実行するデータベースはクローズしません。
+     */
+    @Override
+    public void close() {
+        if (mExplainExecutor != null) {
+            mExplainExecutor.shutdownNow();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SlowQueryLogger[threshold=%dms, slow=%d, explained=%d, flagged=%d]",
+                TimeUnit.NANOSECONDS.toMillis(mThresholdNanos), slowCount(), explainCount(), flaggedCount());
+    }
+}
@@ -0,0 +1,139 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SQL文をキーとして準備済みのPreparedStatementを保持する、接続ごとのLRUキャッシュです。
+ * <p>
+ * 容量を超えた場合は最も長く使われていないPreparedStatementをクローズして破棄します。<br>
+ * 同じSQL文のPreparedStatementを再利用するため、同じSQL文を再度実行すると、
+ *     前回の実行で得たResultSetはJDBCの仕様によりクローズされます。
+ * <p>
+ * このクラスはスレッドセーフではありません。
+ */
+public final class StatementCache {
+    private final Connection mConnection;
+    private final int mCapacity;
+    private final Map<String, PreparedStatement> mStatements;
+    private long mHitCount = 0;
+    private long mMissCount = 0;
+    private long mEvictionCount = 0;
+
+    /**
+     * @param connection PreparedStatementを作成する接続
+     * @param capacity 保持するPreparedStatementの最大数
+     */
+    StatementCache(Connection connection, int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive : " + capacity);
+        }
+        mConnection = connection;
+        mCapacity = capacity;
+        mStatements = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true);
+    }
+
+    /**
+     * SQL文に対応するPreparedStatementを返します。
+     * キャッシュになければ新たに作成して保持します。
+     * 返されるPreparedStatementのパラメータとバッチはクリアされています。
+     * @throws SQLException PreparedStatementの作成に失敗した場合
+     */
+    PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement statement = mStatements.get(sql);
+        if (statement != null && !statement.isClosed()) {
+            mHitCount++;
+            statement.clearParameters();
+            // 前回の使用者が実行せずに残したバッチを破棄する
+            statement.clearBatch();
+            return statement;
+        }
+
+        mMissCount++;
+        statement = mConnection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+        mStatements.put(sql, statement);
+        if (mStatements.size() > mCapacity) {
+            evictEldest();
+        }
+        return statement;
+    }
+
+    private void evictEldest() throws SQLException {
+        Map.Entry<String, PreparedStatement> eldest = mStatements.entrySet().iterator().next();
+        mStatements.remove(eldest.getKey());
+        mEvictionCount++;
+        eldest.getValue().close();
+    }
+
+    /**
+     * 保持しているすべてのPreparedStatementをクローズし、キャッシュを空にします。
+     * カウンタはリセットされません。
+     * @throws SQLException データベースアクセスエラーが発生した場合
+     */
+    void clear() throws SQLException {
+        List<PreparedStatement> statements = new ArrayList<PreparedStatement>(mStatements.values());
+        mStatements.clear();
+        SQLException exception = null;
+        for (PreparedStatement statement : statements) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                if (exception == null) {
+                    exception = e;
+                } else {
+                    exception.addSuppressed(e);
+                }
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    /**
+     * @return 保持できるPreparedStatementの最大数
+     */
+    public int capacity() {
+        return mCapacity;
+    }
+
+    /**
+     * @return 現在保持しているPreparedStatementの数
+     */
+    public int size() {
+        return mStatements.size();
+    }
+
+    /**
+     * @return キャッシュに存在したPreparedStatementを再利用した回数
+     */
+    public long hitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * @return キャッシュに存在せず、PreparedStatementを新たに作成した回数
+     */
+    public long missCount() {
+        return mMissCount;
+    }
+
+    /**
+     * @return 容量超過によりPreparedStatementを破棄した回数
+     */
+    public long evictionCount() {
+        return mEvictionCount;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("StatementCache[size=%d, capacity=%d, hit=%d, miss=%d, eviction=%d]",
+                mStatements.size(), mCapacity, mHitCount, mMissCount, mEvictionCount);
+    }
+}
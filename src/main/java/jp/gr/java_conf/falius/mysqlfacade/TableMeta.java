@@ -0,0 +1,183 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * テーブルを表すクラスごとの情報を保持するクラスです。
+ * <p>
+ * テーブル名の取得にはリフレクションを使用するため、{@link #of(Class)}はクラスごとに一度だけ情報を求め、
+ *     以降は同じインスタンスを返します。<br>
+ * 列の情報と、テーブル名だけで決まるSQL文の断片もあらかじめ作成しておきます。
+ * <p>
+ * このクラスは不変であり、スレッドセーフです。
+ */
+final class TableMeta {
+    private static final ClassValue<TableMeta> REGISTRY = new ClassValue<TableMeta>() {
+
+        @Override
+        protected TableMeta computeValue(Class<?> table) {
+            return new TableMeta(table);
+        }
+    };
+
+    private final Class<?> mTable;
+    private final String mName;
+    private final DatabaseColumn[] mColumns;
+    private final Map<DatabaseColumn, Integer> mIndexes;
+    private final String mColumnList;
+    private final String mSelectAllSql;
+    private final String mExistsSql;
+    private final String mDeleteSql;
+    private final String mDropSql;
+    private final String mCreateTableSql;
+
+    private TableMeta(Class<?> table) {
+        mTable = table;
+        mName = resolveName(table);
+
+        Object[] constants = table.getEnumConstants();
+        if (constants != null && DatabaseColumn.class.isAssignableFrom(table)) {
+            mColumns = new DatabaseColumn[constants.length];
+            mIndexes = new HashMap<DatabaseColumn, Integer>();
+            StringBuilder columnList = new StringBuilder();
+            for (int i = 0; i < constants.length; i++) {
+                mColumns[i] = (DatabaseColumn) constants[i];
+                mIndexes.put(mColumns[i], i);
+                if (i != 0) {
+                    columnList.append(",");
+                }
+                columnList.append(mColumns[i].toString());
+            }
+            mColumnList = columnList.toString();
+            mCreateTableSql = SQLs.createCreateTableSql(mName, mColumns);
+        } else {
+            mColumns = null;
+            mIndexes = null;
+            mColumnList = null;
+            mCreateTableSql = null;
+        }
+
+        mSelectAllSql = SQLs.createSelectSql(mName, new String[] { "*" }, null);
+        mExistsSql = SQLs.createSelectSql(mName, new String[] { "1" }, null);
+        mDeleteSql = SQLs.createDeleteSql(mName, null);
+        mDropSql = "DROP TABLE " + mName;
+    }
+
+    /**
+     * @param table static変数tableNameにテーブル名を保持しているクラス
+     * @throws IllegalArgumentException tableがstaticなtableNameメソッドを持たない場合
+     */
+    static TableMeta of(Class<?> table) {
+        return REGISTRY.get(table);
+    }
+
+    private static String resolveName(Class<?> table) {
+        try {
+            Method method = table.getMethod(DatabaseColumn.TABLE_NAME_METHOD);
+            return (String) method.invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException
+                | NullPointerException e) {
+            throw new IllegalArgumentException("not found static tableName method\n"
+                    + "require public 'static' String " + DatabaseColumn.TABLE_NAME_METHOD + "() in "
+                    + table.getName());
+        }
+    }
+
+    /**
+     * @return テーブル名
+     */
+    String name() {
+        return mName;
+    }
+
+    /**
+     * @return テーブルを表すクラスがDatabaseColumnを実装した列挙型であればtrue
+     */
+    boolean hasColumns() {
+        return mColumns != null;
+    }
+
+    /**
+     * 列挙型の定数を宣言順に並べた配列を返します。配列は共有されているため、変更しないでください。
+     * @throws IllegalArgumentException テーブルを表すクラスがDatabaseColumnを実装した列挙型でない場合
+     */
+    DatabaseColumn[] columns() {
+        requireColumns();
+        return mColumns;
+    }
+
+    /**
+     * @return 列の宣言順での位置。テーブルの列でなければ-1
+     * @throws IllegalArgumentException テーブルを表すクラスがDatabaseColumnを実装した列挙型でない場合
+     */
+    int indexOf(DatabaseColumn column) {
+        requireColumns();
+        Integer index = mIndexes.get(column);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @return すべての列名を宣言順にカンマで区切った文字列
+     * @throws IllegalArgumentException テーブルを表すクラスがDatabaseColumnを実装した列挙型でない場合
+     */
+    String columnList() {
+        requireColumns();
+        return mColumnList;
+    }
+
+    /**
+     * @param whereClause 条件節。nullか空文字を渡すと条件なしになる。
+     * @return すべての列を選択するSELECT文
+     */
+    String selectAllSql(String whereClause) {
+        return appendWhere(mSelectAllSql, whereClause);
+    }
+
+    /**
+     * @param whereClause 条件節。nullか空文字を渡すと条件なしになる。
+     * @return 条件に合う行が存在すれば一行だけ1を返すSELECT文
+     */
+    String existsSql(String whereClause) {
+        return appendWhere(mExistsSql, whereClause) + " LIMIT 1";
+    }
+
+    /**
+     * @param whereClause 条件節。nullか空文字を渡すと条件なしになる。
+     * @return DELETE文
+     */
+    String deleteSql(String whereClause) {
+        return appendWhere(mDeleteSql, whereClause);
+    }
+
+    /**
+     * @return DROP TABLE文
+     */
+    String dropSql() {
+        return mDropSql;
+    }
+
+    /**
+     * @return CREATE TABLE文
+     * @throws IllegalArgumentException テーブルを表すクラスがDatabaseColumnを実装した列挙型でない場合
+     */
+    String createTableSql() {
+        requireColumns();
+        return mCreateTableSql;
+    }
+
+    private void requireColumns() {
+        if (mColumns == null) {
+            throw new IllegalArgumentException("require an enum implementing DatabaseColumn : " + mTable.getName());
+        }
+    }
+
+    private static String appendWhere(String sql, String whereClause) {
+        if (whereClause == null || whereClause.length() == 0) {
+            return sql;
+        }
+        return sql + " WHERE " + whereClause;
+    }
+}
@@ -0,0 +1,26 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+/**
+ * 日時の列を集約する際の区間の幅です。
+ *
+ * @see SQLDatabase#aggregateByTime(Class, DatabaseColumn, TimeBucket, Agg, DatabaseColumn, String, Object...)
+ */
+public enum TimeBucket {
+    MINUTE("%Y-%m-%d %H:%i:00"),
+    HOUR("%Y-%m-%d %H:00:00"),
+    DAY("%Y-%m-%d 00:00:00");
+
+    private final String mFormat;
+
+    private TimeBucket(String format) {
+        mFormat = format;
+    }
+
+    /**
+     * @return 列の値を区間の先頭の日時に切り捨てる式
+     */
+    String expression(String column) {
+        // TIMESTAMP(DATE_FORMAT(column, '%Y-%m-%d %H:00:00'))
+        return "TIMESTAMP(DATE_FORMAT(" + column + ", '" + mFormat + "'))";
+    }
+}
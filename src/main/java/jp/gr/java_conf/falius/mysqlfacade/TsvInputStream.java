@@ -0,0 +1,180 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * 行のイテレータを、LOAD DATA文の既定の書式(タブ区切り、改行で行を区切り、バックスラッシュでエスケープ)に
+ *     変換しながら読み出すInputStreamです。
+ * <p>
+ * 読み出しに応じて一行ずつ変換するため、データ全体をメモリに保持することはありません。<br>
+ * 値がnullであるか、行に列が含まれていない場合は\Nを出力します。文字列はUTF-8で出力します。<br>
+ * 浮動小数点数は指数表記を使わずに出力します。NaNや無限大は読み込めないため、その行の手前でデータを終え、
+ *     原因を{@link #error()}で返します。
+ */
+final class TsvInputStream extends InputStream {
+    static final Charset CHARSET = StandardCharsets.UTF_8;
+    private static final byte[] NULL_FIELD = { '\\', 'N' };
+
+    private final Iterator<? extends Map<? extends DatabaseColumn, ?>> mRows;
+    private final DatabaseColumn[] mColumns;
+    private byte[] mBuffer = new byte[256];
+    private int mLength = 0;
+    private int mPosition = 0;
+    private IllegalArgumentException mError = null;
+
+    /**
+     * @param rows 出力する行
+     * @param columns 出力する列とその順序
+     */
+    TsvInputStream(Iterator<? extends Map<? extends DatabaseColumn, ?>> rows, DatabaseColumn[] columns) {
+        mRows = rows;
+        mColumns = columns;
+    }
+
+    @Override
+    public int read() {
+        if (!fill()) {
+            return -1;
+        }
+        return mBuffer[mPosition++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        int read = 0;
+        while (read < len && fill()) {
+            int n = Math.min(len - read, mLength - mPosition);
+            System.arraycopy(mBuffer, mPosition, b, off + read, n);
+            mPosition += n;
+            read += n;
+        }
+        return read == 0 ? -1 : read;
+    }
+
+    /**
+     * バッファを読み切っていれば次の行を変換します。
+     * @return 読み出せるデータがあればtrue
+     */
+    private boolean fill() {
+        while (mPosition >= mLength) {
+            if (mError != null || !mRows.hasNext()) {
+                return false;
+            }
+            try {
+                encode(mRows.next());
+            } catch (IllegalArgumentException e) {
+                // 例外をドライバに投げると送信が途中で止まるため、行の区切りでデータを終える
+                mError = e;
+                mLength = 0;
+                mPosition = 0;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return 変換できない値があったためにデータを終えた場合はその原因。なければnull
+     */
+    IllegalArgumentException error() {
+        return mError;
+    }
+
+    private void encode(Map<? extends DatabaseColumn, ?> row) {
+        mLength = 0;
+        mPosition = 0;
+        for (int i = 0; i < mColumns.length; i++) {
+            if (i != 0) {
+                append((byte) '\t');
+            }
+            Object value = row.get(mColumns[i]);
+            if (value == null) {
+                append(NULL_FIELD, 0, NULL_FIELD.length);
+            } else {
+                appendEscaped(toBytes(value));
+            }
+        }
+        append((byte) '\n');
+    }
+
+    private static byte[] toBytes(Object value) {
+        if (value instanceof byte[]) {
+            return (byte[]) value;
+        }
+        if (value instanceof Boolean) {
+            return (Boolean) value ? new byte[] { '1' } : new byte[] { '0' };
+        }
+        if (value instanceof Double || value instanceof Float) {
+            double d = ((Number) value).doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                throw new IllegalArgumentException("cannot load a non-finite value : " + value);
+            }
+            // toString()は1.0E10のような指数表記になるため、floatも含めて表記どおりの桁で出力する
+            return new BigDecimal(value.toString()).toPlainString().getBytes(CHARSET);
+        }
+        if (value instanceof Date && !(value instanceof java.sql.Date) && !(value instanceof java.sql.Time)) {
+            value = value instanceof Timestamp ? value : new Timestamp(((Date) value).getTime());
+        }
+        return value.toString().getBytes(CHARSET);
+    }
+
+    /**
+     * UTF-8の複数バイト文字はASCIIの範囲のバイトを含まないため、バイト単位でエスケープできる
+     */
+    private void appendEscaped(byte[] bytes) {
+        for (byte b : bytes) {
+            switch (b) {
+            case '\\':
+                append((byte) '\\');
+                append((byte) '\\');
+                break;
+            case '\t':
+                append((byte) '\\');
+                append((byte) 't');
+                break;
+            case '\n':
+                append((byte) '\\');
+                append((byte) 'n');
+                break;
+            case '\r':
+                append((byte) '\\');
+                append((byte) 'r');
+                break;
+            case 0:
+                append((byte) '\\');
+                append((byte) '0');
+                break;
+            default:
+                append(b);
+            }
+        }
+    }
+
+    private void append(byte b) {
+        ensureCapacity(mLength + 1);
+        mBuffer[mLength++] = b;
+    }
+
+    private void append(byte[] bytes, int off, int len) {
+        ensureCapacity(mLength + len);
+        System.arraycopy(bytes, off, mBuffer, mLength, len);
+        mLength += len;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > mBuffer.length) {
+            mBuffer = Arrays.copyOf(mBuffer, Math.max(capacity, mBuffer.length * 2));
+        }
+    }
+}
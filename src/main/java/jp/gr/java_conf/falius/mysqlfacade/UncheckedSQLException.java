@@ -0,0 +1,33 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.sql.SQLException;
+
+/**
+ * StreamやIteratorなど、SQLExceptionを投げられない箇所でSQLExceptionをラップする非チェック例外です。
+ */
+public class UncheckedSQLException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * @param cause ラップするSQLException
+     */
+    public UncheckedSQLException(SQLException cause) {
+        super(cause);
+    }
+
+    /**
+     * @param message 詳細メッセージ
+     * @param cause ラップするSQLException
+     */
+    public UncheckedSQLException(String message, SQLException cause) {
+        super(message, cause);
+    }
+
+    /**
+     * @return ラップしているSQLException
+     */
+    @Override
+    public synchronized SQLException getCause() {
+        return (SQLException) super.getCause();
+    }
+}
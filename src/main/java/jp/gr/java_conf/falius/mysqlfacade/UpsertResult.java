@@ -0,0 +1,79 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.sql.Statement;
+import java.util.Arrays;
+
+/**
+ * {@link SQLDatabase#upsert(Class, java.util.Map, DatabaseColumn...)}などで、行を挿入または更新した結果です。
+ * <p>
+ * 影響を受けた行数はMySQLの数え方に従い、挿入した行は1、更新した行は2、値が変わらなかった行は0として合計されます。<br>
+ * このクラスは不変です。
+ */
+public final class UpsertResult {
+    private final int mAffectedRows;
+    private final long[] mKeys;
+
+    UpsertResult(int affectedRows, long[] keys) {
+        mAffectedRows = affectedRows;
+        mKeys = keys;
+    }
+
+    /**
+     * バッチの各文の結果から作成します。
+     * @param counts 各文の影響を受けた行数。ドライバが行数を返さなかった文を含んでいれば、行数は不明として扱う
+     */
+    static UpsertResult ofBatch(int[] counts, long[] keys) {
+        int affectedRows = 0;
+        for (int count : counts) {
+            if (count == Statement.SUCCESS_NO_INFO) {
+                return new UpsertResult(-1, keys);
+            }
+            affectedRows += count;
+        }
+        return new UpsertResult(affectedRows, keys);
+    }
+
+    /**
+     * @return 影響を受けた行数。ドライバが行数を返さなかった場合は-1
+     */
+    public int affectedRows() {
+        return mAffectedRows;
+    }
+
+    /**
+     * @return 新しく挿入した行のIDを挿入した順に格納した配列。IDが生成されなかった行は含まれない。
+     *     更新した行については、ドライバが報告したIDのみが含まれる
+     */
+    public long[] keys() {
+        return mKeys.clone();
+    }
+
+    /**
+     * @return 最初に挿入した行のID。なければ-1
+     */
+    public long key() {
+        return mKeys.length == 0 ? -1 : mKeys[0];
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof UpsertResult)) {
+            return false;
+        }
+        UpsertResult other = (UpsertResult) obj;
+        return mAffectedRows == other.mAffectedRows && Arrays.equals(mKeys, other.mKeys);
+    }
+
+    @Override
+    public int hashCode() {
+        return mAffectedRows * 31 + Arrays.hashCode(mKeys);
+    }
+
+    @Override
+    public String toString() {
+        return "UpsertResult[affectedRows=" + mAffectedRows + ", keys=" + Arrays.toString(mKeys) + "]";
+    }
+}
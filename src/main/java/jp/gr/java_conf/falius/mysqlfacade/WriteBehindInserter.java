@@ -0,0 +1,353 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 挿入する行をキューに受け付け、バックグラウンドのスレッドでまとめて挿入します。
+ * <p>
+ * 呼び出し元は{@link #offer(Map)}で行をキューに入れるだけで、挿入を待ちません。
+ *     キューにbatchSize行がたまるか、前回の書き込みからflushIntervalMillisが経過すると、
+ *     キューの行を{@link SQLDatabase#insertAll(Class, java.util.Collection, int)}で複数行ずつ挿入します。
+ *     カラムの組が異なる行は、組ごとに分けて挿入されます。<br>
+ * キューに入れられる行はcapacity行までで、満杯のときの扱いは{@link Overflow}で指定します。
+ * <p>
+ * 挿入に失敗した行はログに出力して破棄され、{@link #failedCount()}に数えられます。
+ *     生成されたIDを必要としない、監査ログなどの書き込みに使用してください。<br>
+ * {@link #close()}は、それまでに受け付けたすべての行を書き込んでから戻ります。
+ * <p>
+ * 書き込みはバックグラウンドのスレッドから行うため、渡すSQLDatabaseは{@link PooledDatabase}などスレッドセーフな実装である必要があります。<br>
+ * このクラスはスレッドセーフです。
+ */
+public final class WriteBehindInserter implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(WriteBehindInserter.class);
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+    /**
+     * キューが満杯のときに、{@link WriteBehindInserter#offer(Map)}がどう振る舞うかを表します。
+     */
+    public enum Overflow {
+        /**
+         * キューに空きができるまで待機する
+         */
+        BLOCK,
+        /**
+         * 行を破棄してfalseを返す
+         */
+        DROP,
+        /**
+         * 呼び出し元のスレッドでその行を挿入する
+         */
+        CALLER_RUNS,
+    }
+
+    private final SQLDatabase mDatabase;
+    private final Class<?> mTable;
+    private final int mCapacity;
+    private final int mBatchSize;
+    private final long mFlushIntervalNanos;
+    private final Overflow mOverflow;
+    private final Thread mFlusher;
+
+    private final Queue<Map<? extends DatabaseColumn, ?>> mQueue
+            = new ConcurrentLinkedQueue<Map<? extends DatabaseColumn, ?>>();
+    private final Semaphore mSlots;
+    private final AtomicInteger mDepth = new AtomicInteger();
+    private final AtomicInteger mOffering = new AtomicInteger();
+    private volatile boolean mClosed = false;
+
+    private final LongAdder mAcceptedCount = new LongAdder();
+    private final LongAdder mDroppedCount = new LongAdder();
+    private final LongAdder mCallerRunsCount = new LongAdder();
+    private final LongAdder mWrittenCount = new LongAdder();
+    private final LongAdder mFailedCount = new LongAdder();
+    private final LongAdder mFlushCount = new LongAdder();
+    private final LongAdder mFlushNanos = new LongAdder();
+    private final AtomicLong mMaxFlushNanos = new AtomicLong();
+
+    /**
+     * batchSizeを{@link SQLDatabase#DEFAULT_BATCH_SIZE}、書き込みの間隔を1秒とし、キューが満杯のときは待機するインスタンスを作成します。
+     * @param database 書き込み先のデータベース。スレッドセーフであること
+     * @param table static変数tableNameにテーブル名を保持しているクラス
+     * @param capacity キューに入れられる最大の行数
+     */
+    public WriteBehindInserter(SQLDatabase database, Class<?> table, int capacity) {
+        this(database, table, capacity, SQLDatabase.DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_INTERVAL_MILLIS, Overflow.BLOCK);
+    }
+
+    /**
+     * @param database 書き込み先のデータベース。スレッドセーフであること
+     * @param table static変数tableNameにテーブル名を保持しているクラス
+     * @param capacity キューに入れられる最大の行数
+     * @param batchSize キューにこの行数がたまると書き込む。一度に挿入する最大の行数でもある
+     * @param flushIntervalMillis 前回の書き込みからこの時間(ミリ秒)が経過すると、batchSizeに満たなくても書き込む
+     * @param overflow キューが満杯のときの扱い
+     * @throws IllegalArgumentException capacity、batchSize、flushIntervalMillisのいずれかが0以下の場合
+     */
+    public WriteBehindInserter(SQLDatabase database, Class<?> table, int capacity, int batchSize,
+            long flushIntervalMillis, Overflow overflow) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive : " + capacity);
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batch size must be positive : " + batchSize);
+        }
+        if (flushIntervalMillis <= 0) {
+            throw new IllegalArgumentException("flush interval must be positive : " + flushIntervalMillis);
+        }
+        mDatabase = database;
+        mTable = table;
+        mCapacity = capacity;
+        mBatchSize = batchSize;
+        mFlushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        mOverflow = overflow;
+        mSlots = new Semaphore(capacity);
+
+        mFlusher = new Thread(this::runFlusher, "mysqlfacade-write-behind-" + THREAD_NUMBER.incrementAndGet());
+        mFlusher.setDaemon(true);
+        mFlusher.start();
+    }
+
+    /**
+     * 挿入する行をキューに入れます。
+     * @param values カラムからその値へのマップ。キューに入れた後に変更しないこと
+     * @return 行を受け付けた場合、またはCALLER_RUNSで挿入した場合はtrue。
+     *     DROPで破棄した場合、BLOCKで待機中に割り込まれた場合はfalse
+     * @throws SQLException CALLER_RUNSで呼び出し元のスレッドで挿入し、失敗した場合
+     * @throws IllegalStateException クローズされている場合
+     */
+    public boolean offer(Map<? extends DatabaseColumn, ?> values) throws SQLException {
+        mOffering.incrementAndGet();
+        int depth;
+        try {
+            if (mClosed) {
+                throw new IllegalStateException("write-behind inserter is closed");
+            }
+            if (!mSlots.tryAcquire() && !acquireOnOverflow(values)) {
+                return mOverflow == Overflow.CALLER_RUNS;
+            }
+            // 書き込みスレッドが取り出して減らすより先に数えておくことで、負の値にならないようにする
+            depth = mDepth.incrementAndGet();
+            mQueue.offer(values);
+            mAcceptedCount.increment();
+        } finally {
+            if (mOffering.decrementAndGet() == 0 && mClosed) {
+                // クローズ後に受け付け中の行を待っている書き込みスレッドを起こす
+                LockSupport.unpark(mFlusher);
+            }
+        }
+        if (depth >= mBatchSize) {
+            LockSupport.unpark(mFlusher);
+        }
+        return true;
+    }
+
+    /**
+     * キューが満杯のときの扱いに従って処理します。
+     * @return キューの空きを確保できた場合はtrue
+     */
+    private boolean acquireOnOverflow(Map<? extends DatabaseColumn, ?> values) throws SQLException {
+        switch (mOverflow) {
+        case BLOCK:
+            try {
+                mSlots.acquire();
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                mDroppedCount.increment();
+                return false;
+            }
+        case CALLER_RUNS:
+            mCallerRunsCount.increment();
+            mDatabase.insert(mTable, values);
+            mWrittenCount.increment();
+            return false;
+        default:
+            mDroppedCount.increment();
+            return false;
+        }
+    }
+
+    private void runFlusher() {
+        long deadline = System.nanoTime() + mFlushIntervalNanos;
+        while (true) {
+            boolean closed = mClosed;
+            long now = System.nanoTime();
+            if (closed || mDepth.get() >= mBatchSize || now - deadline >= 0) {
+                flushQueued();
+                deadline = System.nanoTime() + mFlushIntervalNanos;
+                if (closed) {
+                    if (mOffering.get() == 0 && mQueue.isEmpty()) {
+                        return;
+                    }
+                    // 受け付け中の行がキューに入るまで待つ。最後に受け付けを終えたofferが起こす
+                    LockSupport.parkNanos(this, mFlushIntervalNanos);
+                }
+                continue;
+            }
+            LockSupport.parkNanos(this, deadline - now);
+        }
+    }
+
+    /**
+     * キューの行をすべて、batchSize行ずつ書き込みます。
+     */
+    private void flushQueued() {
+        List<Map<? extends DatabaseColumn, ?>> batch = new ArrayList<Map<? extends DatabaseColumn, ?>>(mBatchSize);
+        while (true) {
+            Map<? extends DatabaseColumn, ?> row;
+            while (batch.size() < mBatchSize && (row = mQueue.poll()) != null) {
+                batch.add(row);
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            mDepth.addAndGet(-batch.size());
+            try {
+                write(batch);
+            } finally {
+                mSlots.release(batch.size());
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<Map<? extends DatabaseColumn, ?>> batch) {
+        // insertAllはすべての行が同じカラムの組を持つことを要求するため、組ごとに分ける
+        Map<Set<? extends DatabaseColumn>, List<Map<? extends DatabaseColumn, ?>>> groups
+                = new LinkedHashMap<Set<? extends DatabaseColumn>, List<Map<? extends DatabaseColumn, ?>>>();
+        for (Map<? extends DatabaseColumn, ?> row : batch) {
+            groups.computeIfAbsent(row.keySet(), k -> new ArrayList<Map<? extends DatabaseColumn, ?>>()).add(row);
+        }
+
+        long start = System.nanoTime();
+        for (List<Map<? extends DatabaseColumn, ?>> rows : groups.values()) {
+            try {
+                mDatabase.insertAll(mTable, rows, mBatchSize);
+                mWrittenCount.add(rows.size());
+            } catch (SQLException | RuntimeException e) {
+                mFailedCount.add(rows.size());
+                LOG.error("failed to write {} rows behind : {}", rows.size(), mTable.getName(), e);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        mFlushCount.increment();
+        mFlushNanos.add(elapsed);
+        mMaxFlushNanos.accumulateAndGet(elapsed, Math::max);
+    }
+
+    /**
+     * 新しい行の受け付けを止め、キューに残っている行をすべて書き込んでから戻ります。
+     * <p>
+     * 書き込み先のSQLDatabaseはクローズしません。
+     */
+    @Override
+    public void close() {
+        mClosed = true;
+        LockSupport.unpark(mFlusher);
+        boolean interrupted = false;
+        while (mFlusher.isAlive()) {
+            try {
+                mFlusher.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return キューに入っている行の数
+     */
+    public int queueDepth() {
+        return mDepth.get();
+    }
+
+    /**
+     * @return キューに入れられる最大の行数
+     */
+    public int capacity() {
+        return mCapacity;
+    }
+
+    /**
+     * @return キューに受け付けた行の数
+     */
+    public long acceptedCount() {
+        return mAcceptedCount.sum();
+    }
+
+    /**
+     * @return キューが満杯で破棄した行の数
+     */
+    public long droppedCount() {
+        return mDroppedCount.sum();
+    }
+
+    /**
+     * @return キューが満杯で、呼び出し元のスレッドで挿入した行の数
+     */
+    public long callerRunsCount() {
+        return mCallerRunsCount.sum();
+    }
+
+    /**
+     * @return 挿入に成功した行の数
+     */
+    public long writtenCount() {
+        return mWrittenCount.sum();
+    }
+
+    /**
+     * @return バックグラウンドでの挿入に失敗して破棄した行の数
+     */
+    public long failedCount() {
+        return mFailedCount.sum();
+    }
+
+    /**
+     * @return バックグラウンドで書き込んだ回数
+     */
+    public long flushCount() {
+        return mFlushCount.sum();
+    }
+
+    /**
+     * @return 一回の書き込みにかかった時間の平均(ミリ秒)
+     */
+    public double averageFlushMillis() {
+        long count = mFlushCount.sum();
+        return count == 0 ? 0 : mFlushNanos.sum() / 1e6 / count;
+    }
+
+    /**
+     * @return 一回の書き込みにかかった時間の最大値(ミリ秒)
+     */
+    public double maxFlushMillis() {
+        return mMaxFlushNanos.get() / 1e6;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("WriteBehindInserter[table=%s, depth=%d, capacity=%d, written=%d, dropped=%d, failed=%d]",
+                mTable.getName(), queueDepth(), mCapacity, writtenCount(), droppedCount(), failedCount());
+    }
+}
@@ -6,21 +6,37 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.After;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
 
 import column.FailedColumn;
 import column.TestColumn;
+import jp.gr.java_conf.falius.mysqlfacade.Agg;
+import jp.gr.java_conf.falius.mysqlfacade.AggregateResult;
 import jp.gr.java_conf.falius.mysqlfacade.DatabaseColumn;
+import jp.gr.java_conf.falius.mysqlfacade.Params;
 import jp.gr.java_conf.falius.mysqlfacade.PreparedDatabase;
+import jp.gr.java_conf.falius.mysqlfacade.QueryRecorder;
+import jp.gr.java_conf.falius.mysqlfacade.QueryStats;
+import jp.gr.java_conf.falius.mysqlfacade.Row;
+import jp.gr.java_conf.falius.mysqlfacade.RowMapper;
 import jp.gr.java_conf.falius.mysqlfacade.SQLDatabase;
 import jp.gr.java_conf.falius.mysqlfacade.SQLs;
 
@@ -197,6 +213,228 @@ public class DatabaseTest {
         assertFalse(isExistEnd);
     }
 
+    private void insertAllDB() throws SQLException {
+        List<Map<TestColumn, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Map<TestColumn, Object> values = new EnumMap<>(TestColumn.class);
+            values.put(TestColumn.NAME, "batch" + i);
+            values.put(TestColumn.PASSWORD, "batch password");
+            values.put(TestColumn.SCORE, i * 10);
+            values.put(TestColumn.SAVED, "2017-3-1 10:00:00");
+            rows.add(values);
+        }
+        int before = mDB.count(TestColumn.class);
+
+        long[] ids = mDB.insertAll(TestColumn.class, rows, 2);
+        assertThat(ids.length, is(5));
+        for (int i = 1; i < ids.length; i++) {
+            assertTrue(ids[i - 1] < ids[i]);
+        }
+        assertThat(mDB.count(TestColumn.class), is(before + 5));
+        assertThat(mDB.sum(TestColumn.class, TestColumn.SCORE, TestColumn.NAME.toString() + " like ?", "batch%"),
+                is(0 + 10 + 20 + 30 + 40));
+    }
+
+    private void inListDB() throws SQLException {
+        List<String> names = new ArrayList<>();
+        names.add("batch1");
+        names.add("batch3");
+        names.add("batch3");
+        names.add("not exist");
+        ResultSet rs = mDB.selectIn(TestColumn.class, TestColumn.NAME, names);
+        int found = 0;
+        while (rs.next()) {
+            assertThat(rs.getString(TestColumn.NAME.toString()), anyOf(is("batch1"), is("batch3")));
+            found++;
+        }
+        assertThat(found, is(2));
+        Set<Object> existing = mDB.existing(TestColumn.class, TestColumn.NAME, names);
+        assertThat(existing.size(), is(2));
+        assertTrue(existing.contains("batch1") && existing.contains("batch3"));
+        // 大文字と小文字を区別しない照合順序の列では、列の値と大文字小文字が異なるキーも存在する
+        Set<Object> mixedCase = mDB.existing(TestColumn.class, TestColumn.NAME,
+                Arrays.asList("BATCH1", "batch1", "Batch9"));
+        assertThat(mixedCase, is(new LinkedHashSet<Object>(Arrays.asList("BATCH1", "batch1"))));
+        // 日時の列は、文字列やDateで渡したキーも日時として比較する
+        ResultSet savedRs = mDB.selectAllColumns(TestColumn.class, TestColumn.NAME, "batch1");
+        assertTrue(savedRs.next());
+        java.util.Date savedDate = new java.util.Date(savedRs.getTimestamp(TestColumn.SAVED.toString()).getTime());
+        Set<Object> saved = mDB.existing(TestColumn.class, TestColumn.SAVED,
+                Arrays.asList("2017-3-1 10:00:00", savedDate, "2017-3-1 11:00:00"));
+        assertThat(saved, is(new LinkedHashSet<Object>(Arrays.asList("2017-3-1 10:00:00", savedDate))));
+        // NaNは格納できないため、例外にならずに存在しないものとして扱う
+        Set<Object> scores = mDB.existing(TestColumn.class, TestColumn.SCORE, Arrays.asList(10, Double.NaN, 10L));
+        assertThat(scores, is(new LinkedHashSet<Object>(Arrays.asList(10, 10L))));
+
+        Map<TestColumn, Object> values = new EnumMap<>(TestColumn.class);
+        values.put(TestColumn.SCORE, 99);
+        int updated = mDB.updateIn(TestColumn.class, values, TestColumn.NAME, names);
+        assertThat(updated, is(2));
+        assertThat(mDB.count(TestColumn.class, TestColumn.ID, TestColumn.SCORE.toString() + " = ?", 99), is(2));
+
+        List<String> all = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            all.add("batch" + i);
+        }
+        int deleted = mDB.deleteIn(TestColumn.class, TestColumn.NAME, all);
+        assertThat(deleted, is(5));
+        assertFalse(mDB.isExistRecord(TestColumn.class, TestColumn.NAME, "batch0"));
+    }
+
+    private void bulkLoadDB() throws SQLException {
+        List<Map<TestColumn, Object>> rows = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Map<TestColumn, Object> values = new EnumMap<>(TestColumn.class);
+            values.put(TestColumn.NAME, "bulk\t" + i);
+            values.put(TestColumn.PASSWORD, "bulk\npassword");
+            values.put(TestColumn.SCORE, i);
+            values.put(TestColumn.SAVED, null);
+            rows.add(values);
+        }
+        int before = mDB.count(TestColumn.class);
+
+        int loaded = mDB.bulkLoad(TestColumn.class, rows.iterator());
+        assertThat(loaded, is(100));
+        assertThat(mDB.count(TestColumn.class), is(before + 100));
+
+        ResultSet rs = mDB.selectAllColumns(TestColumn.class, TestColumn.NAME, "bulk\t7");
+        assertTrue(rs.next());
+        assertThat(rs.getString(TestColumn.PASSWORD.toString()), is("bulk\npassword"));
+        assertThat(rs.getInt(TestColumn.SCORE.toString()), is(7));
+        assertThat(rs.getString(TestColumn.SEX.toString()), is("male"));
+        assertNull(rs.getString(TestColumn.SAVED.toString()));
+
+        mDB.delete(TestColumn.class, TestColumn.NAME.toString() + " like ?", "bulk%");
+    }
+
+    private void streamDB() throws SQLException {
+        int count = mDB.count(TestColumn.class);
+        try (Stream<Row> rows = mDB.streamAll(TestColumn.class)) {
+            assertThat(rows.count(), is((long) count));
+        }
+
+        try (Stream<Row> rows = mDB.streamAllColumns(TestColumn.class, TestColumn.NAME.toString() + " = ?", "name1")) {
+            List<Row> list = rows.collect(Collectors.toList());
+            assertThat(list.size(), is(1));
+            assertThat(list.get(0).getString(TestColumn.NAME), is("name1"));
+            assertThat(list.get(0).getInt(TestColumn.SCORE), is(80));
+        }
+        // 読み終えたStreamは接続を解放しているため、続けて問い合わせができる
+        assertTrue(mDB.isExistRecord(TestColumn.class, TestColumn.NAME, "name1"));
+    }
+
+    private void publishDB() throws SQLException {
+        int count = mDB.count(TestColumn.class);
+        List<Row> received = new ArrayList<>();
+        AtomicBoolean completed = new AtomicBoolean();
+        mDB.publishAll(TestColumn.class).subscribe(new Subscriber<Row>() {
+            private Subscription mSubscription;
+
+            @Override
+            public void onSubscribe(Subscription subscription) {
+                mSubscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(Row row) {
+                received.add(row);
+                mSubscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                fail(error.toString());
+            }
+
+            @Override
+            public void onComplete() {
+                completed.set(true);
+            }
+        });
+        assertThat(received.size(), is(count));
+        assertTrue(completed.get());
+        // 発行を終えたPublisherは接続を解放しているため、続けて問い合わせができる
+        assertTrue(mDB.isExistRecord(TestColumn.class, TestColumn.NAME, "name1"));
+    }
+
+    private void aggregateDB() throws SQLException {
+        AggregateResult result = mDB.aggregate(TestColumn.class, TestColumn.SCORE, "", new Object[0],
+                Agg.SUM, Agg.MIN, Agg.MAX, Agg.COUNT);
+        assertThat(result.getLong(Agg.SUM), is((long) mDB.sum(TestColumn.class, TestColumn.SCORE)));
+        assertThat(result.getLong(Agg.MIN), is((long) mDB.min(TestColumn.class, TestColumn.SCORE)));
+        assertThat(result.getLong(Agg.MAX), is((long) mDB.max(TestColumn.class, TestColumn.SCORE)));
+        assertThat(result.getLong(Agg.COUNT), is((long) mDB.count(TestColumn.class, TestColumn.SCORE)));
+
+        AggregateResult empty = mDB.aggregate(TestColumn.class, TestColumn.SCORE,
+                TestColumn.NAME.toString() + " = ?", new Object[] { "no such name" }, Agg.SUM);
+        assertTrue(empty.isNull(Agg.SUM));
+    }
+
+    private void selectMapsDB() throws SQLException {
+        List<EnumMap<TestColumn, Object>> rows = mDB.selectMaps(TestColumn.class,
+                TestColumn.NAME.toString() + " = ?", "name1");
+        assertThat(rows.size(), is(1));
+        EnumMap<TestColumn, Object> row = rows.get(0);
+        assertThat(row.get(TestColumn.NAME), is((Object) "name1"));
+        assertThat(row.get(TestColumn.SCORE), is((Object) 80));
+        assertThat(row.get(TestColumn.SAVED), is(instanceOf(Timestamp.class)));
+        assertThat(row.get(TestColumn.SAVED).toString(), is("2017-02-21 17:07:42.0"));
+
+        List<String> names = mDB.selectList(TestColumn.class, RowMapper.of(rs -> rs.getString(2)), "");
+        assertTrue(names.contains("name1"));
+    }
+
+    private void transactionDB() throws SQLException {
+        int before = mDB.count(TestColumn.class);
+        try {
+            mDB.inTransaction(db -> {
+                db.delete(TestColumn.class, TestColumn.NAME, "name1");
+                throw new SQLException("rollback");
+            });
+            fail();
+        } catch (SQLException e) {
+            assertThat(e.getMessage(), is("rollback"));
+        }
+        assertThat(mDB.count(TestColumn.class), is(before));
+
+        Map<TestColumn, Object> values = new EnumMap<>(TestColumn.class);
+        values.put(TestColumn.NAME, "transaction");
+        values.put(TestColumn.PASSWORD, "transaction password");
+        values.put(TestColumn.SCORE, 10);
+        values.put(TestColumn.SAVED, "2017-3-1 10:00:00");
+        long id = mDB.inTransaction(db -> {
+            try {
+                db.inTransaction(inner -> {
+                    inner.delete(TestColumn.class, TestColumn.NAME, "name1");
+                    throw new IllegalStateException();
+                });
+            } catch (IllegalStateException e) {
+                // 内側の削除だけが取り消される
+            }
+            return db.insert(TestColumn.class, values);
+        });
+        assertTrue(mDB.isExistRecord(TestColumn.class, TestColumn.ID, id));
+        assertTrue(mDB.isExistRecord(TestColumn.class, TestColumn.NAME, "name1"));
+        assertThat(mDB.count(TestColumn.class), is(before + 1));
+    }
+
+    private void recorderDB() throws SQLException {
+        QueryRecorder recorder = new QueryRecorder();
+        ((PreparedDatabase) mDB).setQueryListener(recorder);
+        mDB.count(TestColumn.class);
+        mDB.count(TestColumn.class);
+        ((PreparedDatabase) mDB).setQueryListener(null);
+        mDB.count(TestColumn.class);
+
+        assertThat(recorder.getExecutionCount(), is(2L));
+        List<QueryStats> stats = recorder.snapshot();
+        assertThat(stats.size(), is(1));
+        assertThat(stats.get(0).getCount(), is(2L));
+        assertThat(stats.get(0).getTable(), is("test_table"));
+        assertTrue(stats.get(0).getMaxMillis() >= stats.get(0).getP50Millis());
+    }
+
     private void empty() throws SQLException {
         mDB.empty(TestColumn.class);
         int count = mDB.count(TestColumn.class);
@@ -214,6 +452,15 @@ public class DatabaseTest {
         checkSumMaxMinDB();
         deleteRecord();
         singleWhere();
+        insertAllDB();
+        inListDB();
+        bulkLoadDB();
+        streamDB();
+        publishDB();
+        aggregateDB();
+        selectMapsDB();
+        transactionDB();
+        recorderDB();
 
         empty();
     }
@@ -279,6 +526,96 @@ public class DatabaseTest {
         assertThat(result, is(expected));
     }
 
+    @Test
+    public void insertPlaceholderSqlString() {
+        String table = "test_table";
+        TestColumn[] columns = { TestColumn.NAME, TestColumn.SCORE, TestColumn.SAVED };
+
+        String expected = "INSERT INTO test_table (name,score,saved) VALUES (?,?,?)";
+        String result = SQLs.createInsertSql(table, columns);
+        assertThat(result, is(expected));
+    }
+
+    @Test
+    public void upsertSqlString() {
+        String table = "test_table";
+        TestColumn[] columns = { TestColumn.ID, TestColumn.NAME, TestColumn.SCORE };
+        TestColumn[] updateColumns = { TestColumn.SCORE };
+
+        String expected = "INSERT INTO test_table (id,name,score) VALUES (?,?,?)"
+                + " ON DUPLICATE KEY UPDATE score=VALUES(score)";
+        String result = SQLs.createUpsertSql(table, columns, updateColumns);
+        assertThat(result, is(expected));
+        assertThat(SQLs.createInsertSql(table, columns), is("INSERT INTO test_table (id,name,score) VALUES (?,?,?)"));
+    }
+
+    @Test
+    public void updatePlaceholderSqlString() {
+        String table = "test_table";
+        TestColumn[] columns = { TestColumn.SCORE, TestColumn.SAVED };
+
+        String expected = "UPDATE test_table SET score = ?,saved = ? WHERE id = ?";
+        String result = SQLs.createUpdateSql(table, columns, "id = ?");
+        assertThat(result, is(expected));
+        assertThat(SQLs.createUpdateSql(table, columns.clone(), "id = ?"), is(sameInstance(result)));
+    }
+
+    @Test
+    public void paramsBuffer() {
+        Params params = new Params(1);
+        params.addInt(3).addLong(1L << 40).addDouble(0.5).addBoolean(true).add("name").add(null);
+        assertThat(params.size(), is(6));
+        assertThat(params.toString(), is("Params[3, 1099511627776, 0.5, true, name, null]"));
+
+        assertThat(params.clear().size(), is(0));
+        assertThat(params.addFloat(1.5f).toString(), is("Params[1.5]"));
+    }
+
+    @Test
+    public void aggregateSqlString() {
+        String expected = "SELECT sum(score),count(DISTINCT score) FROM test_table WHERE id > ?";
+        String result = SQLs.createAggregateSql("test_table", "score",
+                new Agg[] { Agg.SUM, Agg.COUNT_DISTINCT }, "id > ?");
+        assertThat(result, is(expected));
+    }
+
+    @Test
+    public void groupBySqlString() {
+        String expected = "SELECT sex AS mysqlfacade_group,sum(score) FROM test_table"
+                + " GROUP BY mysqlfacade_group ORDER BY mysqlfacade_group";
+        String result = SQLs.createGroupBySql("test_table", "sex", "sum(score)", null);
+        assertThat(result, is(expected));
+    }
+
+    @Test
+    public void seekSqlString() {
+        assertThat(SQLs.createSeekSql("test_table", "id", true),
+                is("SELECT * FROM test_table ORDER BY id LIMIT ?"));
+        assertThat(SQLs.createSeekSql("test_table", "id", false),
+                is("SELECT * FROM test_table WHERE id > ? ORDER BY id LIMIT ?"));
+    }
+
+    @Test
+    public void inClauseString() {
+        assertThat(SQLs.createInClause("id", 1), is("id IN (?)"));
+        assertThat(SQLs.createInClause("id", 4), is("id IN (?,?,?,?)"));
+
+        String expected = "SELECT test_table.* FROM test_table JOIN mysqlfacade_keys"
+                + " ON test_table.id = mysqlfacade_keys.mysqlfacade_key";
+        String result = SQLs.createSelectSql(SQLs.createKeyJoin("test_table", "id"),
+                new String[] { "test_table.*" }, null);
+        assertThat(result, is(expected));
+    }
+
+    @Test
+    public void existingSqlString() {
+        assertThat(SQLs.createExistingSql("test_table", "name", 2),
+                is("SELECT MAX(name = ?),MAX(name = ?) FROM test_table WHERE name IN (?,?)"));
+        assertThat(SQLs.createExistingKeysSql("test_table", "name"),
+                is("SELECT mysqlfacade_index FROM mysqlfacade_keys WHERE EXISTS"
+                        + " (SELECT 1 FROM test_table WHERE test_table.name = mysqlfacade_keys.mysqlfacade_key)"));
+    }
+
     @Test
     public void deleteSqlString() {
         // DELETE FROM table WHERE whereClause
@@ -0,0 +1,47 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+import column.TestColumn;
+
+public class AsyncSQLDatabaseTest {
+
+    @Test
+    public void paramsAreCopiedBeforeExecution() throws SQLException {
+        StubJdbc stub = new StubJdbc(1);
+        List<QueryEvent> events = Collections.synchronizedList(new ArrayList<>());
+        List<Runnable> pending = new ArrayList<>();
+        try (PooledDatabase pool = new PooledDatabase(stub::connection, 0, 1, 1, 100, 0)) {
+            pool.setQueryListener(events::add);
+            // 実行を遅らせ、呼び出し元がParamsを再利用した後に実行されるようにする
+            AsyncSQLDatabase async = new AsyncSQLDatabase(pool, pending::add);
+
+            Params params = new Params().addInt(1).add("first");
+            CompletableFuture<Integer> deleted = async.delete(TestColumn.class, "id = ? and name = ?", params);
+            params.clear().addInt(2).add("second");
+            CompletableFuture<Integer> updated = async.update(TestColumn.class,
+                    Collections.singletonMap(TestColumn.SCORE, 10), "id = ? and name = ?", params);
+            params.clear().addInt(3).add("third");
+
+            for (Runnable task : pending) {
+                task.run();
+            }
+            assertThat(deleted.join(), is(1));
+            assertThat(updated.join(), is(1));
+        }
+
+        assertThat(events.size(), is(2));
+        assertThat(Arrays.asList(events.get(0).args()), is(Arrays.<Object> asList(1, "first")));
+        assertThat(Arrays.asList(events.get(1).args()), is(Arrays.<Object> asList(10, 2, "second")));
+    }
+}
@@ -0,0 +1,94 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import column.TestColumn;
+
+public class BulkLoadTest {
+
+    @Test
+    public void writesFloatingPointWithoutExponent() throws SQLException {
+        StubJdbc stub = new StubJdbc(1);
+        try (PreparedDatabase db = PreparedDatabase.builder().connectionSupplier(stub::connection).build()) {
+            int count = db.bulkLoad(TestColumn.class, Arrays.asList(
+                    row("a", 1.0E10), row("b", 0.1f), row("c", -2.5E-7)).iterator());
+
+            assertThat(count, is(3));
+            assertThat(stub.loaded(), is("a\t10000000000\nb\t0.1\nc\t-0.00000025\n"));
+        }
+    }
+
+    @Test
+    public void notifiesListener() throws SQLException {
+        StubJdbc stub = new StubJdbc(1);
+        List<QueryEvent> events = new ArrayList<>();
+        try (PreparedDatabase db = PreparedDatabase.builder()
+                .connectionSupplier(stub::connection)
+                .queryListener(events::add)
+                .build()) {
+            db.bulkLoad(TestColumn.class, Arrays.asList(row("a", 1), row("b", 2)).iterator());
+        }
+
+        assertThat(events.size(), is(1));
+        QueryEvent event = events.get(0);
+        assertThat(event.kind(), is(QueryEvent.Kind.UPDATE));
+        assertThat(event.sql().startsWith("LOAD DATA"), is(true));
+        assertThat(event.rows(), is(2L));
+        assertThat(event.args().length, is(0));
+    }
+
+    @Test
+    public void rejectsNonFiniteValues() throws SQLException {
+        StubJdbc stub = new StubJdbc(1);
+        try (PreparedDatabase db = PreparedDatabase.builder().connectionSupplier(stub::connection).build()) {
+            try {
+                db.bulkLoad(TestColumn.class, Arrays.asList(
+                        row("a", 1.5), row("b", Double.NaN), row("c", 2.5)).iterator());
+                fail("NaN was loaded");
+            } catch (IllegalArgumentException e) {
+                assertThat(e.getMessage(), containsString("after 1 rows"));
+            }
+            // 送信は変換できない行の手前で区切りよく終わる
+            assertThat(stub.loaded(), is("a\t1.5\n"));
+
+            try {
+                db.bulkLoad(TestColumn.class, Arrays.asList(row("d", Float.POSITIVE_INFINITY)).iterator());
+                fail("infinity was loaded");
+            } catch (IllegalArgumentException e) {
+                assertThat(stub.loaded(), is(""));
+            }
+        }
+    }
+
+    @Test
+    public void rejectsDriverWithoutStreamSupport() throws SQLException {
+        StubJdbc stub = new StubJdbc(1);
+        stub.setLocalInfileSupported(false);
+        try (PreparedDatabase db = PreparedDatabase.builder().connectionSupplier(stub::connection).build()) {
+            try {
+                db.bulkLoad(TestColumn.class, Arrays.asList(row("a", 1)).iterator());
+                fail("loaded without stream support");
+            } catch (SQLFeatureNotSupportedException e) {
+                assertThat(stub.executedCount("LOAD DATA"), is(0));
+            }
+        }
+    }
+
+    private static Map<TestColumn, Object> row(String name, Object score) {
+        Map<TestColumn, Object> row = new EnumMap<>(TestColumn.class);
+        row.put(TestColumn.NAME, name);
+        row.put(TestColumn.SCORE, score);
+        return row;
+    }
+}
@@ -0,0 +1,196 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import column.TestColumn;
+
+public class CachingDatabaseTest {
+    private StubJdbc mStub;
+    private CachingDatabase mDatabase;
+
+    @Before
+    public void setUp() throws SQLException {
+        mStub = new StubJdbc(1);
+        mDatabase = new CachingDatabase(PreparedDatabase.builder().connectionSupplier(mStub::connection).build(),
+                16, 60000);
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        mDatabase.close();
+    }
+
+    @Test
+    public void hitsSameQuery() throws SQLException {
+        mDatabase.count(TestColumn.class);
+        mDatabase.count(TestColumn.class);
+        mDatabase.count(TestColumn.class, TestColumn.ID, "score > ?", 40);
+        mDatabase.count(TestColumn.class, TestColumn.ID, "score > ?", 40);
+        mDatabase.count(TestColumn.class, TestColumn.ID, "score > ?", 50);
+
+        assertThat(mStub.executedCount("SELECT"), is(3));
+        assertThat(mDatabase.hitCount(), is(2L));
+        assertThat(mDatabase.missCount(), is(3L));
+        assertThat(mDatabase.size(), is(3));
+    }
+
+    @Test
+    public void writeInvalidatesOnlyThatTable() throws SQLException {
+        mDatabase.count(TestColumn.class);
+        mDatabase.count(ItemColumn.class);
+
+        mDatabase.update(TestColumn.class, Collections.singletonMap(TestColumn.SCORE, 10), "id = ?", 1);
+        mDatabase.count(TestColumn.class);
+        mDatabase.count(ItemColumn.class);
+
+        assertThat(mStub.executedCount("SELECT"), is(3));
+        assertThat(mDatabase.hitCount(), is(1L));
+        assertThat(mDatabase.invalidationCount(), is(1L));
+    }
+
+    @Test
+    public void explicitInvalidation() throws SQLException {
+        mDatabase.count(TestColumn.class);
+        mDatabase.count(ItemColumn.class);
+
+        mDatabase.invalidate(ItemColumn.class);
+        mDatabase.count(TestColumn.class);
+        mDatabase.count(ItemColumn.class);
+
+        assertThat(mStub.executedCount("SELECT"), is(3));
+        assertThat(mDatabase.hitCount(), is(1L));
+    }
+
+    @Test
+    public void transactionInvalidatesAll() throws SQLException {
+        mDatabase.count(TestColumn.class);
+        mDatabase.count(ItemColumn.class);
+
+        // 委譲先を直接使った書き換えは検出できないため、トランザクションの後にはすべてを破棄する
+        mDatabase.inTransaction(db -> db.update(ItemColumn.class, Collections.singletonMap(ItemColumn.NAME, "x"),
+                "id = ?", 1));
+        assertThat(mDatabase.size(), is(0));
+
+        mDatabase.count(TestColumn.class);
+        mDatabase.count(ItemColumn.class);
+        assertThat(mStub.executedCount("SELECT"), is(4));
+        assertThat(mDatabase.hitCount(), is(0L));
+    }
+
+    @Test
+    public void expiresAfterTtl() throws SQLException, InterruptedException {
+        try (CachingDatabase database = new CachingDatabase(
+                PreparedDatabase.builder().connectionSupplier(mStub::connection).build(), 16, 1)) {
+            database.count(TestColumn.class);
+            Thread.sleep(10);
+            database.count(TestColumn.class);
+
+            assertThat(mStub.executedCount("SELECT"), is(2));
+            assertThat(database.hitCount(), is(0L));
+            assertThat(database.evictionCount(), is(1L));
+        }
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws SQLException {
+        try (CachingDatabase database = new CachingDatabase(
+                PreparedDatabase.builder().connectionSupplier(mStub::connection).build(), 2, 60000)) {
+            database.count(TestColumn.class, TestColumn.ID, "score > ?", 1);
+            database.count(TestColumn.class, TestColumn.ID, "score > ?", 2);
+            database.count(TestColumn.class, TestColumn.ID, "score > ?", 1);
+            database.count(TestColumn.class, TestColumn.ID, "score > ?", 3);
+            database.count(TestColumn.class, TestColumn.ID, "score > ?", 1);
+
+            assertThat(database.size(), is(2));
+            assertThat(database.evictionCount(), is(1L));
+            assertThat(database.hitCount(), is(2L));
+        }
+    }
+
+    @Test
+    public void cachedMapsCannotBeChangedByCallers() throws SQLException {
+        mStub.setRows(new Object[] { "male", 10 }, new Object[] { "female", 20 });
+        Map<Object, BigDecimal> first = mDatabase.aggregateBy(TestColumn.class, TestColumn.SEX, Agg.SUM,
+                TestColumn.SCORE, "");
+        first.put("other", BigDecimal.ONE);
+        first.remove("male");
+
+        Map<Object, BigDecimal> second = mDatabase.aggregateBy(TestColumn.class, TestColumn.SEX, Agg.SUM,
+                TestColumn.SCORE, "");
+        assertThat(mDatabase.hitCount(), is(1L));
+        assertThat(second.size(), is(2));
+        assertThat(second.get("male"), is(new BigDecimal(10)));
+        assertThat(second.containsKey("other"), is(false));
+    }
+
+    @Test
+    public void cachedTimeKeysCannotBeChangedByCallers() throws SQLException {
+        Timestamp day = Timestamp.valueOf("2017-03-01 00:00:00");
+        mStub.setRows(new Object[] { new Timestamp(day.getTime()), 5 });
+        Map<Timestamp, BigDecimal> first = mDatabase.aggregateByTime(TestColumn.class, TestColumn.SAVED,
+                TimeBucket.DAY, Agg.COUNT, TestColumn.ID, "");
+        first.keySet().iterator().next().setTime(0);
+
+        Map<Timestamp, BigDecimal> second = mDatabase.aggregateByTime(TestColumn.class, TestColumn.SAVED,
+                TimeBucket.DAY, Agg.COUNT, TestColumn.ID, "");
+        assertThat(mDatabase.hitCount(), is(1L));
+        assertThat(second.get(day), is(new BigDecimal(5)));
+    }
+
+    @Test
+    public void aggregateResultIsShared() throws SQLException {
+        mStub.setRows(new Object[] { 30, 10 });
+        AggregateResult first = mDatabase.aggregate(TestColumn.class, TestColumn.SCORE, "", new Object[0],
+                Agg.SUM, Agg.MAX);
+        AggregateResult second = mDatabase.aggregate(TestColumn.class, TestColumn.SCORE, "", new Object[0],
+                Agg.SUM, Agg.MAX);
+
+        // 不変であるため、保持している結果をそのまま返す
+        assertThat(second, is(sameInstance(first)));
+        assertThat(second.getLong(Agg.SUM), is(30L));
+        assertThat(second.getLong(Agg.MAX), is(10L));
+    }
+
+    public enum ItemColumn implements DatabaseColumn {
+        ID("id", "int"),
+        NAME("name", "varchar(255)");
+
+        public static String tableName() {
+            return "item_table";
+        }
+
+        private final String mName;
+        private final String mType;
+
+        ItemColumn(String name, String type) {
+            mName = name;
+            mType = type;
+        }
+
+        @Override
+        public String toString() {
+            return mName;
+        }
+
+        @Override
+        public String type() {
+            return mType;
+        }
+
+        @Override
+        public String columnString() {
+            return mName + " " + mType;
+        }
+    }
+}
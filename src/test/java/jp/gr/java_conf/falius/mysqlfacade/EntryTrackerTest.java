@@ -0,0 +1,148 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class EntryTrackerTest {
+
+    @Test
+    public void evictsEldestOverCapacity() throws SQLException {
+        EntryTracker tracker = new EntryTracker(2);
+        FakeEntry first = new FakeEntry("first", System.nanoTime());
+        FakeEntry second = new FakeEntry("second", System.nanoTime());
+        FakeEntry third = new FakeEntry("third", System.nanoTime());
+
+        tracker.register(first);
+        tracker.register(second);
+        tracker.register(third);
+
+        assertThat(tracker.size(), is(2));
+        assertThat(first.mAbandoned, is(true));
+        assertThat(second.mAbandoned, is(false));
+        assertThat(third.mAbandoned, is(false));
+    }
+
+    @Test
+    public void purgesClosedBeforeEvicting() throws SQLException {
+        EntryTracker tracker = new EntryTracker(2);
+        FakeEntry first = new FakeEntry("first", System.nanoTime());
+        FakeEntry second = new FakeEntry("second", System.nanoTime());
+        tracker.register(first);
+        tracker.register(second);
+        second.mClosed = true;
+
+        tracker.register(new FakeEntry("third", System.nanoTime()));
+
+        assertThat(tracker.size(), is(2));
+        assertThat(first.mAbandoned, is(false));
+    }
+
+    @Test
+    public void closeAllAbandonsEverything() throws SQLException {
+        EntryTracker tracker = new EntryTracker(4);
+        FakeEntry first = new FakeEntry("first", System.nanoTime());
+        FakeEntry second = new FakeEntry("second", System.nanoTime());
+        tracker.register(first);
+        tracker.register(second);
+
+        tracker.closeAll();
+
+        assertThat(tracker.size(), is(0));
+        assertThat(first.mAbandoned, is(true));
+        assertThat(second.mAbandoned, is(true));
+    }
+
+    @Test
+    public void reportsEachLeakOnce() throws SQLException {
+        EntryTracker tracker = new EntryTracker(4);
+        long now = System.nanoTime();
+        try {
+            tracker.setLeakThreshold(1000);
+            FakeEntry old = new FakeEntry("old", now - TimeUnit.SECONDS.toNanos(5));
+            FakeEntry young = new FakeEntry("young", now);
+            tracker.register(old);
+            tracker.register(young);
+
+            assertThat(tracker.reportLeaks(now), is(1));
+            assertThat(old.mTraceCount, is(1));
+            assertThat(young.mTraceCount, is(0));
+            assertThat(tracker.reportLeaks(now), is(0));
+
+            tracker.unregister(young);
+            assertThat(tracker.reportLeaks(now + TimeUnit.SECONDS.toNanos(5)), is(0));
+        } finally {
+            tracker.stopLeakDetection();
+        }
+    }
+
+    @Test
+    public void noReportWhenDisabled() throws SQLException {
+        EntryTracker tracker = new EntryTracker(4);
+        tracker.register(new FakeEntry("old", System.nanoTime() - TimeUnit.SECONDS.toNanos(5)));
+        assertThat(tracker.isLeakDetectionEnabled(), is(false));
+        assertThat(tracker.reportLeaks(System.nanoTime()), is(0));
+    }
+
+    @Test
+    public void reportsWithoutFurtherRegistration() throws Exception {
+        EntryTracker tracker = new EntryTracker(4);
+        FakeEntry old = new FakeEntry("old", System.nanoTime() - TimeUnit.SECONDS.toNanos(5));
+        try {
+            tracker.register(old);
+            tracker.setLeakThreshold(1000);
+
+            // 登録がなくても、バックグラウンドの検査で報告される
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (old.mTraceCount == 0 && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+            assertThat(old.mTraceCount, is(1));
+        } finally {
+            tracker.stopLeakDetection();
+        }
+    }
+
+    private static class FakeEntry implements EntryTracker.Trackable {
+        private final String mSql;
+        private final long mCreatedNanos;
+        private volatile boolean mClosed = false;
+        private volatile boolean mAbandoned = false;
+        private volatile int mTraceCount = 0;
+
+        private FakeEntry(String sql, long createdNanos) {
+            mSql = sql;
+            mCreatedNanos = createdNanos;
+        }
+
+        @Override
+        public String sql() {
+            return mSql;
+        }
+
+        @Override
+        public long createdNanos() {
+            return mCreatedNanos;
+        }
+
+        @Override
+        public Throwable creationTrace() {
+            mTraceCount++;
+            return null;
+        }
+
+        @Override
+        public boolean isClosed() {
+            return mClosed;
+        }
+
+        @Override
+        public void closeAbandoned() {
+            mAbandoned = true;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import column.TestColumn;
+
+public class PooledDatabaseTest {
+
+    @Test
+    public void fillsMinIdleOnCreation() throws SQLException {
+        StubJdbc stub = new StubJdbc(1);
+        try (PooledDatabase pool = new PooledDatabase(stub::connection, 2, 3, 4, 100, 0)) {
+            assertThat(pool.idleCount(), is(2));
+            assertThat(pool.createdCount(), is(2L));
+            assertThat(pool.activeCount(), is(0));
+        }
+    }
+
+    @Test
+    public void timesOutAtMaxTotal() throws SQLException {
+        StubJdbc stub = new StubJdbc(1);
+        try (PooledDatabase pool = new PooledDatabase(stub::connection, 0, 2, 2, 50, 0)) {
+            SQLDatabase.Entry first = pool.execute("SELECT 1");
+            SQLDatabase.Entry second = pool.execute("SELECT 2");
+            assertThat(pool.activeCount(), is(2));
+
+            long start = System.nanoTime();
+            try {
+                pool.execute("SELECT 3");
+                fail("borrowed beyond maxTotal");
+            } catch (SQLTransientConnectionException e) {
+                assertThat(System.nanoTime() - start >= 50000000L, is(true));
+            }
+            assertThat(pool.timeoutCount(), is(1L));
+            assertThat(pool.createdCount(), is(2L));
+
+            first.close();
+            SQLDatabase.Entry third = pool.execute("SELECT 3");
+            assertThat(pool.activeCount(), is(2));
+            third.close();
+            second.close();
+            assertThat(pool.activeCount(), is(0));
+            assertThat(pool.createdCount(), is(2L));
+        }
+    }
+
+    @Test
+    public void closesReturnsBeyondMaxIdle() throws SQLException {
+        StubJdbc stub = new StubJdbc(1);
+        try (PooledDatabase pool = new PooledDatabase(stub::connection, 0, 1, 3, 100, 0)) {
+            SQLDatabase.Entry first = pool.execute("SELECT 1");
+            SQLDatabase.Entry second = pool.execute("SELECT 2");
+            SQLDatabase.Entry third = pool.execute("SELECT 3");
+            first.close();
+            second.close();
+            third.close();
+
+            assertThat(pool.idleCount(), is(1));
+            assertThat(pool.destroyedCount(), is(2L));
+        }
+    }
+
+    @Test
+    public void replenishesMinIdleAfterValidationFailure() throws SQLException {
+        StubJdbc stub = new StubJdbc(1);
+        try (PooledDatabase pool = new PooledDatabase(stub::connection, 2, 2, 4, 100, 0)) {
+            pool.setValidationInterval(0);
+            stub.setValid(false);
+
+            SQLDatabase.Entry entry = pool.execute("SELECT 1");
+            assertThat(pool.validationFailureCount(), is(2L));
+            assertThat(pool.idleCount(), is(2));
+            entry.close();
+
+            // 最初に作成した2つ、貸し出し用に作成した1つ、補充した2つ
+            assertThat(pool.createdCount(), is(5L));
+            // 返却された接続はmaxIdleを超えるためクローズされる
+            assertThat(pool.idleCount(), is(2));
+            assertThat(pool.destroyedCount(), is(3L));
+        }
+    }
+
+    @Test
+    public void resetsSessionOnReturn() throws SQLException {
+        StubJdbc stub = new StubJdbc(1);
+        List<Connection> connections = new ArrayList<Connection>();
+        try (PooledDatabase pool = new PooledDatabase(() -> {
+            Connection connection = stub.connection();
+            connections.add(connection);
+            return connection;
+        }, 0, 1, 1, 100, 0)) {
+            pool.count(TestColumn.class);
+            assertThat(stub.executedCount("ROLLBACK"), is(0));
+
+            pool.withDatabase(db -> {
+                Connection connection = connections.get(0);
+                connection.setAutoCommit(false);
+                connection.setTransactionIsolation(Connection.TRANSACTION_READ_COMMITTED);
+                connection.setCatalog("other");
+                try (SQLDatabase.Entry entry = db.execute("START TRANSACTION")) {
+                    return entry.update();
+                }
+            });
+
+            Connection connection = connections.get(0);
+            assertThat(stub.rollbackCount(), is(1));
+            assertThat(connection.getAutoCommit(), is(true));
+            assertThat(connection.getTransactionIsolation(), is(Connection.TRANSACTION_REPEATABLE_READ));
+            assertThat(connection.getCatalog(), is("bench"));
+            List<String> executed = stub.executed();
+            assertThat(executed.subList(executed.size() - 2, executed.size()),
+                    is(Arrays.asList("ROLLBACK", "SET autocommit=1")));
+
+            // 次の借り手には同じ接続が元の状態で貸し出される
+            pool.count(TestColumn.class);
+            assertThat(pool.createdCount(), is(1L));
+            assertThat(stub.executedCount("ROLLBACK"), is(1));
+        }
+    }
+
+    @Test
+    public void destroysConnectionWhenResetFails() throws SQLException {
+        StubJdbc stub = new StubJdbc(1);
+        List<Connection> connections = new ArrayList<Connection>();
+        try (PooledDatabase pool = new PooledDatabase(() -> {
+            Connection connection = stub.connection();
+            connections.add(connection);
+            return connection;
+        }, 0, 1, 1, 100, 0)) {
+            stub.setRollbackFails(true);
+            pool.withDatabase(db -> {
+                connections.get(0).setAutoCommit(false);
+                return null;
+            });
+
+            assertThat(pool.idleCount(), is(0));
+            assertThat(pool.destroyedCount(), is(1L));
+            assertThat(connections.get(0).isClosed(), is(true));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMinIdleOverMaxIdle() throws SQLException {
+        new PooledDatabase(new StubJdbc(1)::connection, 3, 2, 4, 100, 0);
+    }
+}
@@ -0,0 +1,115 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.sql.DataSource;
+
+import org.junit.Test;
+
+public class PreparedDatabaseBuilderTest {
+
+    @Test
+    public void defaultUrl() {
+        PreparedDatabase.Builder builder = PreparedDatabase.builder().database("testdb");
+        assertThat(builder.url(), is("jdbc:mysql://localhost/testdb"));
+    }
+
+    @Test
+    public void urlWithHostAndPort() {
+        PreparedDatabase.Builder builder = PreparedDatabase.builder()
+                .host("db.example.com")
+                .port(3307)
+                .database("testdb");
+        assertThat(builder.url(), is("jdbc:mysql://db.example.com:3307/testdb"));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void urlWithoutDatabase() {
+        PreparedDatabase.builder().connectionFactory();
+    }
+
+    @Test
+    public void defaultProperties() {
+        Properties info = PreparedDatabase.builder().database("testdb").info();
+        assertThat(info.getProperty("useSSL"), is("false"));
+        assertThat(info.getProperty("useLegacyDatetimeCode"), is("false"));
+        assertThat(info.getProperty("serverTimezone"), is("JST"));
+        assertThat(info.containsKey("user"), is(false));
+        assertThat(info.containsKey("password"), is(false));
+    }
+
+    @Test
+    public void overrideProperties() {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("useSSL", true);
+        properties.put("prepStmtCacheSize", 250);
+
+        Properties info = PreparedDatabase.builder()
+                .database("testdb")
+                .user("user")
+                .password("pass")
+                .property("rewriteBatchedStatements", true)
+                .property("serverTimezone", "UTC")
+                .properties(properties)
+                .info();
+
+        assertThat(info.getProperty("rewriteBatchedStatements"), is("true"));
+        assertThat(info.getProperty("serverTimezone"), is("UTC"));
+        assertThat(info.getProperty("useSSL"), is("true"));
+        assertThat(info.getProperty("prepStmtCacheSize"), is("250"));
+        assertThat(info.getProperty("user"), is("user"));
+        assertThat(info.getProperty("password"), is("pass"));
+    }
+
+    @Test
+    public void dataSourceWithUser() throws SQLException {
+        StubJdbc stub = new StubJdbc(1);
+        List<List<Object>> calls = new ArrayList<>();
+        DataSource dataSource = (DataSource) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { DataSource.class }, (proxy, method, args) -> {
+                    if (!method.getName().equals("getConnection")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    calls.add(args == null ? new ArrayList<>() : Arrays.asList(args));
+                    return stub.connection();
+                });
+
+        try (PreparedDatabase db = PreparedDatabase.builder()
+                .dataSource(dataSource)
+                .user("user")
+                .password("pass")
+                .statementCacheSize(8)
+                .build()) {
+            assertThat(db.statementCache().capacity(), is(8));
+        }
+        assertThat(calls.size(), is(1));
+        assertThat(calls.get(0), is(Arrays.<Object> asList("user", "pass")));
+
+        Connection connection = PreparedDatabase.builder().dataSource(dataSource).connectionFactory().get();
+        assertThat(connection, is(notNullValue()));
+        assertThat(calls.get(1).isEmpty(), is(true));
+    }
+
+    @Test
+    public void connectionSupplierTakesPrecedence() throws SQLException {
+        StubJdbc stub = new StubJdbc(1);
+        SQLSupplier<Connection> supplier = stub::connection;
+        PreparedDatabase.Builder builder = PreparedDatabase.builder().database("testdb").connectionSupplier(supplier);
+        assertThat(builder.connectionFactory(), is(sameInstance(supplier)));
+
+        try (PreparedDatabase db = builder.build()) {
+            assertThat(db.statementCache(), is(nullValue()));
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import column.TestColumn;
+
+public class QueryRecorderTest {
+    private static final String SQL = "SELECT * FROM test_table";
+
+    private StubJdbc mStub;
+    private QueryRecorder mRecorder;
+
+    @Before
+    public void setUp() {
+        mStub = new StubJdbc(1);
+        mStub.setRows(new Object[] { 1 }, new Object[] { 2 }, new Object[] { 3 });
+        mRecorder = new QueryRecorder();
+    }
+
+    @Test
+    public void countsPreparesOnCacheMissOnly() throws SQLException {
+        try (PreparedDatabase db = database(4)) {
+            readAll(db);
+            readAll(db);
+        }
+
+        QueryStats stats = mRecorder.snapshot(SQL);
+        assertThat(stats.getCount(), is(2L));
+        assertThat(stats.getPreparedCount(), is(1L));
+        assertThat(mRecorder.getPreparedCount(), is(1L));
+    }
+
+    @Test
+    public void countsPreparesWithoutCache() throws SQLException {
+        try (PreparedDatabase db = database(0)) {
+            readAll(db);
+            readAll(db);
+        }
+
+        assertThat(mRecorder.snapshot(SQL).getPreparedCount(), is(2L));
+    }
+
+    @Test
+    public void countsFetchedRowsAtClose() throws SQLException {
+        try (PreparedDatabase db = database(4)) {
+            readAll(db);
+            try (SQLDatabase.Entry entry = db.execute(SQL)) {
+                ResultSet rs = entry.query();
+                // 委譲先を取り出して読み進めても数えられるよう、ラップしたもの自身を返す
+                assertThat(rs.unwrap(ResultSet.class), is(sameInstance(rs)));
+                rs.next();
+                assertThat(mRecorder.getFetchedRowCount(), is(3L));
+
+                // 次の問い合わせで、読みかけの結果の行数が通知される
+                rs = entry.query();
+                assertThat(mRecorder.getFetchedRowCount(), is(4L));
+                rs.next();
+                rs.next();
+            }
+        }
+
+        assertThat(mRecorder.snapshot(SQL).getFetchedRows(), is(6L));
+        assertThat(mRecorder.getRowCount(), is(0L));
+    }
+
+    @Test
+    public void countsStreamedRows() throws SQLException {
+        try (PreparedDatabase db = database(0)) {
+            try (Stream<Row> rows = db.streamAll(TestColumn.class)) {
+                assertThat(rows.count(), is(3L));
+            }
+        }
+
+        assertThat(mRecorder.getFetchedRowCount(), is(3L));
+        assertThat(mRecorder.getPreparedCount(), is(1L));
+    }
+
+    private PreparedDatabase database(int cacheSize) throws SQLException {
+        return PreparedDatabase.builder()
+                .connectionSupplier(mStub::connection)
+                .statementCacheSize(cacheSize)
+                .queryListener(mRecorder)
+                .build();
+    }
+
+    private static void readAll(PreparedDatabase db) throws SQLException {
+        try (SQLDatabase.Entry entry = db.execute(SQL);
+                ResultSet rs = entry.query()) {
+            while (rs.next()) {
+            }
+        }
+    }
+}
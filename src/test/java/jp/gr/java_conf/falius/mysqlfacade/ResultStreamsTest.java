@@ -0,0 +1,28 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+
+import column.TestColumn;
+
+public class ResultStreamsTest {
+
+    @Test
+    public void passesNullFromMapper() throws SQLException {
+        StubJdbc stub = new StubJdbc(1);
+        stub.setRows(new Object[] { 1, "a" }, new Object[] { 2, null }, new Object[] { 3, "c" });
+        try (PreparedDatabase db = PreparedDatabase.builder().connectionSupplier(stub::connection).build();
+                Stream<String> names = db.stream(TestColumn.class, RowMapper.of(rs -> rs.getString(2)), null)) {
+            List<String> list = names.collect(Collectors.toList());
+            assertThat(list, is(Arrays.asList("a", null, "c")));
+        }
+    }
+}
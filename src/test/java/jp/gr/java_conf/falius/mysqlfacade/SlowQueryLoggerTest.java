@@ -0,0 +1,130 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class SlowQueryLoggerTest {
+    private static final String SELECT = "SELECT * FROM test_table WHERE id = ?";
+
+    @Test
+    public void logsOnlyAtOrAboveThreshold() {
+        try (SlowQueryLogger logger = new SlowQueryLogger(100)) {
+            logger.afterExecute(event(QueryEvent.Kind.QUERY, SELECT, 99));
+            assertThat(logger.slowCount(), is(0L));
+
+            logger.afterExecute(event(QueryEvent.Kind.QUERY, SELECT, 100));
+            logger.afterExecute(event(QueryEvent.Kind.UPDATE, "DELETE FROM test_table WHERE id = ?", 250));
+            assertThat(logger.slowCount(), is(2L));
+            assertThat(logger.explainCount(), is(0L));
+        }
+    }
+
+    @Test
+    public void recognizesSelectStatements() {
+        assertThat(SlowQueryLogger.isSelect("select 1"), is(true));
+        assertThat(SlowQueryLogger.isSelect("  \n SELECT 1"), is(true));
+        assertThat(SlowQueryLogger.isSelect("((SELECT 1) UNION (SELECT 2))"), is(true));
+        assertThat(SlowQueryLogger.isSelect("WITH t AS (SELECT 1) SELECT * FROM t"), is(true));
+        assertThat(SlowQueryLogger.isSelect("INSERT INTO t SELECT 1"), is(false));
+        assertThat(SlowQueryLogger.isSelect("  "), is(false));
+    }
+
+    @Test
+    public void explainsEachShapeOncePerInterval() throws SQLException, InterruptedException {
+        StubJdbc stub = new StubJdbc(1);
+        try (PooledDatabase pool = new PooledDatabase(stub::connection, 0, 1, 1, 1000, 0);
+                SlowQueryLogger logger = new SlowQueryLogger(0, pool, 60000)) {
+            for (int i = 0; i < 3; i++) {
+                logger.afterExecute(event(QueryEvent.Kind.QUERY, SELECT, 10));
+                logger.afterExecute(event(QueryEvent.Kind.QUERY, " (SELECT name FROM test_table)", 10));
+            }
+            logger.afterExecute(event(QueryEvent.Kind.UPDATE, "DELETE FROM test_table WHERE id = ?", 10));
+
+            awaitExplains(stub, 2);
+            assertThat(logger.slowCount(), is(7L));
+            assertThat(stub.executedCount("EXPLAIN SELECT"), is(1));
+            assertThat(stub.executedCount("EXPLAIN  (SELECT"), is(1));
+        }
+    }
+
+    @Test
+    public void explainsAgainWithoutInterval() throws SQLException, InterruptedException {
+        StubJdbc stub = new StubJdbc(1);
+        try (PooledDatabase pool = new PooledDatabase(stub::connection, 0, 1, 1, 1000, 0);
+                SlowQueryLogger logger = new SlowQueryLogger(0, pool, 0)) {
+            for (int i = 0; i < 3; i++) {
+                logger.afterExecute(event(QueryEvent.Kind.QUERY, SELECT, 10));
+            }
+            awaitExplains(stub, 3);
+        }
+    }
+
+    @Test
+    public void explainsOnDedicatedPreparedDatabase() throws SQLException, InterruptedException {
+        StubJdbc stub = new StubJdbc(1);
+        StubJdbc explainStub = new StubJdbc(1);
+        try (PreparedDatabase db = PreparedDatabase.builder().connectionSupplier(stub::connection).build();
+                PreparedDatabase explainDb = PreparedDatabase.builder()
+                        .connectionSupplier(explainStub::connection).build();
+                SlowQueryLogger logger = new SlowQueryLogger(0, explainDb)) {
+            db.setQueryListener(logger);
+            try (SQLDatabase.Entry entry = db.execute(SELECT)) {
+                entry.setInt(1);
+                entry.query().close();
+            }
+
+            awaitExplains(explainStub, 1);
+            assertThat(stub.executedCount("EXPLAIN"), is(0));
+        }
+    }
+
+    @Test
+    public void rejectsExplainingOnListenedDatabase() throws SQLException {
+        StubJdbc stub = new StubJdbc(1);
+        try (PreparedDatabase db = PreparedDatabase.builder().connectionSupplier(stub::connection).build();
+                CachingDatabase cached = new CachingDatabase(db, 16, 60000);
+                SlowQueryLogger logger = new SlowQueryLogger(100, cached)) {
+            try {
+                db.setQueryListener(logger);
+                fail("explained on the listened connection");
+            } catch (IllegalArgumentException e) {
+                // EXPLAINのスレッドが同じ接続を使うことになる
+            }
+        }
+    }
+
+    @Test
+    public void skipsStatementsOnTemporaryKeyTable() throws SQLException, InterruptedException {
+        StubJdbc stub = new StubJdbc(1);
+        try (PooledDatabase pool = new PooledDatabase(stub::connection, 0, 1, 1, 1000, 0);
+                SlowQueryLogger logger = new SlowQueryLogger(0, pool, 0)) {
+            logger.afterExecute(event(QueryEvent.Kind.QUERY,
+                    SQLs.createExistingKeysSql("test_table", "name"), 10));
+            logger.afterExecute(event(QueryEvent.Kind.QUERY, SELECT, 10));
+
+            awaitExplains(stub, 1);
+            assertThat(stub.executedCount("EXPLAIN SELECT * FROM test_table"), is(1));
+        }
+    }
+
+    /**
+     * バックグラウンドで実行されるEXPLAINがexpected回に達するまで待ち、それより多く実行されないことを確認します。
+     */
+    private static void awaitExplains(StubJdbc stub, int expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (stub.executedCount("EXPLAIN") < expected && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);
+        assertThat(stub.executedCount("EXPLAIN"), is(expected));
+    }
+
+    private static QueryEvent event(QueryEvent.Kind kind, String sql, long elapsedMillis) {
+        return new QueryEvent(kind, sql, new Object[] { 1 }, TimeUnit.MILLISECONDS.toNanos(elapsedMillis), -1, null);
+    }
+}
@@ -0,0 +1,69 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+import org.junit.Test;
+
+public class StatementCacheTest {
+
+    @Test
+    public void hitAndMiss() throws SQLException {
+        StubJdbc stub = new StubJdbc(1);
+        StatementCache cache = new StatementCache(stub.connection(), 4);
+
+        PreparedStatement first = cache.prepare("SELECT * FROM t WHERE id = ?");
+        PreparedStatement second = cache.prepare("SELECT * FROM t WHERE id = ?");
+        cache.prepare("SELECT * FROM t WHERE name = ?");
+
+        assertThat(second, is(sameInstance(first)));
+        assertThat(cache.hitCount(), is(1L));
+        assertThat(cache.missCount(), is(2L));
+        assertThat(cache.size(), is(2));
+        assertThat(stub.preparedCount(), is(2));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws SQLException {
+        StubJdbc stub = new StubJdbc(1);
+        StatementCache cache = new StatementCache(stub.connection(), 2);
+
+        PreparedStatement a = cache.prepare("a");
+        PreparedStatement b = cache.prepare("b");
+        // aを使うことで、最も長く使われていないのはbになる
+        cache.prepare("a");
+        cache.prepare("c");
+
+        assertThat(cache.evictionCount(), is(1L));
+        assertThat(cache.size(), is(2));
+        assertThat(b.isClosed(), is(true));
+        assertThat(a.isClosed(), is(false));
+
+        // 破棄されたbは再び作成される
+        assertThat(cache.prepare("b"), is(not(sameInstance(b))));
+        assertThat(cache.missCount(), is(4L));
+        assertThat(a.isClosed(), is(true));
+    }
+
+    @Test
+    public void clearClosesAll() throws SQLException {
+        StatementCache cache = new StatementCache(new StubJdbc(1).connection(), 4);
+        PreparedStatement a = cache.prepare("a");
+        PreparedStatement b = cache.prepare("b");
+
+        cache.clear();
+
+        assertThat(cache.size(), is(0));
+        assertThat(a.isClosed(), is(true));
+        assertThat(b.isClosed(), is(true));
+        assertThat(cache.missCount(), is(2L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroCapacity() {
+        new StatementCache(new StubJdbc(1).connection(), 0);
+    }
+}
@@ -0,0 +1,438 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * サーバーに接続せずにテストやベンチマークを実行するための、動的プロキシによるJDBCの最小限の実装です。
+ * <p>
+ * 問い合わせは常に同じ行を返し、更新は常に1行を更新したものとして扱います。
+ *     値のセットなど結果に影響しない呼び出しは何もしないため、計測されるのはこのライブラリ自身の処理です。<br>
+ * インスタンスから作成した接続は、準備した文と実行したSQL文を記録します。
+ *     ベンチマークで使う{@link #connection(int)}の接続は、計測を乱さないよう何も記録しません。
+ */
+final class StubJdbc {
+    private static final String[] LABELS = { "id", "name", "password", "score", "sex", "saved" };
+    private static final int[] TYPES = { Types.INTEGER, Types.VARCHAR, Types.VARCHAR, Types.INTEGER, Types.CHAR,
+            Types.TIMESTAMP };
+
+    private final boolean mRecord;
+    private volatile Object[][] mData;
+    private final List<String> mExecuted = new ArrayList<String>();
+    private final AtomicInteger mPreparedCount = new AtomicInteger();
+    private final AtomicInteger mRollbackCount = new AtomicInteger();
+    private final AtomicInteger mCommitCount = new AtomicInteger();
+    private final AtomicInteger mSavepointCount = new AtomicInteger();
+    private volatile boolean mValid = true;
+    private volatile boolean mRollbackFails = false;
+    private volatile boolean mEnableAutoCommitFails = false;
+    private volatile boolean mLocalInfile = true;
+    private volatile String mLoaded = null;
+
+    /**
+     * @param rows 問い合わせが返す行数
+     */
+    StubJdbc(int rows) {
+        this(rows, true);
+    }
+
+    /**
+     * @param rows 問い合わせが返す行数
+     * @param record 準備した文と実行したSQL文を記録するかどうか
+     */
+    private StubJdbc(int rows, boolean record) {
+        mRecord = record;
+        Object[][] data = new Object[rows][];
+        for (int i = 0; i < rows; i++) {
+            data[i] = new Object[] { i + 1, "name" + i, "password", i % 100, i % 2 == 0 ? "male" : "female",
+                    new Timestamp(1488330000000L + i * 1000L) };
+        }
+        mData = data;
+    }
+
+    /**
+     * 何も記録する必要がない場合の簡略な接続の作成です。
+     * @param rows 問い合わせが返す行数
+     */
+    static Connection connection(int rows) {
+        return new StubJdbc(rows, false).connection();
+    }
+
+    /**
+     * このインスタンスに記録する新しい接続を作成します。
+     */
+    Connection connection() {
+        boolean[] closed = { false };
+        boolean[] autoCommit = { true };
+        int[] isolation = { Connection.TRANSACTION_REPEATABLE_READ };
+        String[] catalog = { "bench" };
+        return proxy(Connection.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+            case "prepareStatement":
+                if (mRecord) {
+                    mPreparedCount.incrementAndGet();
+                }
+                return statement((String) args[0]);
+            case "createStatement":
+                return statement(null);
+            case "isValid":
+                return mValid && !closed[0];
+            case "close":
+                closed[0] = true;
+                return null;
+            case "isClosed":
+                return closed[0];
+            case "getAutoCommit":
+                return autoCommit[0];
+            case "setAutoCommit":
+                if (mEnableAutoCommitFails && (Boolean) args[0]) {
+                    throw new SQLException("setAutoCommit failed");
+                }
+                autoCommit[0] = (Boolean) args[0];
+                return null;
+            case "commit":
+                mCommitCount.incrementAndGet();
+                return null;
+            case "setSavepoint":
+                mSavepointCount.incrementAndGet();
+                return proxy(Savepoint.class, (p, m, a) -> defaultValue(m));
+            case "rollback":
+                if (args != null) {
+                    // セーブポイントまでのロールバックは数えない
+                    return null;
+                }
+                if (mRollbackFails) {
+                    throw new SQLException("rollback failed");
+                }
+                mRollbackCount.incrementAndGet();
+                return null;
+            case "getTransactionIsolation":
+                return isolation[0];
+            case "setTransactionIsolation":
+                isolation[0] = (Integer) args[0];
+                return null;
+            case "getCatalog":
+                return catalog[0];
+            case "setCatalog":
+                catalog[0] = (String) args[0];
+                return null;
+            default:
+                return defaultValue(method);
+            }
+        });
+    }
+
+    /**
+     * @return 準備された文の数
+     */
+    int preparedCount() {
+        return mPreparedCount.get();
+    }
+
+    /**
+     * @return これまでに実行されたSQL文。実行された順
+     */
+    List<String> executed() {
+        synchronized (mExecuted) {
+            return new ArrayList<String>(mExecuted);
+        }
+    }
+
+    /**
+     * @return 指定した文字列で始まるSQL文が実行された回数
+     */
+    int executedCount(String prefix) {
+        int count = 0;
+        for (String sql : executed()) {
+            if (sql.startsWith(prefix)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return 接続のrollbackメソッドが成功した回数
+     */
+    int rollbackCount() {
+        return mRollbackCount.get();
+    }
+
+    /**
+     * @return 接続のcommitメソッドが呼ばれた回数
+     */
+    int commitCount() {
+        return mCommitCount.get();
+    }
+
+    /**
+     * @return 接続に作成されたセーブポイントの数
+     */
+    int savepointCount() {
+        return mSavepointCount.get();
+    }
+
+    /**
+     * 以降、作成した接続で自動コミットを有効にする呼び出しが失敗するかどうかを設定します。
+     */
+    void setEnableAutoCommitFails(boolean fails) {
+        mEnableAutoCommitFails = fails;
+    }
+
+    /**
+     * 以降、作成した接続のrollbackメソッドが失敗するかどうかを設定します。
+     */
+    void setRollbackFails(boolean fails) {
+        mRollbackFails = fails;
+    }
+
+    /**
+     * 以降の問い合わせが返す行を設定します。列名は既定の行と同じく先頭から順に対応します。
+     */
+    void setRows(Object[]... rows) {
+        mData = rows;
+    }
+
+    /**
+     * 以降、作成した接続の{@link Connection#isValid(int)}が返す値を設定します。
+     */
+    void setValid(boolean valid) {
+        mValid = valid;
+    }
+
+    /**
+     * 以降、作成した文がLOAD DATA文で送るデータをストリームで受け取れるかどうかを設定します。
+     */
+    void setLocalInfileSupported(boolean supported) {
+        mLocalInfile = supported;
+    }
+
+    /**
+     * @return 最後にLOAD DATA文で送られたデータ。なければnull
+     */
+    String loaded() {
+        return mLoaded;
+    }
+
+    private void record(String sql) {
+        if (!mRecord) {
+            return;
+        }
+        synchronized (mExecuted) {
+            mExecuted.add(sql);
+        }
+    }
+
+    /**
+     * @param preparedSql 準備された文であればそのSQL文。{@link Statement}であればnull
+     */
+    private PreparedStatement statement(String preparedSql) {
+        boolean[] closed = { false };
+        InputStream[] infile = { null };
+        return proxy(PreparedStatement.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+            case "executeQuery":
+                record(preparedSql == null ? (String) args[0] : preparedSql);
+                return resultSet(mData);
+            case "getGeneratedKeys":
+                return resultSet(new Object[][] { { 1L } });
+            case "executeUpdate":
+                record(preparedSql == null ? (String) args[0] : preparedSql);
+                return infile[0] == null ? 1 : load(infile[0]);
+            case "isWrapperFor":
+                return mLocalInfile;
+            case "unwrap":
+                // ラップされたドライバ固有のStatementとして、LOAD DATA文で送るデータを受け取る
+                return proxy(LocalInfileStatement.class, (p, m, a) -> {
+                    if (m.getName().equals("setLocalInfileInputStream")) {
+                        infile[0] = (InputStream) a[0];
+                    }
+                    return defaultValue(m);
+                });
+            case "executeBatch":
+                record(preparedSql);
+                return new int[0];
+            case "execute":
+                record(preparedSql == null ? (String) args[0] : preparedSql);
+                return false;
+            case "close":
+                closed[0] = true;
+                return null;
+            case "isClosed":
+                return closed[0];
+            default:
+                return defaultValue(method);
+            }
+        });
+    }
+
+    /**
+     * データをすべて読み出して記録します。
+     * @return 読み出した行数
+     */
+    private int load(InputStream in) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64];
+        int n;
+        try {
+            while ((n = in.read(buffer, 0, buffer.length)) != -1) {
+                out.write(buffer, 0, n);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        mLoaded = new String(out.toByteArray(), StandardCharsets.UTF_8);
+        int rows = 0;
+        for (char c : mLoaded.toCharArray()) {
+            if (c == '\n') {
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    private static ResultSet resultSet(Object[][] data) {
+        int[] cursor = { -1 };
+        Object[] last = { null };
+        ResultSetMetaData metaData = proxy(ResultSetMetaData.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+            case "getColumnCount":
+                return data.length == 0 ? 1 : data[0].length;
+            case "getColumnLabel":
+            case "getColumnName":
+                return LABELS[(Integer) args[0] - 1];
+            case "getColumnType":
+                return TYPES[(Integer) args[0] - 1];
+            default:
+                return defaultValue(method);
+            }
+        });
+        return proxy(ResultSet.class, (proxy, method, args) -> {
+            switch (method.getName()) {
+            case "next":
+                return ++cursor[0] < data.length;
+            case "getMetaData":
+                return metaData;
+            case "wasNull":
+                return last[0] == null;
+            case "close":
+                return null;
+            default:
+                break;
+            }
+            if (!method.getName().startsWith("get") || args == null || args.length != 1) {
+                return defaultValue(method);
+            }
+
+            int index = args[0] instanceof Integer ? (Integer) args[0] : indexOf((String) args[0]);
+            Object value = data[cursor[0]][index - 1];
+            last[0] = value;
+            return convert(value, method.getReturnType());
+        });
+    }
+
+    private static int indexOf(String label) {
+        for (int i = 0; i < LABELS.length; i++) {
+            if (LABELS[i].equalsIgnoreCase(label)) {
+                return i + 1;
+            }
+        }
+        throw new IllegalArgumentException("no such column : " + label);
+    }
+
+    private static Object convert(Object value, Class<?> type) {
+        if (value == null) {
+            return type.isPrimitive() ? defaultValue(type) : null;
+        }
+        if (type == int.class) {
+            return ((Number) value).intValue();
+        }
+        if (type == long.class) {
+            return ((Number) value).longValue();
+        }
+        if (type == double.class) {
+            return ((Number) value).doubleValue();
+        }
+        if (type == String.class) {
+            return value.toString();
+        }
+        if (type == BigDecimal.class) {
+            return new BigDecimal(value.toString());
+        }
+        return value;
+    }
+
+    private static Object defaultValue(Method method) {
+        return defaultValue(method.getReturnType());
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        if (type == double.class) {
+            return 0.0;
+        }
+        if (type == float.class) {
+            return 0.0f;
+        }
+        if (type == short.class) {
+            return (short) 0;
+        }
+        if (type == byte.class) {
+            return (byte) 0;
+        }
+        return null;
+    }
+
+    /**
+     * LOAD DATA文で送るデータをストリームで受け取る、ドライバ固有のStatementを模したものです。
+     */
+    public interface LocalInfileStatement extends Statement {
+
+        void setLocalInfileInputStream(InputStream stream);
+    }
+
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        InvocationHandler withIdentity = (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return "Stub" + type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+                }
+            }
+            return handler.invoke(proxy, method, args);
+        };
+        return type.cast(Proxy.newProxyInstance(StubJdbc.class.getClassLoader(), new Class<?>[] { type },
+                withIdentity));
+    }
+}
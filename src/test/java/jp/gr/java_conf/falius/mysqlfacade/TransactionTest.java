@@ -0,0 +1,69 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import org.junit.Test;
+
+import column.TestColumn;
+
+public class TransactionTest {
+
+    @Test
+    public void commitsAndRestoresAutoCommit() throws SQLException {
+        StubJdbc stub = new StubJdbc(1);
+        Connection[] connection = { null };
+        try (PreparedDatabase db = PreparedDatabase.builder().connectionSupplier(() -> {
+            connection[0] = stub.connection();
+            return connection[0];
+        }).build()) {
+            db.inTransaction(tx -> tx.count(TestColumn.class));
+
+            assertThat(stub.commitCount(), is(1));
+            assertThat(stub.savepointCount(), is(0));
+            assertThat(connection[0].getAutoCommit(), is(true));
+        }
+    }
+
+    @Test
+    public void joinsTransactionOfCallerWithSavepoint() throws SQLException {
+        StubJdbc stub = new StubJdbc(1);
+        Connection[] connection = { null };
+        try (PreparedDatabase db = PreparedDatabase.builder().connectionSupplier(() -> {
+            connection[0] = stub.connection();
+            return connection[0];
+        }).build()) {
+            connection[0].setAutoCommit(false);
+            db.inTransaction(tx -> tx.count(TestColumn.class));
+
+            // 呼び出し元のトランザクションはコミットせず、自動コミットも無効のまま
+            assertThat(stub.commitCount(), is(0));
+            assertThat(stub.savepointCount(), is(1));
+            assertThat(connection[0].getAutoCommit(), is(false));
+        }
+    }
+
+    @Test
+    public void keepsOriginalExceptionWhenRestoreFails() throws SQLException {
+        StubJdbc stub = new StubJdbc(1);
+        try (PreparedDatabase db = PreparedDatabase.builder().connectionSupplier(stub::connection).build()) {
+            stub.setEnableAutoCommitFails(true);
+            SQLException failure = new SQLException("work failed");
+            try {
+                db.inTransaction(tx -> {
+                    throw failure;
+                });
+                fail("work did not fail");
+            } catch (SQLException e) {
+                assertThat(e, is(sameInstance(failure)));
+                assertThat(e.getSuppressed().length, is(1));
+                assertThat(e.getSuppressed()[0].getMessage(), is("setAutoCommit failed"));
+            }
+            assertThat(stub.rollbackCount(), is(1));
+            stub.setEnableAutoCommitFails(false);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package jp.gr.java_conf.falius.mysqlfacade;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.*;
+
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Test;
+
+import column.TestColumn;
+
+public class WriteBehindInserterTest {
+    private final List<Integer> mBatches = new CopyOnWriteArrayList<>();
+    private final List<Thread> mCallerInserts = new CopyOnWriteArrayList<>();
+    private final CountDownLatch mWriting = new CountDownLatch(1);
+    private final CountDownLatch mGate = new CountDownLatch(1);
+    private volatile boolean mBlockWrites = false;
+
+    /**
+     * insertAllとinsertの呼び出しを記録し、mBlockWritesであればmGateが開くまでinsertAllを止めるデータベース
+     */
+    private final SQLDatabase mDatabase = (SQLDatabase) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] { SQLDatabase.class }, (proxy, method, args) -> {
+                switch (method.getName()) {
+                case "insertAll":
+                    int size = ((Collection<?>) args[1]).size();
+                    mWriting.countDown();
+                    if (mBlockWrites) {
+                        mGate.await();
+                    }
+                    mBatches.add(size);
+                    return new long[size];
+                case "insert":
+                    mCallerInserts.add(Thread.currentThread());
+                    return 1L;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+
+    @After
+    public void tearDown() {
+        mGate.countDown();
+    }
+
+    @Test
+    public void closeDrainsQueue() throws SQLException {
+        WriteBehindInserter inserter = new WriteBehindInserter(mDatabase, TestColumn.class, 100, 4, 60000,
+                WriteBehindInserter.Overflow.BLOCK);
+        for (int i = 0; i < 10; i++) {
+            assertThat(inserter.offer(row(i)), is(true));
+        }
+        inserter.close();
+
+        int written = 0;
+        for (int size : mBatches) {
+            assertThat(size <= 4, is(true));
+            written += size;
+        }
+        assertThat(written, is(10));
+        assertThat(inserter.writtenCount(), is(10L));
+        assertThat(inserter.acceptedCount(), is(10L));
+        assertThat(inserter.queueDepth(), is(0));
+    }
+
+    @Test
+    public void flushesAfterInterval() throws SQLException, InterruptedException {
+        try (WriteBehindInserter inserter = new WriteBehindInserter(mDatabase, TestColumn.class, 100, 100, 10,
+                WriteBehindInserter.Overflow.BLOCK)) {
+            inserter.offer(row(0));
+            assertThat(mWriting.await(5, TimeUnit.SECONDS), is(true));
+        }
+        assertThat(mBatches, is(Collections.singletonList(1)));
+    }
+
+    @Test
+    public void dropsWhenFull() throws Exception {
+        WriteBehindInserter inserter = fullInserter(WriteBehindInserter.Overflow.DROP);
+
+        assertThat(inserter.offer(row(2)), is(false));
+        assertThat(inserter.droppedCount(), is(1L));
+
+        mGate.countDown();
+        inserter.close();
+        assertThat(inserter.writtenCount(), is(2L));
+    }
+
+    @Test
+    public void callerRunsWhenFull() throws Exception {
+        WriteBehindInserter inserter = fullInserter(WriteBehindInserter.Overflow.CALLER_RUNS);
+
+        assertThat(inserter.offer(row(2)), is(true));
+        assertThat(inserter.callerRunsCount(), is(1L));
+        assertThat(mCallerInserts, is(Collections.singletonList(Thread.currentThread())));
+
+        mGate.countDown();
+        inserter.close();
+        assertThat(inserter.writtenCount(), is(3L));
+    }
+
+    @Test
+    public void blocksWhenFull() throws Exception {
+        WriteBehindInserter inserter = fullInserter(WriteBehindInserter.Overflow.BLOCK);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> blocked = executor.submit(() -> inserter.offer(row(2)));
+            try {
+                blocked.get(100, TimeUnit.MILLISECONDS);
+                fail("offer did not block on a full queue");
+            } catch (TimeoutException e) {
+                // 書き込みが終わってキューに空きができるまで待機している
+            }
+
+            mGate.countDown();
+            assertThat(blocked.get(5, TimeUnit.SECONDS), is(true));
+            inserter.close();
+            assertThat(inserter.writtenCount(), is(3L));
+            assertThat(inserter.droppedCount(), is(0L));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void rejectsAfterClose() throws SQLException {
+        WriteBehindInserter inserter = new WriteBehindInserter(mDatabase, TestColumn.class, 10);
+        inserter.close();
+        inserter.offer(row(0));
+    }
+
+    /**
+     * 容量2のキューに、書き込み中で止まっている1行と、キューで待っている1行がある状態を作ります。
+     */
+    private WriteBehindInserter fullInserter(WriteBehindInserter.Overflow overflow) throws Exception {
+        mBlockWrites = true;
+        WriteBehindInserter inserter = new WriteBehindInserter(mDatabase, TestColumn.class, 2, 1, 60000, overflow);
+        assertThat(inserter.offer(row(0)), is(true));
+        assertThat(mWriting.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(inserter.offer(row(1)), is(true));
+        return inserter;
+    }
+
+    private static Map<TestColumn, Object> row(int i) {
+        return Collections.singletonMap(TestColumn.NAME, "row" + i);
+    }
+}